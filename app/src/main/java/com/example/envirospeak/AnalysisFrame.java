@@ -0,0 +1,62 @@
+package com.example.envirospeak;
+
+import android.graphics.Bitmap;
+
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * State of a single analyzed frame as it moves through the {@link FramePipeline} stages.
+ * Each stage fills in its own fields. Depth and detect may run at the same time in fork/join
+ * mode, so they never write the same field.
+ *
+ * Frames are pooled: the model input buffers, the depth map, the detections and the overlay
+ * bitmap belong to the frame and are reused every time it goes round the pipeline.
+ */
+final class AnalysisFrame {
+    static final int THUMBNAIL_WIDTH = 32;
+    static final int THUMBNAIL_HEIGHT = 24;
+    static final int MAX_TRACKS = 128;
+
+    final YuvTensorConverter yoloConverter =
+            new YuvTensorConverter(Yolov5Detector.INPUT_WIDTH, Yolov5Detector.INPUT_HEIGHT);
+    final YuvTensorConverter midasConverter =
+            new YuvTensorConverter(MiDaSDepthEstimator.INPUT_WIDTH, MiDaSDepthEstimator.INPUT_HEIGHT);
+    // Raw MiDaS output, row-major INPUT_WIDTH x INPUT_HEIGHT
+    final float[] depthMap = new float[MiDaSDepthEstimator.INPUT_WIDTH * MiDaSDepthEstimator.INPUT_HEIGHT];
+
+    // Downsampled luma of the camera image, for the change gates
+    final byte[] thumbnail = new byte[THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT];
+    // Tracked objects of this frame, with depth once fused
+    final DetectionBatch detections = new DetectionBatch(MAX_TRACKS);
+    // Indices into detections, nearest first; only the nearest few when ordering is top-K
+    final int[] depthOrder = new int[MAX_TRACKS];
+
+    // Camera image, held from capture until preprocess has converted it
+    ImageProxy image;
+    // System.nanoTime() when the camera handed the image over
+    long capturedAtNanos;
+    // Size of the preview the results are drawn on
+    int viewWidth;
+    int viewHeight;
+    // Camera focal length in view pixels
+    float focalLength;
+
+    // Whether depth / detect run on this frame or reuse the previous result
+    boolean runDepth;
+    boolean runDetect;
+    ByteBuffer yoloInput;
+    ByteBuffer midasInput;
+    ArrayList<Recognition> recognitionsInOrder;
+    // Transparent, view-sized; shown as the preview foreground
+    Bitmap overlay;
+
+    void closeImage() {
+        if (image != null) {
+            image.close();
+            image = null;
+        }
+    }
+}
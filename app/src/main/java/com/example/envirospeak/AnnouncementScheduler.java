@@ -0,0 +1,403 @@
+package com.example.envirospeak;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Turns tracked detections into short spoken announcements of what changed.
+ *
+ * Frames go into a latest-only mailbox: a frame submitted before the previous one was
+ * looked at supersedes it. The speech thread takes the newest frame, drops it when it is
+ * older than {@code maxStaleness}, and otherwise announces only tracks that were never
+ * announced, or not for {@code repeatInterval}. Those are ranked by novelty, then by
+ * proximity (larger MiDaS depth is closer), and coalesced per label, with the distance of the
+ * closest one when it is known ("three chairs, about 2 meters. person").
+ * Nothing is queued inside the engine: while it is speaking, or until {@code minInterval} has
+ * passed since the last utterance started, frames simply wait in the mailbox, and a timer
+ * looks at it again when the interval is over. Tracks only count as announced once the engine
+ * accepted the utterance; when it refuses one (e.g. not ready yet) the frame is retried later.
+ * An engine that accepts an utterance but never reports its end, as after a restart of the
+ * TTS service, does not mute the scheduler for good: once an utterance ran past a deadline
+ * based on its length, the next frame is spoken anyway.
+ *
+ * The time from a frame's capture to the first spoken word of its announcement is reported
+ * through {@link #getLastLatencyNanos()} and {@link #getMeanLatencyNanos()}.
+ */
+public class AnnouncementScheduler implements SpeechEngine.Listener {
+
+    /** Runs a task after a delay. */
+    public interface Timer {
+        void schedule(Runnable task, long delayNanos);
+    }
+
+    private static final String[] NUMBERS = {"zero", "one", "two", "three", "four", "five",
+            "six", "seven", "eight", "nine", "ten"};
+
+    private static final class Batch {
+        final List<Recognition> recognitions;
+        final long capturedAtNanos;
+
+        Batch(List<Recognition> recognitions, long capturedAtNanos) {
+            this.recognitions = recognitions;
+            this.capturedAtNanos = capturedAtNanos;
+        }
+    }
+
+    private final SpeechEngine engine;
+    private final Executor executor;
+    private final ScheduledExecutorService ownedExecutor;
+    private final LongSupplier clock;
+    private final Timer timer;
+
+    private final AtomicReference<Batch> mailbox = new AtomicReference<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicBoolean wakeUpScheduled = new AtomicBoolean();
+    private final Runnable drain = this::drain;
+
+    private volatile boolean speaking;
+    private volatile String currentUtteranceId;
+    private volatile long currentCapturedAt;
+
+    // Only touched on the speech thread
+    private long speakingDeadline;
+    private final HashMap<Integer, Long> announcedAt = new HashMap<>();
+    // Tracks of the utterance being composed, marked announced once it was accepted
+    private final ArrayList<Integer> composedTracks = new ArrayList<>();
+    private long lastUtteranceAt = Long.MIN_VALUE;
+    private int nextUtteranceId;
+
+    private long minIntervalNanos = 1_500_000_000L;
+    private long repeatIntervalNanos = 15_000_000_000L;
+    private long maxStalenessNanos = 1_000_000_000L;
+    private int maxLabels = 3;
+    private long speechTimeoutNanos = 2_000_000_000L;
+    private long speechTimeoutPerCharNanos = 200_000_000L;
+
+    private volatile long submitted;
+    private volatile long superseded;
+    private volatile long stale;
+    private volatile long spoken;
+    private volatile long timedOut;
+    private volatile long lastLatencyNanos;
+    private volatile long totalLatencyNanos;
+    private volatile long measuredLatencies;
+
+    /** Speaks on a daemon thread of its own, timed with System.nanoTime(). */
+    public AnnouncementScheduler(SpeechEngine engine) {
+        this(engine, null, System::nanoTime, null);
+    }
+
+    /**
+     * @param executor runs the ranking and the engine calls; null for a daemon thread of its own
+     * @param clock monotonic time in nanoseconds, the clock capture times are taken with
+     * @param timer wakes the scheduler up when a waiting frame can be spoken; null for a daemon
+     *              thread of its own, the same as the executor's when that is null too
+     */
+    public AnnouncementScheduler(SpeechEngine engine, Executor executor, LongSupplier clock, Timer timer) {
+        this.engine = engine;
+        this.clock = clock;
+        if (executor == null || timer == null) {
+            ownedExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "announcements");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            ownedExecutor = null;
+        }
+        this.executor = executor != null ? executor : ownedExecutor;
+        this.timer = timer != null ? timer : (task, delayNanos) -> ownedExecutor.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        engine.setListener(this);
+    }
+
+    /** Least time between the starts of two utterances. */
+    public AnnouncementScheduler setMinIntervalMillis(long millis) {
+        minIntervalNanos = millis * 1_000_000L;
+        return this;
+    }
+
+    /** A track still in view is announced again after this long. */
+    public AnnouncementScheduler setRepeatIntervalMillis(long millis) {
+        repeatIntervalNanos = millis * 1_000_000L;
+        return this;
+    }
+
+    /** Frames older than this when their turn comes are dropped. */
+    public AnnouncementScheduler setMaxStalenessMillis(long millis) {
+        maxStalenessNanos = millis * 1_000_000L;
+        return this;
+    }
+
+    /**
+     * An utterance whose end the engine has not reported after {@code millis}, plus
+     * {@code perCharacterMillis} for each of its characters, is taken as finished. Keep it
+     * well above the speech rate: the engine flushes whatever it is saying for the next one.
+     */
+    public AnnouncementScheduler setSpeechTimeoutMillis(long millis, long perCharacterMillis) {
+        speechTimeoutNanos = millis * 1_000_000L;
+        speechTimeoutPerCharNanos = perCharacterMillis * 1_000_000L;
+        return this;
+    }
+
+    /** Most labels in one utterance; further changes wait for the next one. */
+    public AnnouncementScheduler setMaxLabels(int maxLabels) {
+        this.maxLabels = maxLabels;
+        return this;
+    }
+
+    /**
+     * Offers a frame's tracked detections; returns immediately.
+     *
+     * @param recognitions tracked detections with depth; not modified, and must not be
+     *                     modified afterwards
+     * @param capturedAtNanos capture time of the frame, on this scheduler's clock
+     */
+    public void submit(List<Recognition> recognitions, long capturedAtNanos) {
+        submitted++;
+        if (mailbox.getAndSet(new Batch(recognitions, capturedAtNanos)) != null)
+            superseded++;
+        scheduleDrain();
+    }
+
+    /** Stops speaking and forgets what was announced, so the next frame is announced in full. */
+    public void reset() {
+        if (mailbox.getAndSet(null) != null)
+            superseded++;
+        executor.execute(() -> {
+            announcedAt.clear();
+            lastUtteranceAt = Long.MIN_VALUE;
+            engine.stop();
+        });
+    }
+
+    public void shutdown() {
+        engine.stop();
+        if (ownedExecutor != null)
+            ownedExecutor.shutdown();
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true))
+            executor.execute(drain);
+    }
+
+    /** Drains again after {@code delayNanos}, unless a wake-up is pending already. */
+    private void wakeUpIn(long delayNanos) {
+        if (wakeUpScheduled.compareAndSet(false, true)) {
+            timer.schedule(() -> {
+                wakeUpScheduled.set(false);
+                scheduleDrain();
+            }, delayNanos);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        long now = clock.getAsLong();
+        if (speaking) {
+            // onDone() drains again
+            if (now - speakingDeadline < 0)
+                return;
+            // The engine never reported the end of the utterance; a late onDone() is ignored
+            speaking = false;
+            timedOut++;
+        }
+        if (lastUtteranceAt != Long.MIN_VALUE && now - lastUtteranceAt < minIntervalNanos) {
+            // No other frame may come along to get the waiting one spoken
+            if (mailbox.get() != null)
+                wakeUpIn(lastUtteranceAt + minIntervalNanos - now);
+            return;
+        }
+        Batch batch = mailbox.getAndSet(null);
+        if (batch == null)
+            return;
+        if (now - batch.capturedAtNanos > maxStalenessNanos) {
+            stale++;
+            return;
+        }
+        String text = compose(batch.recognitions, now);
+        if (text == null)
+            return;
+        String utteranceId = "announcement-" + nextUtteranceId++;
+        currentUtteranceId = utteranceId;
+        currentCapturedAt = batch.capturedAtNanos;
+        speakingDeadline = now + speechTimeoutNanos + text.length() * speechTimeoutPerCharNanos;
+        speaking = true;
+        if (!engine.speak(text, utteranceId)) {
+            speaking = false;
+            // Nothing was said: retry the frame later, unless a newer one took its place
+            mailbox.compareAndSet(null, batch);
+            wakeUpIn(minIntervalNanos);
+            return;
+        }
+        for (Integer trackId : composedTracks)
+            announcedAt.put(trackId, now);
+        lastUtteranceAt = now;
+        spoken++;
+    }
+
+    /**
+     * The announcement for the changed tracks, or null when nothing changed. The tracks it
+     * covers are left in composedTracks.
+     */
+    String compose(List<Recognition> recognitions, long now) {
+        composedTracks.clear();
+        // Tracks that left the scene can't come back with the same id
+        Iterator<Map.Entry<Integer, Long>> entries = announcedAt.entrySet().iterator();
+        while (entries.hasNext()) {
+            Integer trackId = entries.next().getKey();
+            boolean visible = false;
+            for (int i = 0; i < recognitions.size() && !visible; i++)
+                visible = recognitions.get(i).getTrackId() == trackId;
+            if (!visible)
+                entries.remove();
+        }
+
+        ArrayList<Recognition> changes = new ArrayList<>();
+        for (Recognition recognition : recognitions) {
+            Long last = announcedAt.get(recognition.getTrackId());
+            if (last == null || now - last >= repeatIntervalNanos)
+                changes.add(recognition);
+        }
+        if (changes.isEmpty())
+            return null;
+        // New tracks before repeats, closest first within each
+        changes.sort((a, b) -> {
+            boolean aNew = !announcedAt.containsKey(a.getTrackId());
+            boolean bNew = !announcedAt.containsKey(b.getTrackId());
+            if (aNew != bNew)
+                return aNew ? -1 : 1;
+            return Float.compare(depthOf(b), depthOf(a));
+        });
+
+        // Coalesce per label, in rank order of each label's best track
+        LinkedHashMap<String, Integer> counts = new LinkedHashMap<>();
+        HashMap<String, Float> distances = new HashMap<>();
+        for (Recognition recognition : changes) {
+            String label = recognition.getLabelName();
+            if (!counts.containsKey(label) && counts.size() == maxLabels)
+                continue;
+            counts.put(label, counts.containsKey(label) ? counts.get(label) + 1 : 1);
+            float distance = recognition.getDistance();
+            Float closest = distances.get(label);
+            if (distance == distance && (closest == null || distance < closest))
+                distances.put(label, distance);
+            composedTracks.add(recognition.getTrackId());
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (text.length() > 0)
+                text.append(". ");
+            text.append(phrase(entry.getKey(), entry.getValue()));
+            Float distance = distances.get(entry.getKey());
+            if (distance != null)
+                text.append(", ").append(distancePhrase(distance));
+        }
+        return text.toString();
+    }
+
+    private static float depthOf(Recognition recognition) {
+        float depth = recognition.getDepth();
+        return Float.isNaN(depth) ? Float.NEGATIVE_INFINITY : depth;
+    }
+
+    /** "person", "three chairs", "12 people". */
+    static String phrase(String label, int count) {
+        if (count == 1)
+            return label;
+        String number = count < NUMBERS.length ? NUMBERS[count] : Integer.toString(count);
+        return number + " " + plural(label);
+    }
+
+    /** "less than a meter", "about 1.5 meters", "about 4 meters". */
+    static String distancePhrase(float meters) {
+        if (meters < 0.75f)
+            return "less than a meter";
+        // Half meters are only worth saying up close
+        float rounded = meters < 3f ? Math.round(meters * 2) / 2f : Math.round(meters);
+        if (rounded == 1f)
+            return "about 1 meter";
+        if (rounded == (int) rounded)
+            return "about " + (int) rounded + " meters";
+        return String.format(Locale.ENGLISH, "about %.1f meters", rounded);
+    }
+
+    static String plural(String label) {
+        String lower = label.toLowerCase(Locale.ENGLISH);
+        if (lower.endsWith("person"))
+            return label.substring(0, label.length() - "person".length()) + "people";
+        if (lower.endsWith("mouse"))
+            return label.substring(0, label.length() - "mouse".length()) + "mice";
+        if (lower.endsWith("knife"))
+            return label.substring(0, label.length() - 2) + "ves";
+        if (lower.endsWith("sheep") || lower.endsWith("skis") || lower.endsWith("scissors"))
+            return label;
+        if (lower.endsWith("s") || lower.endsWith("x") || lower.endsWith("ch") || lower.endsWith("sh"))
+            return label + "es";
+        return label + "s";
+    }
+
+    @Override
+    public void onStart(String utteranceId) {
+        if (!utteranceId.equals(currentUtteranceId))
+            return;
+        long latency = clock.getAsLong() - currentCapturedAt;
+        lastLatencyNanos = latency;
+        totalLatencyNanos += latency;
+        measuredLatencies++;
+    }
+
+    @Override
+    public void onDone(String utteranceId) {
+        if (!utteranceId.equals(currentUtteranceId))
+            return;
+        speaking = false;
+        // Whatever arrived while speaking gets its turn
+        scheduleDrain();
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /** Frames replaced in the mailbox by a newer one before they were looked at. */
+    public long getSuperseded() {
+        return superseded;
+    }
+
+    /** Frames dropped for being older than maxStaleness when their turn came. */
+    public long getStale() {
+        return stale;
+    }
+
+    public long getSpoken() {
+        return spoken;
+    }
+
+    /** Utterances taken as finished because the engine never reported their end. */
+    public long getTimedOut() {
+        return timedOut;
+    }
+
+    /** Capture to first spoken word of the latest announcement; 0 before the first one. */
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    public long getMeanLatencyNanos() {
+        long n = measuredLatencies;
+        return n == 0 ? 0 : totalLatencyNanos / n;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.envirospeak;
+
+import android.content.Context;
+
+import org.tensorflow.lite.support.common.FileUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/** Loads models and labels from the APK assets; models are memory-mapped, not copied. */
+final class AssetModelLoader implements ModelRegistry.Loader {
+
+    private final Context context;
+
+    AssetModelLoader(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public ByteBuffer loadModel(String file) throws IOException {
+        return FileUtil.loadMappedFile(context, file);
+    }
+
+    @Override
+    public String[] loadLabels(String file) throws IOException {
+        List<String> labels = FileUtil.loadLabels(context, file);
+        return labels.toArray(new String[0]);
+    }
+}
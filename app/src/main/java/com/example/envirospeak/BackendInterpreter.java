@@ -0,0 +1,113 @@
+package com.example.envirospeak;
+
+import android.os.Build;
+import android.util.Log;
+
+import com.example.envirospeak.InferenceBackendConfig.Backend;
+
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.gpu.CompatibilityList;
+import org.tensorflow.lite.gpu.GpuDelegate;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A TFLite interpreter together with the delegate it runs on. The delegate has to outlive the
+ * interpreter and be closed after it, which {@link #close()} takes care of.
+ */
+final class BackendInterpreter {
+
+    private static final String TAG = "BackendInterpreter";
+
+    private final Interpreter interpreter;
+    private final Delegate delegate;
+    private final Backend backend;
+
+    private BackendInterpreter(Interpreter interpreter, Delegate delegate, Backend backend) {
+        this.interpreter = interpreter;
+        this.delegate = delegate;
+        this.backend = backend;
+    }
+
+    /**
+     * Builds an interpreter for {@code model} on the backend {@code config} selects. Candidates
+     * are checked, and timed when probing, by running the model on {@code probeBuffers}.
+     */
+    static BackendInterpreter create(String name, ByteBuffer model, InferenceBackendConfig config,
+                                     ModelBuffers probeBuffers) throws IOException {
+        BackendSelector<BackendInterpreter> selector = new BackendSelector<>(
+                (backend, backendConfig) -> open(model, backend, backendConfig),
+                candidate -> candidate.run(probeBuffers.getInput(), probeBuffers.getOutput()),
+                BackendInterpreter::close);
+        BackendSelector.Selection<BackendInterpreter> selection;
+        try {
+            selection = selector.select(config);
+        } catch (Exception e) {
+            throw new IOException("No backend can run " + name, e);
+        }
+        for (Map.Entry<Backend, Exception> failure : selection.getFailures().entrySet())
+            Log.w(TAG, name + ": " + failure.getKey() + " unavailable", failure.getValue());
+        for (Map.Entry<Backend, Long> probe : selection.getProbeNanos().entrySet())
+            Log.i(TAG, String.format(Locale.US, "%s: %s %.1f ms", name, probe.getKey(), probe.getValue() / 1e6));
+        Log.i(TAG, name + " runs on " + selection.getBackend());
+        return selection.getModel();
+    }
+
+    private static BackendInterpreter open(ByteBuffer model, Backend backend, InferenceBackendConfig config) {
+        Interpreter.Options options = new Interpreter.Options()
+                .setNumThreads(config.getNumThreads())
+                .setUseXNNPACK(config.getUseXnnpack());
+        Delegate delegate = null;
+        switch (backend) {
+            case GPU:
+                CompatibilityList compatibilityList = new CompatibilityList();
+                try {
+                    if (!compatibilityList.isDelegateSupportedOnThisDevice())
+                        throw new UnsupportedOperationException("GPU delegate not supported on this device");
+                    delegate = new GpuDelegate(compatibilityList.getBestOptionsForThisDevice());
+                } finally {
+                    compatibilityList.close();
+                }
+                break;
+            case NNAPI:
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1)
+                    throw new UnsupportedOperationException("NNAPI delegate needs API 27");
+                delegate = new NnApiDelegate();
+                break;
+            default:
+                break;
+        }
+        if (delegate != null)
+            options.addDelegate(delegate);
+        try {
+            return new BackendInterpreter(new Interpreter(model, options), delegate, backend);
+        } catch (RuntimeException e) {
+            if (delegate != null)
+                delegate.close();
+            throw e;
+        }
+    }
+
+    Backend getBackend() {
+        return backend;
+    }
+
+    Interpreter getInterpreter() {
+        return interpreter;
+    }
+
+    void run(ByteBuffer input, ByteBuffer output) {
+        interpreter.run(input, output);
+    }
+
+    void close() {
+        interpreter.close();
+        if (delegate != null)
+            delegate.close();
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.envirospeak;
+
+import com.example.envirospeak.InferenceBackendConfig.Backend;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Picks the backend a model runs on, following an {@link InferenceBackendConfig}. Backends are
+ * tried in the configured order; one that cannot be created, or fails its first run on the
+ * canned input, is closed and skipped. Without probing the first working backend is used;
+ * with probing every working backend is timed and the fastest is kept, the others closed.
+ *
+ * Creating and running models goes through the small interfaces below, so the selection
+ * logic does not depend on TFLite and runs the same on a host without any accelerator.
+ */
+public class BackendSelector<T> {
+
+    public interface Factory<T> {
+        T create(Backend backend, InferenceBackendConfig config) throws Exception;
+    }
+
+    /** One inference on a canned input. */
+    public interface Probe<T> {
+        void run(T model) throws Exception;
+    }
+
+    public interface Closer<T> {
+        void close(T model);
+    }
+
+    public static final class Selection<T> {
+        private final Backend backend;
+        private final T model;
+        private final Map<Backend, Long> probeNanos;
+        private final Map<Backend, Exception> failures;
+
+        Selection(Backend backend, T model, Map<Backend, Long> probeNanos, Map<Backend, Exception> failures) {
+            this.backend = backend;
+            this.model = model;
+            this.probeNanos = Collections.unmodifiableMap(probeNanos);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+        public Backend getBackend() {
+            return backend;
+        }
+
+        public T getModel() {
+            return model;
+        }
+
+        /** Mean time of one run per probed backend; empty when probing was off. */
+        public Map<Backend, Long> getProbeNanos() {
+            return probeNanos;
+        }
+
+        /** Why each skipped backend was skipped. */
+        public Map<Backend, Exception> getFailures() {
+            return failures;
+        }
+    }
+
+    private final Factory<T> factory;
+    private final Probe<T> probe;
+    private final Closer<T> closer;
+
+    public BackendSelector(Factory<T> factory, Probe<T> probe, Closer<T> closer) {
+        this.factory = factory;
+        this.probe = probe;
+        this.closer = closer;
+    }
+
+    /**
+     * @throws Exception the CPU failure when no backend, CPU included, could run the model
+     */
+    public Selection<T> select(InferenceBackendConfig config) throws Exception {
+        EnumMap<Backend, Long> probeNanos = new EnumMap<>(Backend.class);
+        EnumMap<Backend, Exception> failures = new EnumMap<>(Backend.class);
+        Backend bestBackend = null;
+        T best = null;
+        long bestNanos = Long.MAX_VALUE;
+
+        for (Backend backend : config.getBackends()) {
+            T model = null;
+            long nanos;
+            try {
+                model = factory.create(backend, config);
+                // The first run also catches delegates that only fail once they execute
+                probe.run(model);
+                nanos = config.getProbe() ? time(model, config.getProbeRuns()) : 0;
+            } catch (Exception e) {
+                failures.put(backend, e);
+                if (model != null)
+                    closer.close(model);
+                continue;
+            }
+
+            if (!config.getProbe())
+                return new Selection<>(backend, model, probeNanos, failures);
+
+            probeNanos.put(backend, nanos);
+            if (nanos < bestNanos) {
+                if (best != null)
+                    closer.close(best);
+                best = model;
+                bestBackend = backend;
+                bestNanos = nanos;
+            } else {
+                closer.close(model);
+            }
+        }
+
+        if (best == null) {
+            Exception cpuFailure = failures.get(Backend.CPU);
+            throw cpuFailure != null ? cpuFailure : new IllegalStateException("no backend configured");
+        }
+        return new Selection<>(bestBackend, best, probeNanos, failures);
+    }
+
+    private long time(T model, int runs) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++)
+            probe.run(model);
+        return (System.nanoTime() - start) / runs;
+    }
+}
@@ -0,0 +1,468 @@
+package com.example.envirospeak;
+
+/**
+ * Keeps detected boxes alive between detector keyframes. Each track runs a constant-velocity
+ * Kalman filter on its box centre, width and height; the four coordinates are filtered
+ * independently, so the state is a position, a velocity and a symmetric 2x2 covariance per
+ * coordinate, all held in flat arrays. Noise scales with the box height, as in SORT/DeepSORT.
+ *
+ * <ul>
+ * <li>{@link #update} is called on keyframes with the detector output. Tracks are predicted
+ * one frame, then associated ByteTrack-style: first with the high-score detections, then the
+ * tracks still unmatched with the low-score ones, each stage a minimum-cost assignment
+ * ({@link LinearAssignment}) over {@code 1 - IoU} between boxes of the same class. Matched
+ * tracks keep their id and are corrected. Only unmatched high-score detections start new
+ * tracks, so a low-score detection can keep an object alive but never invent one. Tracks that
+ * miss more than {@code maxMisses} keyframes in a row are dropped.</li>
+ * <li>{@link #predict} is called on every other frame and only propagates the boxes. The
+ * confidence of a track is 1 when a detection matched it or started it and decays each
+ * predicted frame, so {@link #getMinConfidence} tells when a new keyframe is worth it. It does
+ * not depend on the detection score: a low-score match keeps a track as fresh as a high-score
+ * one, or every weakly detected object would force the detector to run on the next frames.</li>
+ * </ul>
+ * Only tracks matched on the last keyframe are reported. Results are valid until the next
+ * call; all storage is allocated up front. Not thread-safe.
+ */
+public class BoxTracker {
+
+    private static final int CX = 0, CY = 1, W = 2, H = 3;
+
+    private final int capacity;
+    private final int detectionCapacity;
+
+    // Track state, one entry per track; Kalman state has 4 entries per track
+    private int count;
+    private int nextId = 1;
+    private final int[] ids;
+    private final int[] classIds;
+    private final float[] scores;
+    private final float[] confidence;
+    private final int[] hits;
+    private final int[] ages;
+    private final int[] misses;
+    private final float[] position;
+    private final float[] velocity;
+    private final float[] p00;
+    private final float[] p01;
+    private final float[] p11;
+
+    // Association scratch
+    private final LinearAssignment assignment;
+    private final float[] cost;
+    private final boolean[] trackMatched;
+    private final boolean[] detectionMatched;
+    private final int[] rowTracks;
+    private final int[] highDetections;
+    private final int[] lowDetections;
+
+    // Reported tracks
+    private int outCount;
+    private final int[] outIds;
+    private final int[] outClassIds;
+    private final float[] outScores;
+    private final float[] outConfidence;
+    private final int[] outHits;
+    private final int[] outAges;
+    private final float[] outLeft;
+    private final float[] outTop;
+    private final float[] outRight;
+    private final float[] outBottom;
+
+    private float highScore = 0.5f;
+    private float minIou = 0.3f;
+    private float lowScoreMinIou = 0.5f;
+    private int maxMisses = 1;
+    private float confidenceDecay = 0.9f;
+    private float positionNoise = 1f / 20;
+    private float velocityNoise = 1f / 160;
+
+    /**
+     * @param capacity largest number of tracks kept at once; extra detections are not tracked
+     * @param detectionCapacity largest number of detections passed to {@link #update}
+     */
+    public BoxTracker(int capacity, int detectionCapacity) {
+        this.capacity = capacity;
+        this.detectionCapacity = detectionCapacity;
+        ids = new int[capacity];
+        classIds = new int[capacity];
+        scores = new float[capacity];
+        confidence = new float[capacity];
+        hits = new int[capacity];
+        ages = new int[capacity];
+        misses = new int[capacity];
+        position = new float[capacity * 4];
+        velocity = new float[capacity * 4];
+        p00 = new float[capacity * 4];
+        p01 = new float[capacity * 4];
+        p11 = new float[capacity * 4];
+        assignment = new LinearAssignment(Math.max(capacity, detectionCapacity));
+        cost = new float[capacity * detectionCapacity];
+        trackMatched = new boolean[capacity];
+        detectionMatched = new boolean[detectionCapacity];
+        rowTracks = new int[capacity];
+        highDetections = new int[detectionCapacity];
+        lowDetections = new int[detectionCapacity];
+        outIds = new int[capacity];
+        outClassIds = new int[capacity];
+        outScores = new float[capacity];
+        outConfidence = new float[capacity];
+        outHits = new int[capacity];
+        outAges = new int[capacity];
+        outLeft = new float[capacity];
+        outTop = new float[capacity];
+        outRight = new float[capacity];
+        outBottom = new float[capacity];
+    }
+
+    /**
+     * Detections scoring at least this value are matched first and may start tracks; lower
+     * ones only continue tracks left unmatched.
+     */
+    public BoxTracker setHighScore(float highScore) {
+        this.highScore = highScore;
+        return this;
+    }
+
+    /** A high-score detection only continues a track when their IoU is at least this value. */
+    public BoxTracker setMinIou(float minIou) {
+        this.minIou = minIou;
+        return this;
+    }
+
+    /** Same for low-score detections, which are held to a stricter overlap. */
+    public BoxTracker setLowScoreMinIou(float lowScoreMinIou) {
+        this.lowScoreMinIou = lowScoreMinIou;
+        return this;
+    }
+
+    /** Keyframes a track may go unmatched before it is dropped. */
+    public BoxTracker setMaxMisses(int maxMisses) {
+        this.maxMisses = maxMisses;
+        return this;
+    }
+
+    /** Factor applied to a track's confidence on every predicted frame. */
+    public BoxTracker setConfidenceDecay(float confidenceDecay) {
+        this.confidenceDecay = confidenceDecay;
+        return this;
+    }
+
+    /** Standard deviations of position and velocity noise, as a fraction of the box height. */
+    public BoxTracker setNoise(float positionNoise, float velocityNoise) {
+        this.positionNoise = positionNoise;
+        this.velocityNoise = velocityNoise;
+        return this;
+    }
+
+    /** Drops every track; ids keep counting up. */
+    public void reset() {
+        count = 0;
+        outCount = 0;
+    }
+
+    /**
+     * Propagates every track by one frame without a detection.
+     *
+     * @return number of reported tracks
+     */
+    public int predict() {
+        step();
+        for (int t = 0; t < count; t++)
+            confidence[t] *= confidenceDecay;
+        export();
+        return outCount;
+    }
+
+    /**
+     * Advances one frame and corrects the tracks with this frame's detections.
+     *
+     * @return number of reported tracks
+     */
+    public int update(float[] left, float[] top, float[] right, float[] bottom,
+                      float[] detectionScores, int[] detectionClassIds, int detections) {
+        if (detections > detectionCapacity)
+            throw new IllegalArgumentException("Too many detections: " + detections);
+        step();
+
+        int high = 0;
+        int low = 0;
+        for (int d = 0; d < detections; d++) {
+            detectionMatched[d] = false;
+            if (detectionScores[d] >= highScore)
+                highDetections[high++] = d;
+            else
+                lowDetections[low++] = d;
+        }
+        int rows = 0;
+        for (int t = 0; t < count; t++) {
+            trackMatched[t] = false;
+            rowTracks[rows++] = t;
+        }
+        associate(rows, highDetections, high, minIou, left, top, right, bottom, detectionScores, detectionClassIds);
+
+        rows = 0;
+        for (int t = 0; t < count; t++) {
+            if (!trackMatched[t])
+                rowTracks[rows++] = t;
+        }
+        associate(rows, lowDetections, low, lowScoreMinIou, left, top, right, bottom, detectionScores, detectionClassIds);
+
+        for (int t = 0; t < count; t++) {
+            if (!trackMatched[t])
+                misses[t]++;
+        }
+
+        // Drop stale tracks by moving the last track into their slot
+        for (int t = count - 1; t >= 0; t--) {
+            if (misses[t] > maxMisses)
+                move(--count, t);
+        }
+        for (int i = 0; i < high && count < capacity; i++) {
+            int d = highDetections[i];
+            if (!detectionMatched[d])
+                start(left[d], top[d], right[d], bottom[d], detectionScores[d], detectionClassIds[d]);
+        }
+        export();
+        return outCount;
+    }
+
+    /** One association stage between the tracks in rowTracks and the given detections. */
+    private void associate(int rows, int[] columns, int cols, float gate,
+                           float[] left, float[] top, float[] right, float[] bottom,
+                           float[] detectionScores, int[] detectionClassIds) {
+        if (rows == 0 || cols == 0)
+            return;
+        for (int r = 0; r < rows; r++) {
+            int t = rowTracks[r];
+            int base = t * 4;
+            float halfW = position[base + W] / 2;
+            float halfH = position[base + H] / 2;
+            float tl = position[base + CX] - halfW;
+            float tt = position[base + CY] - halfH;
+            float tr = position[base + CX] + halfW;
+            float tb = position[base + CY] + halfH;
+            int row = r * cols;
+            for (int c = 0; c < cols; c++) {
+                int d = columns[c];
+                cost[row + c] = classIds[t] != detectionClassIds[d] ? 1f
+                        : 1f - iou(tl, tt, tr, tb, left[d], top[d], right[d], bottom[d]);
+            }
+        }
+        int[] match = assignment.solve(cost, rows, cols);
+        for (int r = 0; r < rows; r++) {
+            int c = match[r];
+            if (c < 0)
+                continue;
+            int t = rowTracks[r];
+            int d = columns[c];
+            if (classIds[t] != detectionClassIds[d] || 1f - cost[r * cols + c] < gate)
+                continue;
+            trackMatched[t] = true;
+            detectionMatched[d] = true;
+            misses[t] = 0;
+            hits[t]++;
+            scores[t] = detectionScores[d];
+            confidence[t] = 1f;
+            correct(t, left[d], top[d], right[d], bottom[d]);
+        }
+    }
+
+    /** {@link #update(float[], float[], float[], float[], float[], int[], int)} on a batch. */
+    public int update(DetectionBatch detections) {
+        return update(detections.getLeft(), detections.getTop(), detections.getRight(), detections.getBottom(),
+                detections.getScores(), detections.getClassIds(), detections.getCount());
+    }
+
+    /**
+     * Writes the reported tracks to {@code out}, with the score of their last matched detection
+     * and their track id, age and hits.
+     */
+    public void getTracks(DetectionBatch out) {
+        out.clear();
+        for (int i = 0; i < outCount; i++) {
+            int j = out.add(outLeft[i], outTop[i], outRight[i], outBottom[i], outScores[i], outClassIds[i]);
+            out.setTrack(j, outIds[i], outAges[i], outHits[i]);
+        }
+    }
+
+    private void step() {
+        for (int t = 0; t < count; t++) {
+            ages[t]++;
+            int base = t * 4;
+            float h = position[base + H];
+            float qPosition = square(positionNoise * h);
+            float qVelocity = square(velocityNoise * h);
+            for (int k = base; k < base + 4; k++) {
+                position[k] += velocity[k];
+                p00[k] += 2 * p01[k] + p11[k] + qPosition;
+                p01[k] += p11[k];
+                p11[k] += qVelocity;
+            }
+            // A shrinking box must not collapse
+            position[base + W] = Math.max(1f, position[base + W]);
+            position[base + H] = Math.max(1f, position[base + H]);
+        }
+    }
+
+    private void correct(int t, float left, float top, float right, float bottom) {
+        int base = t * 4;
+        float r = square(positionNoise * position[base + H]);
+        correct(base + CX, (left + right) / 2, r);
+        correct(base + CY, (top + bottom) / 2, r);
+        correct(base + W, right - left, r);
+        correct(base + H, bottom - top, r);
+    }
+
+    private void correct(int k, float measured, float r) {
+        float s = p00[k] + r;
+        float gainPosition = p00[k] / s;
+        float gainVelocity = p01[k] / s;
+        float residual = measured - position[k];
+        position[k] += gainPosition * residual;
+        velocity[k] += gainVelocity * residual;
+        p11[k] -= gainVelocity * p01[k];
+        p00[k] *= 1 - gainPosition;
+        p01[k] *= 1 - gainPosition;
+    }
+
+    private void start(float left, float top, float right, float bottom, float score, int classId) {
+        int t = count++;
+        ids[t] = nextId++;
+        classIds[t] = classId;
+        scores[t] = score;
+        confidence[t] = 1f;
+        hits[t] = 1;
+        ages[t] = 1;
+        misses[t] = 0;
+        int base = t * 4;
+        position[base + CX] = (left + right) / 2;
+        position[base + CY] = (top + bottom) / 2;
+        position[base + W] = right - left;
+        position[base + H] = bottom - top;
+        float h = bottom - top;
+        float pPosition = square(2 * positionNoise * h);
+        float pVelocity = square(10 * velocityNoise * h);
+        for (int k = base; k < base + 4; k++) {
+            velocity[k] = 0;
+            p00[k] = pPosition;
+            p01[k] = 0;
+            p11[k] = pVelocity;
+        }
+    }
+
+    private void move(int from, int to) {
+        if (from == to)
+            return;
+        ids[to] = ids[from];
+        classIds[to] = classIds[from];
+        scores[to] = scores[from];
+        confidence[to] = confidence[from];
+        hits[to] = hits[from];
+        ages[to] = ages[from];
+        misses[to] = misses[from];
+        System.arraycopy(position, from * 4, position, to * 4, 4);
+        System.arraycopy(velocity, from * 4, velocity, to * 4, 4);
+        System.arraycopy(p00, from * 4, p00, to * 4, 4);
+        System.arraycopy(p01, from * 4, p01, to * 4, 4);
+        System.arraycopy(p11, from * 4, p11, to * 4, 4);
+    }
+
+    private void export() {
+        int n = 0;
+        for (int t = 0; t < count; t++) {
+            if (misses[t] != 0)
+                continue;
+            int base = t * 4;
+            float halfW = position[base + W] / 2;
+            float halfH = position[base + H] / 2;
+            outIds[n] = ids[t];
+            outClassIds[n] = classIds[t];
+            outScores[n] = scores[t];
+            outConfidence[n] = confidence[t];
+            outHits[n] = hits[t];
+            outAges[n] = ages[t];
+            outLeft[n] = position[base + CX] - halfW;
+            outTop[n] = position[base + CY] - halfH;
+            outRight[n] = position[base + CX] + halfW;
+            outBottom[n] = position[base + CY] + halfH;
+            n++;
+        }
+        outCount = n;
+    }
+
+    static float iou(float aLeft, float aTop, float aRight, float aBottom,
+                     float bLeft, float bTop, float bRight, float bBottom) {
+        float w = Math.min(aRight, bRight) - Math.max(aLeft, bLeft);
+        float h = Math.min(aBottom, bBottom) - Math.max(aTop, bTop);
+        if (w <= 0 || h <= 0)
+            return 0f;
+        float intersection = w * h;
+        float union = (aRight - aLeft) * (aBottom - aTop) + (bRight - bLeft) * (bBottom - bTop) - intersection;
+        return union <= 0 ? 0f : intersection / union;
+    }
+
+    private static float square(float x) {
+        return x * x;
+    }
+
+    /** Lowest confidence among the reported tracks; 1 when there are none. */
+    public float getMinConfidence() {
+        float min = 1f;
+        for (int i = 0; i < outCount; i++)
+            min = Math.min(min, outConfidence[i]);
+        return min;
+    }
+
+    /** Number of tracks held, reported or not. */
+    public int getTrackCount() {
+        return count;
+    }
+
+    public int getCount() {
+        return outCount;
+    }
+
+    public int[] getIds() {
+        return outIds;
+    }
+
+    public int[] getClassIds() {
+        return outClassIds;
+    }
+
+    /** Score of the last matched detection. */
+    public float[] getScores() {
+        return outScores;
+    }
+
+    /** 1 on a keyframe that matched the track, decayed once per predicted frame since. */
+    public float[] getConfidence() {
+        return outConfidence;
+    }
+
+    /** Keyframes on which the track was matched, counting the one that started it. */
+    public int[] getHits() {
+        return outHits;
+    }
+
+    /** Frames since the track started, counting that frame as 1. */
+    public int[] getAges() {
+        return outAges;
+    }
+
+    public float[] getLeft() {
+        return outLeft;
+    }
+
+    public float[] getTop() {
+        return outTop;
+    }
+
+    public float[] getRight() {
+        return outRight;
+    }
+
+    public float[] getBottom() {
+        return outBottom;
+    }
+}
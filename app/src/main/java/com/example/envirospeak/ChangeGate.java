@@ -0,0 +1,134 @@
+package com.example.envirospeak;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides per frame whether a model has to run again or its previous result can be reused.
+ * The change metric is the mean absolute difference between the frame's luma thumbnail and
+ * the thumbnail of the last frame the model actually ran on, so slow drift still adds up to
+ * a refresh. A refresh is forced every {@code refreshInterval} frames regardless.
+ *
+ * Separate instances gate separate models (depth and detect) from the same thumbnail.
+ * Decisions are not thread-safe; the counters may be read from any thread.
+ */
+public class ChangeGate {
+
+    private final byte[] reference;
+    private boolean hasReference;
+    private float threshold = 4f;
+    private int refreshInterval = 10;
+    private int sinceRefresh;
+    private float lastDifference;
+
+    private volatile long evaluated;
+    private volatile long skipped;
+    private volatile long forced;
+
+    /** @param thumbnailSize number of luma samples in the thumbnails passed to {@link #admit} */
+    public ChangeGate(int thumbnailSize) {
+        reference = new byte[thumbnailSize];
+    }
+
+    /** Mean absolute luma difference (0-255) above which the model runs again. */
+    public ChangeGate setThreshold(float threshold) {
+        this.threshold = threshold;
+        return this;
+    }
+
+    /** The model runs at least once every this many frames; 1 disables skipping. */
+    public ChangeGate setRefreshInterval(int refreshInterval) {
+        if (refreshInterval < 1)
+            throw new IllegalArgumentException("refreshInterval must be >= 1");
+        this.refreshInterval = refreshInterval;
+        return this;
+    }
+
+    /**
+     * @return true when the model has to run on this frame, false when the previous result
+     * can be reused. A true answer makes this thumbnail the new reference.
+     */
+    public boolean admit(byte[] thumbnail) {
+        evaluated++;
+        sinceRefresh++;
+        if (!hasReference || sinceRefresh >= refreshInterval) {
+            if (hasReference)
+                forced++;
+            lastDifference = hasReference ? difference(thumbnail) : Float.NaN;
+            refresh(thumbnail);
+            return true;
+        }
+        lastDifference = difference(thumbnail);
+        if (lastDifference > threshold) {
+            refresh(thumbnail);
+            return true;
+        }
+        skipped++;
+        return false;
+    }
+
+    /** Forgets the reference, so the next frame runs the model. */
+    public void reset() {
+        hasReference = false;
+    }
+
+    private void refresh(byte[] thumbnail) {
+        System.arraycopy(thumbnail, 0, reference, 0, reference.length);
+        hasReference = true;
+        sinceRefresh = 0;
+    }
+
+    private float difference(byte[] thumbnail) {
+        long sum = 0;
+        for (int i = 0; i < reference.length; i++)
+            sum += Math.abs((thumbnail[i] & 0xFF) - (reference[i] & 0xFF));
+        return (float) sum / reference.length;
+    }
+
+    /** Change metric of the last decision; NaN when there was nothing to compare with. */
+    public float getLastDifference() {
+        return lastDifference;
+    }
+
+    public long getEvaluated() {
+        return evaluated;
+    }
+
+    /** Frames that reused the previous result. */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /** Frames that ran only because the refresh interval was reached. */
+    public long getForced() {
+        return forced;
+    }
+
+    /** Fraction of frames that reused the previous result. */
+    public float getSkipRate() {
+        long total = evaluated;
+        return total == 0 ? 0f : (float) skipped / total;
+    }
+
+    /**
+     * Downsamples a luma plane into a {@code width x height} thumbnail. Each cell averages a
+     * 4x4 grid of samples spread over it, which is cheap yet stable against sensor noise.
+     */
+    public static void thumbnail(ByteBuffer luma, int lumaWidth, int lumaHeight, int rowStride,
+                                 byte[] out, int width, int height) {
+        for (int ty = 0; ty < height; ty++) {
+            int y0 = ty * lumaHeight / height;
+            int cellHeight = (ty + 1) * lumaHeight / height - y0;
+            for (int tx = 0; tx < width; tx++) {
+                int x0 = tx * lumaWidth / width;
+                int cellWidth = (tx + 1) * lumaWidth / width - x0;
+                int sum = 0;
+                for (int sy = 0; sy < 4; sy++) {
+                    int row = (y0 + (2 * sy + 1) * cellHeight / 8) * rowStride;
+                    for (int sx = 0; sx < 4; sx++)
+                        sum += luma.get(row + x0 + (2 * sx + 1) * cellWidth / 8) & 0xFF;
+                }
+                out[ty * width + tx] = (byte) ((sum + 8) >> 4);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.envirospeak;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the depth inside a detection box to one value. A single sample at the box center
+ * is noisy and lands on the background for hollow objects (chairs, bicycles), so the ROI
+ * strategies look at the inner part of the box instead:
+ * <ul>
+ * <li>CENTER: bilinear sample at the box center, like before.</li>
+ * <li>MEAN: mean of the inner box, O(1) per box from a summed-area table that is built at
+ * most once per depth map.</li>
+ * <li>TRIMMED_MEAN: mean of the inner box after dropping the lowest and highest
+ * {@code trimFraction} of the values.</li>
+ * <li>MEDIAN / PERCENTILE: order statistic of the inner box.</li>
+ * </ul>
+ * The last three select through a fixed-size histogram over the map's value range instead
+ * of sorting; values inside a bin are assumed evenly spread, which keeps the error below
+ * one bin width. Not thread-safe; use one instance per thread.
+ */
+public class DepthAggregator {
+
+    public enum Strategy { CENTER, MEAN, TRIMMED_MEAN, MEDIAN, PERCENTILE }
+
+    private static final int BINS = 256;
+
+    private final DepthSampler sampler = new DepthSampler();
+    private final int[] histogram = new int[BINS];
+    private final double[] binSums = new double[BINS];
+    private double[] integral = new double[0];
+    private boolean integralValid;
+    private float minDepth;
+    private float maxDepth;
+    private float binWidth;
+
+    private Strategy strategy = Strategy.MEDIAN;
+    private float innerBoxFraction = 0.5f;
+    private float trimFraction = 0.2f;
+    private float percentile = 0.5f;
+
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /** Fraction of the box width and height, centered, that the ROI strategies look at. */
+    public void setInnerBoxFraction(float innerBoxFraction) {
+        if (innerBoxFraction <= 0f || innerBoxFraction > 1f)
+            throw new IllegalArgumentException("innerBoxFraction must be in (0, 1]");
+        this.innerBoxFraction = innerBoxFraction;
+    }
+
+    /** Fraction dropped from each end by TRIMMED_MEAN. */
+    public void setTrimFraction(float trimFraction) {
+        if (trimFraction < 0f || trimFraction >= 0.5f)
+            throw new IllegalArgumentException("trimFraction must be in [0, 0.5)");
+        this.trimFraction = trimFraction;
+    }
+
+    /** Percentile used by PERCENTILE, in [0, 1]. */
+    public void setPercentile(float percentile) {
+        if (percentile < 0f || percentile > 1f)
+            throw new IllegalArgumentException("percentile must be in [0, 1]");
+        this.percentile = percentile;
+    }
+
+    /** See {@link DepthSampler#setDepthMap}. The map is not copied. */
+    public void setDepthMap(float[] depthMap, int width, int height, int viewWidth, int viewHeight) {
+        sampler.setDepthMap(depthMap, width, height, viewWidth, viewHeight);
+        integralValid = false;
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int i = 0; i < width * height; i++) {
+            float value = depthMap[i];
+            if (value < min)
+                min = value;
+            if (value > max)
+                max = value;
+        }
+        minDepth = min;
+        maxDepth = max;
+        binWidth = max > min ? (max - min) / BINS : 1f;
+    }
+
+    public DepthSampler getSampler() {
+        return sampler;
+    }
+
+    /** Depth of a box given in preview coordinates, using the current strategy. */
+    public float aggregate(float left, float top, float right, float bottom) {
+        if (strategy == Strategy.CENTER)
+            return sampler.sample((left + right) / 2, (top + bottom) / 2);
+
+        float insetX = (right - left) * (1f - innerBoxFraction) / 2;
+        float insetY = (bottom - top) * (1f - innerBoxFraction) / 2;
+        int x0 = (int) Math.ceil(sampler.toMapX(left + insetX));
+        int y0 = (int) Math.ceil(sampler.toMapY(top + insetY));
+        int x1 = (int) Math.floor(sampler.toMapX(right - insetX));
+        int y1 = (int) Math.floor(sampler.toMapY(bottom - insetY));
+        if (x1 < x0 || y1 < y0)
+            return sampler.sample((left + right) / 2, (top + bottom) / 2);
+
+        switch (strategy) {
+            case MEAN:
+                return mean(x0, y0, x1, y1);
+            case TRIMMED_MEAN:
+                fillHistogram(x0, y0, x1, y1);
+                return trimmedMean((x1 - x0 + 1) * (y1 - y0 + 1));
+            case MEDIAN:
+                fillHistogram(x0, y0, x1, y1);
+                return quantile((x1 - x0 + 1) * (y1 - y0 + 1), 0.5f);
+            default:
+                fillHistogram(x0, y0, x1, y1);
+                return quantile((x1 - x0 + 1) * (y1 - y0 + 1), percentile);
+        }
+    }
+
+    private float mean(int x0, int y0, int x1, int y1) {
+        if (!integralValid)
+            buildIntegral();
+        int stride = sampler.getMapWidth() + 1;
+        double sum = integral[(y1 + 1) * stride + x1 + 1] - integral[y0 * stride + x1 + 1]
+                - integral[(y1 + 1) * stride + x0] + integral[y0 * stride + x0];
+        return (float) (sum / ((x1 - x0 + 1) * (y1 - y0 + 1)));
+    }
+
+    private void buildIntegral() {
+        float[] map = sampler.getDepthMap();
+        int width = sampler.getMapWidth();
+        int height = sampler.getMapHeight();
+        int stride = width + 1;
+        if (integral.length != stride * (height + 1))
+            integral = new double[stride * (height + 1)];
+        // integral[(y + 1) * stride + x + 1] holds the sum of map[0..y][0..x]
+        for (int y = 0; y < height; y++) {
+            double rowSum = 0;
+            int above = y * stride;
+            int row = above + stride;
+            for (int x = 0; x < width; x++) {
+                rowSum += map[y * width + x];
+                integral[row + x + 1] = integral[above + x + 1] + rowSum;
+            }
+        }
+        integralValid = true;
+    }
+
+    private void fillHistogram(int x0, int y0, int x1, int y1) {
+        Arrays.fill(histogram, 0);
+        Arrays.fill(binSums, 0);
+        float[] map = sampler.getDepthMap();
+        int width = sampler.getMapWidth();
+        float scale = 1f / binWidth;
+        for (int y = y0; y <= y1; y++) {
+            int row = y * width;
+            for (int x = x0; x <= x1; x++) {
+                float value = map[row + x];
+                int bin = (int) ((value - minDepth) * scale);
+                if (bin >= BINS)
+                    bin = BINS - 1;
+                histogram[bin]++;
+                binSums[bin] += value;
+            }
+        }
+    }
+
+    private float quantile(int count, float q) {
+        float rank = q * (count - 1);
+        int seen = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            int inBin = histogram[bin];
+            if (inBin == 0)
+                continue;
+            if (rank < seen + inBin) {
+                float within = (rank - seen + 0.5f) / inBin;
+                // Interpolation can leave the map's range, e.g. by half a bin on a flat map
+                return Math.max(minDepth, Math.min(maxDepth, minDepth + (bin + within) * binWidth));
+            }
+            seen += inBin;
+        }
+        return maxDepth;
+    }
+
+    private float trimmedMean(int count) {
+        int low = (int) (count * trimFraction);
+        int high = count - low;
+        double sum = 0;
+        int seen = 0;
+        for (int bin = 0; bin < BINS && seen < high; bin++) {
+            int inBin = histogram[bin];
+            if (inBin == 0)
+                continue;
+            int keepFrom = Math.max(low, seen);
+            int keepTo = Math.min(high, seen + inBin);
+            if (keepTo > keepFrom)
+                sum += binSums[bin] * (keepTo - keepFrom) / inBin;
+            seen += inBin;
+        }
+        return (float) (sum / (high - low));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.envirospeak;
+
+/**
+ * Orders detections from nearest to farthest by their MiDaS depth (relative inverse depth,
+ * so descending value), as a permutation of indices and without boxing. The order is stable:
+ * equal depths keep their index order. NaN depths go last.
+ * <ul>
+ * <li>Up to {@code insertionThreshold} entries: insertion sort.</li>
+ * <li>More: LSD radix sort, four 8-bit passes over the float bits mapped to an unsigned key.</li>
+ * <li>With {@code topK} set, only the K nearest are found and ordered. For small K that is a
+ * bounded insertion, O(N K), so the rest is never sorted.</li>
+ * </ul>
+ * All scratch space is allocated up front for {@code capacity} entries. Not thread-safe.
+ */
+public class DepthOrder {
+
+    private static final int RADIX_BITS = 8;
+    private static final int BUCKETS = 1 << RADIX_BITS;
+
+    private final int capacity;
+    private final int[] keys;
+    private final int[] keysScratch;
+    private final int[] indexScratch;
+    private final int[] bucketCounts = new int[BUCKETS];
+    private int topK;
+    private int insertionThreshold = 32;
+
+    public DepthOrder(int capacity) {
+        this.capacity = capacity;
+        keys = new int[capacity];
+        keysScratch = new int[capacity];
+        indexScratch = new int[capacity];
+    }
+
+    /** Only the K nearest entries are ordered and returned; 0 orders all of them. */
+    public DepthOrder setTopK(int topK) {
+        this.topK = topK;
+        return this;
+    }
+
+    /** Largest input, or top-K, that is insertion sorted; above it radix sort is used. */
+    public DepthOrder setInsertionThreshold(int insertionThreshold) {
+        this.insertionThreshold = insertionThreshold;
+        return this;
+    }
+
+    /**
+     * @param depths depth per entry, larger is closer
+     * @param count number of entries to order
+     * @param order receives the indices, nearest first
+     * @return number of indices written: count, or top-K if that is smaller
+     */
+    public int sort(float[] depths, int count, int[] order) {
+        if (count > capacity)
+            throw new IllegalArgumentException("count " + count + " exceeds capacity " + capacity);
+        int limit = topK > 0 && topK < count ? topK : count;
+        for (int i = 0; i < count; i++)
+            keys[i] = key(depths[i]);
+        if (count <= insertionThreshold || limit <= insertionThreshold)
+            return insertion(count, limit, order);
+        radix(count, order);
+        return limit;
+    }
+
+    /**
+     * Maps a depth to an int whose unsigned order is nearest first: larger floats get smaller
+     * keys, and NaN the largest key of all.
+     */
+    static int key(float depth) {
+        if (Float.isNaN(depth))
+            return -1;
+        int bits = Float.floatToIntBits(depth);
+        // Unsigned order now matches float order; inverting makes it descending
+        return ~(bits ^ ((bits >> 31) | 0x80000000));
+    }
+
+    /** Keeps the {@code limit} smallest keys in order[0, limit), inserting each entry in turn. */
+    private int insertion(int count, int limit, int[] order) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int key = keys[i];
+            // Strictly smaller only, so earlier entries win ties
+            if (n == limit && !less(key, keys[order[n - 1]]))
+                continue;
+            int j = n < limit ? n++ : n - 1;
+            while (j > 0 && less(key, keys[order[j - 1]])) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return n;
+    }
+
+    /** Unsigned comparison; Integer.compareUnsigned needs API 26. */
+    private static boolean less(int a, int b) {
+        return (a ^ Integer.MIN_VALUE) < (b ^ Integer.MIN_VALUE);
+    }
+
+    private void radix(int count, int[] order) {
+        int[] srcKeys = keys;
+        int[] srcIndex = order;
+        int[] dstKeys = keysScratch;
+        int[] dstIndex = indexScratch;
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+        for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+            for (int b = 0; b < BUCKETS; b++)
+                bucketCounts[b] = 0;
+            for (int i = 0; i < count; i++)
+                bucketCounts[(srcKeys[i] >>> shift) & (BUCKETS - 1)]++;
+            int offset = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                int c = bucketCounts[b];
+                bucketCounts[b] = offset;
+                offset += c;
+            }
+            for (int i = 0; i < count; i++) {
+                int key = srcKeys[i];
+                int position = bucketCounts[(key >>> shift) & (BUCKETS - 1)]++;
+                dstKeys[position] = key;
+                dstIndex[position] = srcIndex[i];
+            }
+            int[] swapKeys = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = swapKeys;
+            int[] swapIndex = srcIndex;
+            srcIndex = dstIndex;
+            dstIndex = swapIndex;
+        }
+        // Four passes, so the sorted indices ended up back in order
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.envirospeak;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bilinear resize of the MiDaS depth map to preview resolution, with the same corner-aligned
+ * sampling the old MainActivity.resizeDepthMap() used.
+ *
+ * Column and row index/weight tables are computed once per size pair, the worker threads
+ * live as long as the resampler and output goes to a small ring of flat row-major buffers,
+ * so after the first frame at a given size nothing is allocated. A returned buffer stays
+ * valid until {@code outputBuffers} further calls have been made.
+ *
+ * A band handed to a worker is claimed by whichever thread gets to it first, the worker or
+ * the caller once it is done with its own band, so a call never waits on a worker that is
+ * gone. After {@link #shutdown} calls keep working on the calling thread alone.
+ */
+public class DepthResampler {
+
+    private static final int MIN_PIXELS_PER_BAND = 32 * 1024;
+
+    private final Worker[] workers;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+    private Thread caller;
+    // First exception thrown by a worker during the current call
+    private volatile RuntimeException failure;
+
+    private final float[][] outputs;
+    private int nextOutput;
+    private float[] output;
+    private float[] flatSource = new float[0];
+
+    private float[] src;
+    private int srcWidth = -1;
+    private int srcHeight = -1;
+    private int dstWidth = -1;
+    private int dstHeight = -1;
+    private int bands;
+
+    private int[] xLow;
+    private int[] xHigh;
+    private float[] xWeight;
+    private int[] yLow;
+    private int[] yHigh;
+    private float[] yWeight;
+
+    /**
+     * @param threads total threads used per call, the calling thread included
+     * @param outputBuffers number of output buffers rotated between calls
+     */
+    public DepthResampler(int threads, int outputBuffers) {
+        if (threads < 1 || outputBuffers < 1)
+            throw new IllegalArgumentException("threads and outputBuffers must be >= 1");
+        outputs = new float[outputBuffers][];
+        workers = new Worker[threads - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i + 1);
+            workers[i].start();
+        }
+    }
+
+    public int getWidth() {
+        return dstWidth;
+    }
+
+    public int getHeight() {
+        return dstHeight;
+    }
+
+    public synchronized float[] resample(float[][] depthMap, int targetWidth, int targetHeight) {
+        int height = depthMap.length;
+        int width = depthMap[0].length;
+        if (flatSource.length != width * height)
+            flatSource = new float[width * height];
+        for (int y = 0; y < height; y++)
+            System.arraycopy(depthMap[y], 0, flatSource, y * width, width);
+        return resample(flatSource, width, height, targetWidth, targetHeight);
+    }
+
+    /**
+     * Resizes a row-major {@code width x height} map to {@code targetWidth x targetHeight}.
+     * The result is row-major: the value for (x, y) is at {@code y * targetWidth + x}.
+     */
+    public synchronized float[] resample(float[] depthMap, int width, int height, int targetWidth, int targetHeight) {
+        if (width != srcWidth || height != srcHeight || targetWidth != dstWidth || targetHeight != dstHeight)
+            prepare(width, height, targetWidth, targetHeight);
+
+        float[] out = outputs[nextOutput];
+        if (out == null || out.length != targetWidth * targetHeight) {
+            out = new float[targetWidth * targetHeight];
+            outputs[nextOutput] = out;
+        }
+        nextOutput = (nextOutput + 1) % outputs.length;
+
+        src = depthMap;
+        output = out;
+        if (bands == 1 || closed) {
+            resampleRows(0, targetHeight);
+        } else {
+            caller = Thread.currentThread();
+            pending.set(bands - 1);
+            for (int i = 0; i < bands - 1; i++) {
+                workers[i].assigned.set(true);
+                LockSupport.unpark(workers[i]);
+            }
+            try {
+                resampleBand(0);
+            } finally {
+                // Takes back the bands no worker has started, then waits for the others
+                for (int i = 0; i < bands - 1; i++) {
+                    if (workers[i].assigned.compareAndSet(true, false))
+                        runBand(i + 1);
+                }
+                while (pending.get() != 0)
+                    LockSupport.park(this);
+            }
+            RuntimeException error = failure;
+            if (error != null) {
+                failure = null;
+                throw error;
+            }
+        }
+        src = null;
+        return out;
+    }
+
+    /** Resamples a band handed out by {@link #resample}, from any thread. */
+    private void runBand(int band) {
+        try {
+            resampleBand(band);
+        } catch (RuntimeException e) {
+            if (failure == null)
+                failure = e;
+        } finally {
+            if (pending.decrementAndGet() == 0)
+                LockSupport.unpark(caller);
+        }
+    }
+
+    private void prepare(int width, int height, int targetWidth, int targetHeight) {
+        srcWidth = width;
+        srcHeight = height;
+        dstWidth = targetWidth;
+        dstHeight = targetHeight;
+
+        float xRatio = targetWidth > 1 ? (float) (width - 1) / (targetWidth - 1) : 0f;
+        float yRatio = targetHeight > 1 ? (float) (height - 1) / (targetHeight - 1) : 0f;
+
+        xLow = new int[targetWidth];
+        xHigh = new int[targetWidth];
+        xWeight = new float[targetWidth];
+        for (int x = 0; x < targetWidth; x++) {
+            float sx = xRatio * x;
+            int low = (int) Math.floor(sx);
+            xLow[x] = Math.min(low, width - 1);
+            // Float rounding can push the last column just past the edge
+            xHigh[x] = Math.min((int) Math.ceil(sx), width - 1);
+            xWeight[x] = sx - low;
+        }
+        yLow = new int[targetHeight];
+        yHigh = new int[targetHeight];
+        yWeight = new float[targetHeight];
+        for (int y = 0; y < targetHeight; y++) {
+            float sy = yRatio * y;
+            int low = (int) Math.floor(sy);
+            // Row offsets are stored pre-multiplied by the source width
+            yLow[y] = Math.min(low, height - 1) * width;
+            yHigh[y] = Math.min((int) Math.ceil(sy), height - 1) * width;
+            yWeight[y] = sy - low;
+        }
+
+        int usefulBands = Math.max(1, (targetWidth * targetHeight) / MIN_PIXELS_PER_BAND);
+        bands = Math.min(workers.length + 1, usefulBands);
+    }
+
+    private void resampleBand(int band) {
+        int rows = dstHeight / bands;
+        int extra = dstHeight % bands;
+        int start = band * rows + Math.min(band, extra);
+        int end = start + rows + (band < extra ? 1 : 0);
+        resampleRows(start, end);
+    }
+
+    private void resampleRows(int startRow, int endRow) {
+        final float[] in = src;
+        final float[] out = output;
+        final int width = dstWidth;
+        for (int y = startRow; y < endRow; y++) {
+            final int top = yLow[y];
+            final int bottom = yHigh[y];
+            final float yw = yWeight[y];
+            int o = y * width;
+            for (int x = 0; x < width; x++, o++) {
+                final int xl = xLow[x];
+                final int xh = xHigh[x];
+                final float xw = xWeight[x];
+                float topInterpolation = (1 - xw) * in[top + xl] + xw * in[top + xh];
+                float bottomInterpolation = (1 - xw) * in[bottom + xl] + xw * in[bottom + xh];
+                out[o] = (1 - yw) * topInterpolation + yw * bottomInterpolation;
+            }
+        }
+    }
+
+    /** Stops the worker threads; later calls run on the calling thread only. */
+    public void shutdown() {
+        closed = true;
+        for (Worker worker : workers)
+            LockSupport.unpark(worker);
+    }
+
+    private final class Worker extends Thread {
+        private final int band;
+        private final AtomicBoolean assigned = new AtomicBoolean();
+
+        Worker(int band) {
+            super("depth-resampler-" + band);
+            this.band = band;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                while (!closed && !assigned.get())
+                    LockSupport.park(this);
+                if (assigned.compareAndSet(true, false))
+                    runBand(band);
+                else if (closed)
+                    return;
+            }
+        }
+    }
+}
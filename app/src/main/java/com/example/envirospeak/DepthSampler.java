@@ -0,0 +1,96 @@
+package com.example.envirospeak;
+
+/**
+ * Answers depth queries in preview coordinates directly from the low resolution MiDaS
+ * output, so the full preview-sized map only has to be built when something wants to
+ * draw it. Coordinates are mapped with the same corner-aligned ratio {@link DepthResampler}
+ * uses, so {@link #sample} returns what the resized map would hold at that point.
+ */
+public class DepthSampler {
+
+    private float[] depthMap;
+    private int width;
+    private int height;
+    private float xRatio;
+    private float yRatio;
+
+    /**
+     * @param depthMap row-major {@code width x height} depth map, not copied
+     * @param viewWidth width of the preview the queries are expressed in
+     * @param viewHeight height of the preview the queries are expressed in
+     */
+    public void setDepthMap(float[] depthMap, int width, int height, int viewWidth, int viewHeight) {
+        this.depthMap = depthMap;
+        this.width = width;
+        this.height = height;
+        this.xRatio = viewWidth > 1 ? (float) (width - 1) / (viewWidth - 1) : 0f;
+        this.yRatio = viewHeight > 1 ? (float) (height - 1) / (viewHeight - 1) : 0f;
+    }
+
+    public int getMapWidth() {
+        return width;
+    }
+
+    public int getMapHeight() {
+        return height;
+    }
+
+    public float[] getDepthMap() {
+        return depthMap;
+    }
+
+    /** Map column for a preview x coordinate, clamped to the map. */
+    public float toMapX(float viewX) {
+        return clamp(viewX * xRatio, width - 1);
+    }
+
+    /** Map row for a preview y coordinate, clamped to the map. */
+    public float toMapY(float viewY) {
+        return clamp(viewY * yRatio, height - 1);
+    }
+
+    /** Bilinearly interpolated depth at a preview coordinate. */
+    public float sample(float viewX, float viewY) {
+        return sampleMap(toMapX(viewX), toMapY(viewY));
+    }
+
+    /** Bilinearly interpolated depth at a (fractional) map coordinate. */
+    public float sampleMap(float mapX, float mapY) {
+        int xl = (int) mapX;
+        int yl = (int) mapY;
+        int xh = Math.min(xl + 1, width - 1);
+        int yh = Math.min(yl + 1, height - 1);
+        float xw = mapX - xl;
+        float yw = mapY - yl;
+        int top = yl * width;
+        int bottom = yh * width;
+        float topInterpolation = (1 - xw) * depthMap[top + xl] + xw * depthMap[top + xh];
+        float bottomInterpolation = (1 - xw) * depthMap[bottom + xl] + xw * depthMap[bottom + xh];
+        return (1 - yw) * topInterpolation + yw * bottomInterpolation;
+    }
+
+    /**
+     * Mean depth of the map cells covered by a preview-space box. Boxes smaller than one map
+     * cell fall back to the bilinear sample at their center.
+     */
+    public float sampleBox(float left, float top, float right, float bottom) {
+        int x0 = (int) Math.ceil(toMapX(left));
+        int y0 = (int) Math.ceil(toMapY(top));
+        int x1 = (int) Math.floor(toMapX(right));
+        int y1 = (int) Math.floor(toMapY(bottom));
+        if (x1 < x0 || y1 < y0)
+            return sample((left + right) / 2, (top + bottom) / 2);
+
+        double sum = 0;
+        for (int y = y0; y <= y1; y++) {
+            int row = y * width;
+            for (int x = x0; x <= x1; x++)
+                sum += depthMap[row + x];
+        }
+        return (float) (sum / ((x1 - x0 + 1) * (y1 - y0 + 1)));
+    }
+
+    private static float clamp(float value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+}
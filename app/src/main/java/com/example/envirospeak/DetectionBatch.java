@@ -0,0 +1,157 @@
+package com.example.envirospeak;
+
+/**
+ * A frame's detections as parallel primitive arrays: box ({@code left, top, right, bottom}),
+ * score, class id, depth, distance and tracker state. The arrays are allocated once for
+ * {@code capacity} entries and reused frame after frame; {@link #clear} only resets the count.
+ * Decoding, NMS, tracking and depth fusion all fill and read batches, and {@link Recognition}s
+ * are only created for the few results that reach the UI or speech.
+ *
+ * Depth and distance are NaN and the track id -1 until set. Not thread-safe.
+ */
+public class DetectionBatch {
+
+    private final int capacity;
+    private int count;
+    private final float[] left;
+    private final float[] top;
+    private final float[] right;
+    private final float[] bottom;
+    private final float[] scores;
+    private final int[] classIds;
+    private final float[] depths;
+    private final float[] distances;
+    private final int[] trackIds;
+    private final int[] ages;
+    private final int[] hits;
+
+    public DetectionBatch(int capacity) {
+        this.capacity = capacity;
+        left = new float[capacity];
+        top = new float[capacity];
+        right = new float[capacity];
+        bottom = new float[capacity];
+        scores = new float[capacity];
+        classIds = new int[capacity];
+        depths = new float[capacity];
+        distances = new float[capacity];
+        trackIds = new int[capacity];
+        ages = new int[capacity];
+        hits = new int[capacity];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Appends a detection.
+     *
+     * @return its index
+     * @throws IllegalStateException when the batch is full
+     */
+    public int add(float left, float top, float right, float bottom, float score, int classId) {
+        if (count == capacity)
+            throw new IllegalStateException("DetectionBatch full at " + capacity);
+        int i = count++;
+        this.left[i] = left;
+        this.top[i] = top;
+        this.right[i] = right;
+        this.bottom[i] = bottom;
+        scores[i] = score;
+        classIds[i] = classId;
+        depths[i] = Float.NaN;
+        distances[i] = Float.NaN;
+        trackIds[i] = -1;
+        ages[i] = 0;
+        hits[i] = 0;
+        return i;
+    }
+
+    public void setTrack(int i, int trackId, int age, int hits) {
+        trackIds[i] = trackId;
+        ages[i] = age;
+        this.hits[i] = hits;
+    }
+
+    public void setDepth(int i, float depth) {
+        depths[i] = depth;
+    }
+
+    public void setDistance(int i, float distance) {
+        distances[i] = distance;
+    }
+
+    /** Copies entry {@code i} of {@code other} to the end of this batch. */
+    public int add(DetectionBatch other, int i) {
+        int j = add(other.left[i], other.top[i], other.right[i], other.bottom[i], other.scores[i], other.classIds[i]);
+        depths[j] = other.depths[i];
+        distances[j] = other.distances[i];
+        setTrack(j, other.trackIds[i], other.ages[i], other.hits[i]);
+        return j;
+    }
+
+    /** A Recognition with the values of entry {@code i}. */
+    public Recognition toRecognition(int i, String labelName) {
+        Recognition recognition = new Recognition(classIds[i], labelName, scores[i],
+                left[i], top[i], right[i], bottom[i]);
+        recognition.setDepth(depths[i]);
+        recognition.setDistance(distances[i]);
+        recognition.setTrack(trackIds[i], ages[i], hits[i]);
+        return recognition;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public float[] getLeft() {
+        return left;
+    }
+
+    public float[] getTop() {
+        return top;
+    }
+
+    public float[] getRight() {
+        return right;
+    }
+
+    public float[] getBottom() {
+        return bottom;
+    }
+
+    public float[] getScores() {
+        return scores;
+    }
+
+    public int[] getClassIds() {
+        return classIds;
+    }
+
+    /** MiDaS relative inverse depth, larger is closer; NaN when not fused. */
+    public float[] getDepths() {
+        return depths;
+    }
+
+    /** Estimated distance in meters; NaN when unknown. */
+    public float[] getDistances() {
+        return distances;
+    }
+
+    public int[] getTrackIds() {
+        return trackIds;
+    }
+
+    public int[] getAges() {
+        return ages;
+    }
+
+    public int[] getHits() {
+        return hits;
+    }
+}
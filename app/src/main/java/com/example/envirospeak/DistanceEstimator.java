@@ -0,0 +1,289 @@
+package com.example.envirospeak;
+
+import java.util.Arrays;
+
+/**
+ * Metric distance, in meters, of tracked detections, from two sources:
+ * <ul>
+ * <li>Size prior: the typical real height {@code H} of the COCO class and the pinhole model,
+ * {@code distance = H * focalLength / boxHeight}. Only used when the box is not cut by the top
+ * or bottom edge of the view, since its height would be too small.</li>
+ * <li>Depth: MiDaS gives relative inverse depth {@code v}, so metric inverse depth is modeled as
+ * {@code 1 / distance = scale * v + shift}. Scale and shift are a least-squares fit over the
+ * latest {@code sampleCapacity} (depth, size prior) pairs, kept in a ring buffer. MiDaS's scale
+ * drifts between inferences and from one device to another, so the fit is refreshed every frame
+ * that brings new pairs, and old pairs fall out of it.</li>
+ * </ul>
+ * When both are available they are averaged; objects of classes without a prior (or cut by the
+ * edge) get the depth-based distance only, once the fit is good.
+ *
+ * Distances are cached per track id and only recomputed every {@code refreshInterval} frames,
+ * or sooner when the box height changed by more than {@code refreshHeightChange}. All state is
+ * in arrays allocated up front. Not thread-safe.
+ */
+public class DistanceEstimator {
+
+    /**
+     * Typical height in meters of each COCO class, in YOLOv5 class order; NaN where height
+     * depends too much on pose or varies too much (skis, pizza, cell phone, ...).
+     */
+    static final float[] COCO_HEIGHTS = {
+            1.70f, 1.00f, 1.50f, 1.10f, Float.NaN,          // person, bicycle, car, motorcycle, airplane
+            3.00f, 3.80f, 3.00f, Float.NaN, 0.90f,          // bus, train, truck, boat, traffic light
+            0.60f, 0.75f, 1.30f, 0.85f, 0.20f,              // fire hydrant, stop sign, parking meter, bench, bird
+            0.30f, 0.50f, 1.60f, 0.90f, 1.40f,              // cat, dog, horse, sheep, cow
+            3.00f, 1.20f, 1.40f, 5.00f, 0.50f,              // elephant, bear, zebra, giraffe, backpack
+            Float.NaN, 0.30f, Float.NaN, 0.65f, Float.NaN,  // umbrella, handbag, tie, suitcase, frisbee
+            Float.NaN, Float.NaN, 0.22f, Float.NaN, Float.NaN, // skis, snowboard, sports ball, kite, baseball bat
+            Float.NaN, Float.NaN, Float.NaN, Float.NaN, 0.25f, // baseball glove, skateboard, surfboard, tennis racket, bottle
+            0.20f, 0.10f, Float.NaN, Float.NaN, Float.NaN,  // wine glass, cup, fork, knife, spoon
+            Float.NaN, Float.NaN, 0.08f, Float.NaN, 0.08f,  // bowl, banana, apple, sandwich, orange
+            Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN, // broccoli, carrot, hot dog, pizza, donut
+            Float.NaN, 0.90f, 0.85f, Float.NaN, Float.NaN,  // cake, chair, couch, potted plant, bed
+            0.75f, 0.75f, Float.NaN, Float.NaN, Float.NaN,  // dining table, toilet, tv, laptop, mouse
+            Float.NaN, Float.NaN, Float.NaN, 0.30f, 0.90f,  // remote, keyboard, cell phone, microwave, oven
+            0.20f, Float.NaN, 1.75f, Float.NaN, Float.NaN,  // toaster, sink, refrigerator, book, clock
+            Float.NaN, Float.NaN, Float.NaN, Float.NaN, Float.NaN, // vase, scissors, teddy bear, hair drier, toothbrush
+    };
+
+    private final float[] classHeights;
+
+    // Ring buffer of (MiDaS depth, inverse prior distance) pairs
+    private final float[] sampleDepths;
+    private final float[] sampleInverseDistances;
+    private int sampleStart;
+    private int sampleCount;
+    private boolean samplesChanged;
+    private float scale = Float.NaN;
+    private float shift = Float.NaN;
+
+    // Direct-mapped per-track cache; a collision only costs a recomputation
+    private final int cacheMask;
+    private final int[] cachedTrackIds;
+    private final float[] cachedDistances;
+    private final float[] cachedHeights;
+    private final long[] cachedFrames;
+    private long frame;
+
+    private int minSamples = 8;
+    private int refreshInterval = 5;
+    private float refreshHeightChange = 0.15f;
+    private float edgeMargin = 0.02f;
+    private float minDistance = 0.2f;
+    private float maxDistance = 30f;
+
+    /**
+     * @param trackCapacity number of tracks expected at the same time
+     * @param sampleCapacity number of (depth, prior) pairs the fit is made on
+     */
+    public DistanceEstimator(int trackCapacity, int sampleCapacity) {
+        this(COCO_HEIGHTS, trackCapacity, sampleCapacity);
+    }
+
+    /** @param classHeights typical height in meters per class id, NaN when unknown */
+    public DistanceEstimator(float[] classHeights, int trackCapacity, int sampleCapacity) {
+        this.classHeights = classHeights;
+        sampleDepths = new float[sampleCapacity];
+        sampleInverseDistances = new float[sampleCapacity];
+        int cacheSize = Integer.highestOneBit(Math.max(1, trackCapacity * 2 - 1)) << 1;
+        cacheMask = cacheSize - 1;
+        cachedTrackIds = new int[cacheSize];
+        cachedDistances = new float[cacheSize];
+        cachedHeights = new float[cacheSize];
+        cachedFrames = new long[cacheSize];
+        reset();
+    }
+
+    /** Fewest pairs the depth fit needs before it is used. */
+    public DistanceEstimator setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+        return this;
+    }
+
+    /** A track's distance is recomputed after this many frames. */
+    public DistanceEstimator setRefreshInterval(int refreshInterval) {
+        this.refreshInterval = refreshInterval;
+        return this;
+    }
+
+    /** A track's distance is recomputed sooner when its box height changed by this fraction. */
+    public DistanceEstimator setRefreshHeightChange(float refreshHeightChange) {
+        this.refreshHeightChange = refreshHeightChange;
+        return this;
+    }
+
+    /** Boxes closer than this fraction of the view height to its top or bottom edge count as cut. */
+    public DistanceEstimator setEdgeMargin(float edgeMargin) {
+        this.edgeMargin = edgeMargin;
+        return this;
+    }
+
+    /** Distances are clamped to this range. */
+    public DistanceEstimator setDistanceRange(float minDistance, float maxDistance) {
+        this.minDistance = minDistance;
+        this.maxDistance = maxDistance;
+        return this;
+    }
+
+    /** Forgets the cached distances and the fit, e.g. after switching camera. */
+    public void reset() {
+        Arrays.fill(cachedTrackIds, -1);
+        sampleStart = 0;
+        sampleCount = 0;
+        samplesChanged = false;
+        scale = Float.NaN;
+        shift = Float.NaN;
+    }
+
+    /**
+     * Sets the distance of every entry of {@code batch}, NaN when it can't be estimated yet.
+     * Depths must be fused already.
+     *
+     * @param focalLength focal length in the same pixels as the boxes
+     * @param viewHeight height of the view the boxes are in
+     */
+    public void estimate(DetectionBatch batch, float focalLength, int viewHeight) {
+        frame++;
+        int count = batch.getCount();
+        int[] trackIds = batch.getTrackIds();
+        // New pairs first, so the entries recomputed below already use them
+        for (int i = 0; i < count; i++) {
+            if (needsRefresh(trackIds[i], height(batch, i))) {
+                float prior = prior(batch, i, focalLength, viewHeight);
+                float depth = batch.getDepths()[i];
+                if (prior == prior && depth == depth)
+                    addSample(depth, 1f / prior);
+            }
+        }
+        if (samplesChanged) {
+            fit();
+            samplesChanged = false;
+        }
+        for (int i = 0; i < count; i++) {
+            float height = height(batch, i);
+            int trackId = trackIds[i];
+            int slot = trackId & cacheMask;
+            if (!needsRefresh(trackId, height)) {
+                batch.setDistance(i, cachedDistances[slot]);
+                continue;
+            }
+            float distance = distance(batch, i, focalLength, viewHeight);
+            batch.setDistance(i, distance);
+            if (trackId >= 0) {
+                cachedTrackIds[slot] = trackId;
+                cachedDistances[slot] = distance;
+                cachedHeights[slot] = height;
+                cachedFrames[slot] = frame;
+            }
+        }
+    }
+
+    private boolean needsRefresh(int trackId, float height) {
+        if (trackId < 0)
+            return true;
+        int slot = trackId & cacheMask;
+        if (cachedTrackIds[slot] != trackId || frame - cachedFrames[slot] >= refreshInterval)
+            return true;
+        // NaN until the fit is good enough, so retried every frame until then
+        if (cachedDistances[slot] != cachedDistances[slot])
+            return true;
+        return Math.abs(height - cachedHeights[slot]) > refreshHeightChange * cachedHeights[slot];
+    }
+
+    private float distance(DetectionBatch batch, int i, float focalLength, int viewHeight) {
+        float prior = prior(batch, i, focalLength, viewHeight);
+        float fromDepth = fromDepth(batch.getDepths()[i]);
+        float distance;
+        if (prior == prior && fromDepth == fromDepth)
+            distance = (prior + fromDepth) / 2;
+        else if (prior == prior)
+            distance = prior;
+        else
+            distance = fromDepth;
+        if (distance != distance)
+            return Float.NaN;
+        return Math.max(minDistance, Math.min(maxDistance, distance));
+    }
+
+    /** Distance from the class height, or NaN. */
+    float prior(DetectionBatch batch, int i, float focalLength, int viewHeight) {
+        int classId = batch.getClassIds()[i];
+        if (classId < 0 || classId >= classHeights.length || !(focalLength > 0))
+            return Float.NaN;
+        float classHeight = classHeights[classId];
+        float margin = edgeMargin * viewHeight;
+        if (classHeight != classHeight || batch.getTop()[i] < margin || batch.getBottom()[i] > viewHeight - margin)
+            return Float.NaN;
+        float height = height(batch, i);
+        return height > 0 ? classHeight * focalLength / height : Float.NaN;
+    }
+
+    /** Distance from a MiDaS depth through the fit, or NaN. */
+    float fromDepth(float depth) {
+        if (depth != depth || scale != scale)
+            return Float.NaN;
+        float inverse = scale * depth + shift;
+        return inverse > 0 ? 1f / inverse : Float.NaN;
+    }
+
+    private static float height(DetectionBatch batch, int i) {
+        return batch.getBottom()[i] - batch.getTop()[i];
+    }
+
+    private void addSample(float depth, float inverseDistance) {
+        int capacity = sampleDepths.length;
+        int slot;
+        if (sampleCount < capacity) {
+            slot = (sampleStart + sampleCount++) % capacity;
+        } else {
+            slot = sampleStart;
+            sampleStart = (sampleStart + 1) % capacity;
+        }
+        sampleDepths[slot] = depth;
+        sampleInverseDistances[slot] = inverseDistance;
+        samplesChanged = true;
+    }
+
+    /** Ordinary least squares of inverse distance on depth; invalid until the samples allow it. */
+    private void fit() {
+        scale = Float.NaN;
+        shift = Float.NaN;
+        int n = sampleCount;
+        if (n < minSamples || n < 2)
+            return;
+        double meanDepth = 0;
+        double meanInverse = 0;
+        for (int k = 0; k < n; k++) {
+            meanDepth += sampleDepths[k];
+            meanInverse += sampleInverseDistances[k];
+        }
+        meanDepth /= n;
+        meanInverse /= n;
+        double covariance = 0;
+        double variance = 0;
+        for (int k = 0; k < n; k++) {
+            double d = sampleDepths[k] - meanDepth;
+            covariance += d * (sampleInverseDistances[k] - meanInverse);
+            variance += d * d;
+        }
+        // Needs spread in depth, and nearer (larger depth) must mean nearer in meters
+        if (variance <= 1e-12 * Math.max(1.0, meanDepth * meanDepth) * n || covariance <= 0)
+            return;
+        double a = covariance / variance;
+        scale = (float) a;
+        shift = (float) (meanInverse - a * meanDepth);
+    }
+
+    /** Fitted {@code 1 / distance = scale * depth + shift}; NaN while not fitted. */
+    public float getScale() {
+        return scale;
+    }
+
+    public float getShift() {
+        return shift;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+}
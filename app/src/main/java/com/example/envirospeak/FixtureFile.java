@@ -0,0 +1,49 @@
+package com.example.envirospeak;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Raw model outputs saved on the device and replayed by the :benchmark module. A fixture is
+ * just the floats, little-endian, without a header; its shape is the model's output shape.
+ */
+public final class FixtureFile {
+
+    private FixtureFile() {
+    }
+
+    public static void write(File file, float[] values) throws IOException {
+        write(file, FloatBuffer.wrap(values));
+    }
+
+    /** Writes the floats from index 0 to the buffer's limit. */
+    public static void write(File file, FloatBuffer values) throws IOException {
+        FloatBuffer source = values.duplicate();
+        source.rewind();
+        ByteBuffer bytes = ByteBuffer.allocate(source.remaining() * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asFloatBuffer().put(source);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes.array());
+        }
+    }
+
+    /**
+     * Reads exactly {@code count} floats.
+     *
+     * @throws java.io.EOFException when the stream holds fewer
+     */
+    public static float[] read(InputStream in, int count) throws IOException {
+        byte[] bytes = new byte[count * 4];
+        new DataInputStream(in).readFully(bytes);
+        float[] values = new float[count];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values);
+        return values;
+    }
+}
@@ -0,0 +1,363 @@
+package com.example.envirospeak;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Staged frame pipeline: capture, preprocess, depth, detect, fuse and render each run on
+ * their own single-threaded executor, so frame N+1 can be preprocessed while frame N is
+ * still in inference. Only the sink sees the finished frame, on the executor it was
+ * registered with (the main thread in the app, a direct executor in tests).
+ *
+ * The pipeline holds no Android types; the frame payload is whatever T the caller uses.
+ */
+public class FramePipeline<T> {
+
+    public enum StageId { CAPTURE, PREPROCESS, DEPTH, DETECT, FUSE, RENDER }
+
+    /**
+     * SEQUENTIAL runs depth then detect for each frame. FORK_JOIN runs both on their own
+     * threads at the same time and joins before fuse, so a frame costs max(depth, detect)
+     * instead of the sum. The two stages must not write the same frame fields. When one of
+     * them fails the frame is only reported, once, after the other one finished with it.
+     */
+    public enum ExecutionMode { SEQUENTIAL, FORK_JOIN }
+
+    public interface Stage<T> {
+        void process(T frame) throws Exception;
+    }
+
+    public interface Sink<T> {
+        void onFrameReady(T frame, Timings timings);
+
+        void onFrameDropped(T frame);
+
+        void onFrameFailed(T frame, Exception e);
+    }
+
+    /** Per frame wall time spent in each stage, in nanoseconds. */
+    public static final class Timings {
+        private final long[] stageNanos = new long[STAGES.length];
+        private long submittedAt;
+        private long forkedAt;
+        private long joinedAt;
+        private long completedAt;
+
+        public long getStageNanos(StageId stage) {
+            return stageNanos[stage.ordinal()];
+        }
+
+        /** Time from the start of depth/detect until both finished. */
+        public long getInferenceNanos() {
+            return joinedAt - forkedAt;
+        }
+
+        public long getLatencyNanos() {
+            return completedAt - submittedAt;
+        }
+    }
+
+    private static final StageId[] STAGES = StageId.values();
+
+    private static final int DEPTH = StageId.DEPTH.ordinal();
+    private static final int DETECT = StageId.DETECT.ordinal();
+    private static final int FUSE = StageId.FUSE.ordinal();
+
+    private final Stage<T>[] stages;
+    private final ThreadPoolExecutor[] executors;
+    private final ExecutionMode mode;
+    private final Sink<T> sink;
+    private final Executor sinkExecutor;
+    private final int maxInFlight;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLongArray stageNanos = new AtomicLongArray(STAGES.length);
+    private final AtomicLongArray stageCount = new AtomicLongArray(STAGES.length);
+    private volatile boolean shutdown;
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+
+    @SuppressWarnings("unchecked")
+    private FramePipeline(Builder<T> builder) {
+        this.sink = builder.sink;
+        this.sinkExecutor = builder.sinkExecutor;
+        this.maxInFlight = builder.maxInFlight;
+        this.mode = builder.mode;
+        this.stages = (Stage<T>[]) new Stage<?>[STAGES.length];
+        this.executors = new ThreadPoolExecutor[STAGES.length];
+        for (StageId id : STAGES) {
+            stages[id.ordinal()] = builder.stages.get(id);
+            // One slot beyond the frames for a task from getStageExecutor()
+            executors[id.ordinal()] = newStageExecutor(builder.name + "-" + id.name().toLowerCase(), maxInFlight + 1);
+        }
+    }
+
+    private static ThreadPoolExecutor newStageExecutor(final String name, int capacity) {
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+        // One thread per stage keeps frames in submission order
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), factory);
+    }
+
+    /**
+     * Admits a frame into the pipeline. Returns false, after reporting the frame to
+     * {@link Sink#onFrameDropped}, when {@code maxInFlight} frames are already being processed.
+     */
+    public boolean submit(T frame) {
+        submitted.incrementAndGet();
+        // Checked after counting the frame, so drain() can't miss it
+        if (inFlight.incrementAndGet() > maxInFlight || shutdown) {
+            frameDone();
+            drop(frame);
+            return false;
+        }
+        Job job = new Job(frame);
+        job.timings.submittedAt = System.nanoTime();
+        dispatch(job, 0);
+        return true;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return mode;
+    }
+
+    /**
+     * Runs tasks on the thread of {@code stage}, in order with its frames; for state that must
+     * stay on the thread that uses it, such as a GPU delegate. Only meant for a few tasks, e.g.
+     * building and closing a model: there is room for one beside a full queue of frames.
+     */
+    public Executor getStageExecutor(StageId stage) {
+        return executors[stage.ordinal()];
+    }
+
+    private void dispatch(final Job job, final int stage) {
+        try {
+            executors[stage].execute(() -> runStage(job, stage));
+        } catch (RejectedExecutionException e) {
+            if (isBranch(stage)) {
+                // The other branch may still be running on the frame
+                job.rejected = true;
+                joinBranch(job);
+            } else {
+                finishDropped(job);
+            }
+        }
+    }
+
+    private boolean isBranch(int stage) {
+        return mode == ExecutionMode.FORK_JOIN && (stage == DEPTH || stage == DETECT);
+    }
+
+    /** Called as each fork/join branch is done; the last one decides what happens to the frame. */
+    private void joinBranch(Job job) {
+        if (job.pendingBranches.decrementAndGet() != 0)
+            return;
+        Exception failure = job.failure.get();
+        if (failure != null) {
+            finishFailed(job, failure);
+        } else if (job.rejected) {
+            finishDropped(job);
+        } else {
+            job.timings.joinedAt = System.nanoTime();
+            dispatch(job, FUSE);
+        }
+    }
+
+    private void finishDropped(Job job) {
+        if (job.finished.compareAndSet(false, true)) {
+            frameDone();
+            drop(job.frame);
+        }
+    }
+
+    private void finishFailed(final Job job, final Exception e) {
+        if (job.finished.compareAndSet(false, true)) {
+            frameDone();
+            failed.incrementAndGet();
+            sinkExecutor.execute(() -> sink.onFrameFailed(job.frame, e));
+        }
+    }
+
+    private void frameDone() {
+        if (inFlight.decrementAndGet() == 0 && shutdown)
+            drained.complete(null);
+    }
+
+    private void drop(final T frame) {
+        dropped.incrementAndGet();
+        sinkExecutor.execute(() -> sink.onFrameDropped(frame));
+    }
+
+    private void runStage(final Job job, int current) {
+        Stage<T> s = stages[current];
+        long start = System.nanoTime();
+        try {
+            if (s != null)
+                s.process(job.frame);
+        } catch (Exception e) {
+            if (isBranch(current)) {
+                if (!job.failure.compareAndSet(null, e))
+                    job.failure.get().addSuppressed(e);
+                joinBranch(job);
+            } else {
+                finishFailed(job, e);
+            }
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        job.timings.stageNanos[current] = elapsed;
+        stageNanos.addAndGet(current, elapsed);
+        stageCount.incrementAndGet(current);
+
+        if (isBranch(current)) {
+            // The last branch to finish carries the frame on to fuse
+            joinBranch(job);
+        } else if (current + 1 == DEPTH) {
+            job.timings.forkedAt = System.nanoTime();
+            if (mode == ExecutionMode.FORK_JOIN) {
+                job.pendingBranches.set(2);
+                dispatch(job, DEPTH);
+                dispatch(job, DETECT);
+            } else {
+                dispatch(job, DEPTH);
+            }
+        } else if (current + 1 < STAGES.length) {
+            if (current == DETECT)
+                job.timings.joinedAt = System.nanoTime();
+            dispatch(job, current + 1);
+        } else if (job.finished.compareAndSet(false, true)) {
+            job.timings.completedAt = System.nanoTime();
+            frameDone();
+            completed.incrementAndGet();
+            sinkExecutor.execute(() -> sink.onFrameReady(job.frame, job.timings));
+        }
+    }
+
+    private final class Job {
+        final T frame;
+        final Timings timings = new Timings();
+        final AtomicInteger pendingBranches = new AtomicInteger();
+        final AtomicBoolean finished = new AtomicBoolean();
+        // Set by fork/join branches, acted on once both are done
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        volatile boolean rejected;
+
+        Job(T frame) {
+            this.frame = frame;
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getSubmittedFrames() {
+        return submitted.get();
+    }
+
+    public long getCompletedFrames() {
+        return completed.get();
+    }
+
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    public long getFailedFrames() {
+        return failed.get();
+    }
+
+    public double getAverageStageMillis(StageId stage) {
+        long count = stageCount.get(stage.ordinal());
+        return count == 0 ? 0.0 : stageNanos.get(stage.ordinal()) / (count * 1e6);
+    }
+
+    /**
+     * Stops admitting frames; the returned future completes once the frames in flight are done,
+     * after which nothing but {@link #getStageExecutor} tasks runs on the stage threads.
+     */
+    public CompletableFuture<Void> drain() {
+        shutdown = true;
+        if (inFlight.get() == 0)
+            drained.complete(null);
+        return drained;
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        for (ThreadPoolExecutor executor : executors)
+            executor.shutdownNow();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor executor : executors) {
+            if (!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                return false;
+        }
+        return true;
+    }
+
+    public static class Builder<T> {
+        private final Map<StageId, Stage<T>> stages = new EnumMap<>(StageId.class);
+        private String name = "pipeline";
+        private int maxInFlight = 3;
+        private ExecutionMode mode = ExecutionMode.SEQUENTIAL;
+        private Sink<T> sink;
+        private Executor sinkExecutor = Runnable::run;
+
+        public Builder<T> setName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /** Stages left unset are pass-through. */
+        public Builder<T> setStage(StageId id, Stage<T> stage) {
+            stages.put(id, stage);
+            return this;
+        }
+
+        public Builder<T> setMaxInFlight(int maxInFlight) {
+            if (maxInFlight < 1)
+                throw new IllegalArgumentException("maxInFlight must be >= 1");
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder<T> setExecutionMode(ExecutionMode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        public Builder<T> setSink(Sink<T> sink, Executor executor) {
+            this.sink = sink;
+            this.sinkExecutor = executor;
+            return this;
+        }
+
+        public FramePipeline<T> build() {
+            if (sink == null)
+                throw new IllegalStateException("sink not set");
+            return new FramePipeline<>(this);
+        }
+    }
+}
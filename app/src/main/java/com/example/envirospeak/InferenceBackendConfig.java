@@ -0,0 +1,85 @@
+package com.example.envirospeak;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How an interpreter should be set up: CPU threads, XNNPACK, and which hardware backends to
+ * try in which order. With the probe enabled, every backend in the order that can be created
+ * is timed on a canned input and the fastest one wins; otherwise the first one that can be
+ * created does. CPU is always tried last, so selection never ends up without an interpreter.
+ */
+public class InferenceBackendConfig {
+
+    public enum Backend { GPU, NNAPI, CPU }
+
+    private int numThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private boolean useXnnpack = true;
+    private List<Backend> backends = Collections.unmodifiableList(Arrays.asList(Backend.GPU, Backend.NNAPI, Backend.CPU));
+    private boolean probe = false;
+    private int probeRuns = 3;
+
+    /** CPU threads of the interpreter; also used for the ops a delegate leaves on the CPU. */
+    public InferenceBackendConfig setNumThreads(int numThreads) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("numThreads must be >= 1");
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public InferenceBackendConfig setUseXnnpack(boolean useXnnpack) {
+        this.useXnnpack = useXnnpack;
+        return this;
+    }
+
+    /**
+     * Hardware backends in order of preference. CPU always goes last, also when it is listed
+     * earlier or not at all, so it stays the fallback of every other backend.
+     */
+    public InferenceBackendConfig setBackends(Backend... backends) {
+        ArrayList<Backend> order = new ArrayList<>();
+        for (Backend backend : backends) {
+            if (backend != Backend.CPU && !order.contains(backend))
+                order.add(backend);
+        }
+        order.add(Backend.CPU);
+        this.backends = Collections.unmodifiableList(order);
+        return this;
+    }
+
+    /** Time every available backend at startup and keep the fastest. */
+    public InferenceBackendConfig setProbe(boolean probe) {
+        this.probe = probe;
+        return this;
+    }
+
+    /** Timed runs per backend when probing, after one untimed warm-up run. */
+    public InferenceBackendConfig setProbeRuns(int probeRuns) {
+        if (probeRuns < 1)
+            throw new IllegalArgumentException("probeRuns must be >= 1");
+        this.probeRuns = probeRuns;
+        return this;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public boolean getUseXnnpack() {
+        return useXnnpack;
+    }
+
+    public List<Backend> getBackends() {
+        return backends;
+    }
+
+    public boolean getProbe() {
+        return probe;
+    }
+
+    public int getProbeRuns() {
+        return probeRuns;
+    }
+}
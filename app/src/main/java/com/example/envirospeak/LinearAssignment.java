@@ -0,0 +1,122 @@
+package com.example.envirospeak;
+
+/**
+ * Minimum-cost linear assignment (Hungarian algorithm, shortest augmenting path with
+ * potentials, O(n^2 m)) over a row-major primitive cost matrix. Rectangular matrices are
+ * fine: with more rows than columns the problem is solved transposed, and the rows left over
+ * come back unassigned.
+ *
+ * Every row gets a column whenever there are enough columns, however high the cost; callers
+ * gate the result, e.g. reject pairs whose IoU is too low. All scratch space is allocated up
+ * front for {@code capacity x capacity}; not thread-safe.
+ */
+public class LinearAssignment {
+
+    private final int capacity;
+    private final float[] transposed;
+    private final double[] u;
+    private final double[] v;
+    private final double[] minv;
+    private final int[] p;
+    private final int[] way;
+    private final boolean[] used;
+    private final int[] rowAssignment;
+
+    /** @param capacity largest number of rows or columns passed to {@link #solve} */
+    public LinearAssignment(int capacity) {
+        this.capacity = capacity;
+        transposed = new float[capacity * capacity];
+        u = new double[capacity + 1];
+        v = new double[capacity + 1];
+        minv = new double[capacity + 1];
+        p = new int[capacity + 1];
+        way = new int[capacity + 1];
+        used = new boolean[capacity + 1];
+        rowAssignment = new int[capacity];
+    }
+
+    /**
+     * @param cost {@code rows x cols} costs, row-major, {@code cost[row * cols + col]}
+     * @return the column assigned to each row, -1 when unassigned; valid until the next call
+     */
+    public int[] solve(float[] cost, int rows, int cols) {
+        if (rows > capacity || cols > capacity)
+            throw new IllegalArgumentException("Matrix " + rows + "x" + cols + " exceeds capacity " + capacity);
+        for (int i = 0; i < rows; i++)
+            rowAssignment[i] = -1;
+        if (rows == 0 || cols == 0)
+            return rowAssignment;
+
+        if (rows <= cols) {
+            run(cost, rows, cols);
+            for (int j = 1; j <= cols; j++) {
+                if (p[j] != 0)
+                    rowAssignment[p[j] - 1] = j - 1;
+            }
+        } else {
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++)
+                    transposed[j * rows + i] = cost[i * cols + j];
+            }
+            run(transposed, cols, rows);
+            for (int j = 1; j <= rows; j++) {
+                if (p[j] != 0)
+                    rowAssignment[j - 1] = p[j] - 1;
+            }
+        }
+        return rowAssignment;
+    }
+
+    /** Assigns every one of n rows to a distinct one of m >= n columns; p[col] is the 1-based row. */
+    private void run(float[] a, int n, int m) {
+        for (int j = 0; j <= m; j++) {
+            v[j] = 0;
+            p[j] = 0;
+        }
+        for (int i = 0; i <= n; i++)
+            u[i] = 0;
+
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            for (int j = 0; j <= m; j++) {
+                minv[j] = Double.POSITIVE_INFINITY;
+                used[j] = false;
+            }
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                int rowBase = (i0 - 1) * m - 1;
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (used[j])
+                        continue;
+                    double reduced = a[rowBase + j] - u[i0] - v[j];
+                    if (reduced < minv[j]) {
+                        minv[j] = reduced;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+    }
+}
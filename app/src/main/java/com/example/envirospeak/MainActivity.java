@@ -1,8 +1,12 @@
 package com.example.envirospeak;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
+import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageCapture;
@@ -19,28 +23,28 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.hardware.camera2.CameraCharacteristics;
 import android.os.Bundle;
-import android.speech.tts.TextToSpeech;
 import android.util.Log;
+import android.util.SizeF;
 import android.view.View;
 import android.widget.Button;
 import android.widget.Toast;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Locale;
-import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.opencv.android.OpenCVLoader;
 
@@ -48,15 +52,80 @@ import org.opencv.android.OpenCVLoader;
 public class MainActivity extends AppCompatActivity implements View.OnClickListener, ImageAnalysis.Analyzer {
 
     private PreviewView pview;
-    private boolean analysis_on;
+    private volatile boolean analysis_on;
     private ListenableFuture<ProcessCameraProvider> provider;
+    private static final String YOLO_MODEL = "yolov5s_dynamic_range.tflite";
+    private static final String MIDAS_MODEL = "midas_dynamic_range.tflite";
+    private static final String LABEL_FILE = "coco_label.txt";
+    private ModelRegistry modelRegistry;
+    private CompletableFuture<Yolov5Detector> detectorReady;
+    private CompletableFuture<MiDaSDepthEstimator> depthEstimatorReady;
+    // Set once both models are loaded and warmed up; frames are dropped until then
+    private volatile boolean modelsReady;
     private Yolov5Detector yolov5Detector;
     private MiDaSDepthEstimator depthEstimator;
     Paint boxPaint = new Paint();
     Paint textPain = new Paint();
     private static final int PERMISSION_REQUEST_CODE = 200;
-    private ArrayList<Recognition> recognitionsInOrder;
-    private TextToSpeech textToSpeech;
+    // Spoken announcements of new objects, toggled by the speak button
+    private volatile boolean announcing;
+    private FramePipeline<AnalysisFrame> framePipeline;
+    private static final int MAX_FRAMES_IN_FLIGHT = 3;
+    // One more frame for the overlay on screen and one for the analyzer to fill
+    private final ArrayBlockingQueue<AnalysisFrame> framePool = new ArrayBlockingQueue<>(MAX_FRAMES_IN_FLIGHT + 2);
+    private AnalysisFrame displayedFrame;
+    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor();
+    // Only used by the debug depth overlay, which runs on the render stage thread; created by
+    // the first overlay drawn, so its threads only exist when the overlay is on
+    private static final boolean SHOW_DEPTH_OVERLAY = false;
+    private DepthResampler depthResampler;
+    private final DepthAggregator depthAggregator = new DepthAggregator();
+    // Saves one YOLOv5 output and one MiDaS depth map as :benchmark fixtures, see FixtureFile
+    private static final boolean RECORD_FIXTURES = false;
+    private boolean yoloFixtureRecorded; // detect stage
+    private boolean depthFixtureRecorded; // depth stage
+    // Only the nearest objects are ordered, drawn and announced
+    private static final int MAX_ORDERED = 10;
+    private final DepthOrder depthOrder = new DepthOrder(AnalysisFrame.MAX_TRACKS).setTopK(MAX_ORDERED);
+    // Skip depth while the scene stays the same
+    private final ChangeGate depthGate = new ChangeGate(AnalysisFrame.THUMBNAIL_WIDTH * AnalysisFrame.THUMBNAIL_HEIGHT)
+            .setThreshold(4f)
+            .setRefreshInterval(10);
+    // Detection runs every DETECT_INTERVAL frames, on a scene cut, or when a track fades;
+    // the tracker carries the boxes in between
+    private static final int DETECT_INTERVAL = 5;
+    private static final float MIN_TRACK_CONFIDENCE = 0.4f;
+    // Detections from here to HIGH_SCORE_THRESHOLD can continue a track but not start one
+    private static final float LOW_SCORE_THRESHOLD = 0.2f;
+    private static final float HIGH_SCORE_THRESHOLD = 0.5f;
+    private final ChangeGate detectGate = new ChangeGate(AnalysisFrame.THUMBNAIL_WIDTH * AnalysisFrame.THUMBNAIL_HEIGHT)
+            .setThreshold(12f)
+            .setRefreshInterval(DETECT_INTERVAL);
+    // Set by the detect stage, consumed by preprocess
+    private volatile boolean detectionRequested;
+    // Gate state follows the preview size; only touched by the preprocess stage
+    private int gatedViewWidth;
+    private int gatedViewHeight;
+    // Last depth map, reused by skipped frames; only touched by the depth stage
+    private final float[] lastDepthMap = new float[MiDaSDepthEstimator.INPUT_WIDTH * MiDaSDepthEstimator.INPUT_HEIGHT];
+    // Only touched by the detect stage
+    private static final int MAX_DETECTIONS = 100;
+    private final DetectionBatch detectorOutput = new DetectionBatch(MAX_DETECTIONS);
+    private final BoxTracker tracker = new BoxTracker(AnalysisFrame.MAX_TRACKS, MAX_DETECTIONS)
+            .setHighScore(HIGH_SCORE_THRESHOLD);
+    private int trackedViewWidth;
+    private int trackedViewHeight;
+    // Focal length over the long side of the sensor, read from the bound camera
+    private static final float DEFAULT_FOCAL_RATIO = 0.72f; // 26 mm equivalent, a typical main camera
+    private volatile float focalRatio = DEFAULT_FOCAL_RATIO;
+    // Only touched by the fuse stage
+    private final DistanceEstimator distanceEstimator = new DistanceEstimator(AnalysisFrame.MAX_TRACKS, 64);
+    private final Paint depthOverlayPaint = new Paint();
+    private int[] depthOverlayPixels;
+    private TextToSpeechEngine speechEngine;
+    private AnnouncementScheduler announcer;
+    // Shared by both interpreters: GPU, NNAPI and CPU are timed at startup and the fastest wins
+    private final InferenceBackendConfig backendConfig = new InferenceBackendConfig().setProbe(true);
 
     static{
         if(!OpenCVLoader.initDebug())
@@ -81,10 +150,6 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         pview = findViewById(R.id.previewView);
         this.analysis_on = false;
 
-        yolov5Detector = new Yolov5Detector();
-        yolov5Detector.setModelFile("yolov5s_dynamic_range.tflite");
-        yolov5Detector.initialModel(this);
-
         boxPaint.setStrokeWidth(5);
         boxPaint.setStyle(Paint.Style.STROKE);
         boxPaint.setColor(Color.RED);
@@ -93,18 +158,60 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         textPain.setColor(Color.GREEN);
         textPain.setStyle(Paint.Style.FILL);
 
-        try {
-            depthEstimator = new MiDaSDepthEstimator(this, "midas_dynamic_range.tflite");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        depthOverlayPaint.setAlpha(128);
 
-        textToSpeech = new TextToSpeech(getApplicationContext(), status -> {
-            if (status != TextToSpeech.ERROR) {
-                textToSpeech.setLanguage(Locale.ENGLISH);
+        for (int i = 0; i < MAX_FRAMES_IN_FLIGHT + 2; i++)
+            framePool.add(new AnalysisFrame());
+        framePipeline = buildFramePipeline();
+        loadModels();
+
+        speechEngine = new TextToSpeechEngine(this);
+        announcer = new AnnouncementScheduler(speechEngine);
+    }
+    /**
+     * Reads both models on the registry thread, then builds and warms up each interpreter on the
+     * pipeline stage thread that will run it: a GPU delegate only works on the thread it was
+     * created on. Neither holds up the UI or the camera preview.
+     */
+    private void loadModels() {
+        modelRegistry = new ModelRegistry(new AssetModelLoader(this));
+        detectorReady = modelRegistry.model(YOLO_MODEL).thenCombineAsync(modelRegistry.labels(LABEL_FILE), (model, labels) -> {
+            Yolov5Detector detector = new Yolov5Detector();
+            detector.setModelFile(YOLO_MODEL);
+            detector.setBackendConfig(backendConfig);
+            // Low-score boxes only keep existing tracks alive, see BoxTracker
+            detector.setScoreThreshold(LOW_SCORE_THRESHOLD);
+            detector.setMaxDetections(MAX_DETECTIONS);
+            try {
+                detector.initialModel(model, labels);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            detector.warmUp();
+            return detector;
+        }, framePipeline.getStageExecutor(FramePipeline.StageId.DETECT));
+        depthEstimatorReady = modelRegistry.model(MIDAS_MODEL).thenApplyAsync(model -> {
+            MiDaSDepthEstimator estimator;
+            try {
+                estimator = new MiDaSDepthEstimator(MIDAS_MODEL, model, backendConfig);
+            } catch (IOException e) {
+                throw new CompletionException(e);
             }
+            estimator.warmUp();
+            return estimator;
+        }, framePipeline.getStageExecutor(FramePipeline.StageId.DEPTH));
+        CompletableFuture.allOf(detectorReady, depthEstimatorReady).whenComplete((ignored, error) -> {
+            if (error != null) {
+                Log.e("ModelRegistry", "Error loading models", error);
+                runOnUiThread(() -> Toast.makeText(this, "load model error: " + error.getMessage(), Toast.LENGTH_LONG).show());
+                return;
+            }
+            yolov5Detector = detectorReady.join();
+            depthEstimator = depthEstimatorReady.join();
+            modelsReady = true;
         });
     }
+
     @Override
     public void onClick(View v) {
         if(v.getId() == R.id.startCamera){
@@ -123,14 +230,28 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 }
             }, getExecutor());
         }else if(v.getId() == R.id.det){
-            this.analysis_on = !this.analysis_on;
+            toggleAnalysis();
         }else{
-            this.analysis_on = !this.analysis_on;
-            String introPhrase = "The object detected, starting from the closest one, are as follows:";
-            textToSpeech.speak(introPhrase, TextToSpeech.QUEUE_FLUSH, null, null);
-            for (Recognition recognition : recognitionsInOrder) {
-                textToSpeech.speak(recognition.getLabelName(), TextToSpeech.QUEUE_ADD, null, null);
-            }
+            toggleAnnouncements();
+        }
+    }
+    private void toggleAnnouncements() {
+        announcing = !announcing;
+        if (announcing) {
+            // Announcements need frames; turning them off leaves the analysis running
+            if (!analysis_on)
+                toggleAnalysis();
+        } else {
+            announcer.reset();
+        }
+    }
+    private void toggleAnalysis() {
+        this.analysis_on = !this.analysis_on;
+        if (!this.analysis_on) {
+            // The preview itself is live, only the overlay of the last analyzed frame has to go
+            pview.setForeground(null);
+            releaseFrame(displayedFrame);
+            displayedFrame = null;
         }
     }
     private boolean checkPermission() {
@@ -148,150 +269,279 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         preview.setSurfaceProvider(pview.getSurfaceProvider());
         ImageCapture imageCapt = new ImageCapture.Builder().setCaptureMode(ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY).build();
         ImageAnalysis imageAn = new ImageAnalysis.Builder().setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST).build();
-        imageAn.setAnalyzer(getExecutor(), this);
-        cameraProvider.bindToLifecycle(this, camSelector, preview, imageCapt, imageAn);
+        imageAn.setAnalyzer(analysisExecutor, this);
+        Camera camera = cameraProvider.bindToLifecycle(this, camSelector, preview, imageCapt, imageAn);
+        focalRatio = readFocalRatio(camera);
+    }
+
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private static float readFocalRatio(Camera camera) {
+        Camera2CameraInfo info = Camera2CameraInfo.from(camera.getCameraInfo());
+        float[] focalLengths = info.getCameraCharacteristic(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        SizeF sensorSize = info.getCameraCharacteristic(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+        if (focalLengths == null || focalLengths.length == 0 || sensorSize == null)
+            return DEFAULT_FOCAL_RATIO;
+        return focalLengths[0] / Math.max(sensorSize.getWidth(), sensorSize.getHeight());
     }
     private Executor getExecutor() {
         return ContextCompat.getMainExecutor(this);
     }
-    private float[][] resizeDepthMap(float[][] depthMap, int targetHeight, int targetWidth) {
-        int depthMapHeight = depthMap.length;
-        int depthMapWidth = depthMap[0].length;
-
-        float[][] resizedDepthMap = new float[targetHeight][targetWidth];
-
-        float x_ratio = (float) (depthMapWidth - 1) / (targetWidth - 1);
-        float y_ratio = (float) (depthMapHeight - 1) / (targetHeight - 1);
-
-        ExecutorService executor = Executors.newFixedThreadPool(4);
-        //Calcola il numero di righe che ogni thread deve processare
-        int rowsPerThread = targetHeight / 4;
-        int remainingRows = targetHeight % 4;
-        for (int i = 0; i < 4; i++) {
-            int additionalRow = (i < remainingRows) ? 1 : 0;
-            final int startRow = i * rowsPerThread + Math.min(i, remainingRows);
-            final int endRow = startRow + rowsPerThread + additionalRow;
-            System.out.println("Thread " + i + ": startRow=" + startRow + ",endRow=" + endRow);
-            executor.submit(() -> {
-                resizeDepthMapSection(depthMap, resizedDepthMap, x_ratio, y_ratio, startRow, endRow, targetWidth);
-            });
+    private FramePipeline<AnalysisFrame> buildFramePipeline() {
+        return new FramePipeline.Builder<AnalysisFrame>()
+                .setName("analysis")
+                .setMaxInFlight(MAX_FRAMES_IN_FLIGHT)
+                .setExecutionMode(FramePipeline.ExecutionMode.FORK_JOIN)
+                .setStage(FramePipeline.StageId.PREPROCESS, this::preprocess)
+                .setStage(FramePipeline.StageId.DEPTH, this::estimateDepth)
+                .setStage(FramePipeline.StageId.DETECT, this::detect)
+                .setStage(FramePipeline.StageId.FUSE, this::fuseDepth)
+                .setStage(FramePipeline.StageId.RENDER, this::drawRecognitions)
+                .setSink(new FramePipeline.Sink<AnalysisFrame>() {
+                    @Override
+                    public void onFrameReady(AnalysisFrame frame, FramePipeline.Timings timings) {
+                        if (!analysis_on) {
+                            releaseFrame(frame);
+                            return;
+                        }
+                        if (announcing)
+                            announcer.submit(frame.recognitionsInOrder, frame.capturedAtNanos);
+                        Log.d("FramePipeline", String.format(Locale.US, "depth %.1f ms, detect %.1f ms, inference %.1f ms, latency %.1f ms, depth skipped %.0f%%, detect skipped %.0f%%, speech latency %.0f ms",
+                                timings.getStageNanos(FramePipeline.StageId.DEPTH) / 1e6,
+                                timings.getStageNanos(FramePipeline.StageId.DETECT) / 1e6,
+                                timings.getInferenceNanos() / 1e6,
+                                timings.getLatencyNanos() / 1e6,
+                                depthGate.getSkipRate() * 100,
+                                detectGate.getSkipRate() * 100,
+                                announcer.getMeanLatencyNanos() / 1e6));
+                        pview.setForeground(new BitmapDrawable(getResources(), frame.overlay));
+                        // The previous overlay is no longer on screen, its frame can be reused
+                        releaseFrame(displayedFrame);
+                        displayedFrame = frame;
+                    }
+
+                    @Override
+                    public void onFrameDropped(AnalysisFrame frame) {
+                        releaseFrame(frame);
+                    }
+
+                    @Override
+                    public void onFrameFailed(AnalysisFrame frame, Exception e) {
+                        Log.e("FramePipeline", "Frame analysis failed", e);
+                        releaseFrame(frame);
+                    }
+                }, getExecutor())
+                .build();
+    }
+
+    private void releaseFrame(AnalysisFrame frame) {
+        if (frame != null) {
+            frame.closeImage();
+            framePool.offer(frame);
+        }
+    }
+
+    private void preprocess(AnalysisFrame frame) {
+        ImageProxy image = frame.image;
+        try {
+            ImageProxy.PlaneProxy[] planes = image.getPlanes();
+            int rotation = image.getImageInfo().getRotationDegrees();
+            int[] upright = YuvTensorConverter.uprightSize(image.getWidth(), image.getHeight(), rotation);
+            // Same centered crop the PreviewView shows with FILL_CENTER, so boxes line up with the preview
+            float scale = Math.max((float) frame.viewWidth / upright[0], (float) frame.viewHeight / upright[1]);
+            float cropWidth = frame.viewWidth / scale;
+            float cropHeight = frame.viewHeight / scale;
+            float cropLeft = (upright[0] - cropWidth) / 2;
+            float cropTop = (upright[1] - cropHeight) / 2;
+            // The analysis image spans the long side of the sensor
+            frame.focalLength = focalRatio * Math.max(upright[0], upright[1]) * scale;
+
+            // Results from a different preview size can't be reused
+            if (frame.viewWidth != gatedViewWidth || frame.viewHeight != gatedViewHeight) {
+                depthGate.reset();
+                detectGate.reset();
+                gatedViewWidth = frame.viewWidth;
+                gatedViewHeight = frame.viewHeight;
+            }
+            if (detectionRequested) {
+                detectionRequested = false;
+                detectGate.reset();
+            }
+            ChangeGate.thumbnail(planes[0].getBuffer(), image.getWidth(), image.getHeight(), planes[0].getRowStride(),
+                    frame.thumbnail, AnalysisFrame.THUMBNAIL_WIDTH, AnalysisFrame.THUMBNAIL_HEIGHT);
+            frame.runDepth = depthGate.admit(frame.thumbnail);
+            frame.runDetect = detectGate.admit(frame.thumbnail);
+
+            // Only convert the inputs of the models that actually run
+            frame.yoloInput = !frame.runDetect ? null : frame.yoloConverter.convert(planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(),
+                    image.getWidth(), image.getHeight(), planes[0].getRowStride(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                    rotation, cropLeft, cropTop, cropWidth, cropHeight);
+            frame.midasInput = !frame.runDepth ? null : frame.midasConverter.convert(planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(),
+                    image.getWidth(), image.getHeight(), planes[0].getRowStride(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                    rotation, cropLeft, cropTop, cropWidth, cropHeight);
+        } finally {
+            // CameraX can reuse the image as soon as both inputs are written
+            frame.closeImage();
+        }
+    }
+
+    private void estimateDepth(AnalysisFrame frame) {
+        if (frame.runDepth) {
+            depthEstimator.estimateDepth(frame.midasInput, frame.depthMap);
+            if (RECORD_FIXTURES && !depthFixtureRecorded)
+                depthFixtureRecorded = recordFixture("midas_depth.f32", FloatBuffer.wrap(frame.depthMap));
+            System.arraycopy(frame.depthMap, 0, lastDepthMap, 0, lastDepthMap.length);
+        } else {
+            System.arraycopy(lastDepthMap, 0, frame.depthMap, 0, lastDepthMap.length);
+        }
+    }
+
+    private void detect(AnalysisFrame frame) {
+        // Tracks are in view coordinates; preprocess forces a detection on the same frame
+        if (frame.viewWidth != trackedViewWidth || frame.viewHeight != trackedViewHeight) {
+            tracker.reset();
+            trackedViewWidth = frame.viewWidth;
+            trackedViewHeight = frame.viewHeight;
+        }
+        if (frame.runDetect) {
+            yolov5Detector.detect(frame.yoloInput, frame.viewWidth, frame.viewHeight, detectorOutput);
+            if (RECORD_FIXTURES && !yoloFixtureRecorded && detectorOutput.getCount() > 0)
+                yoloFixtureRecorded = recordFixture("yolov5s_output.f32", yolov5Detector.getRawOutput());
+            tracker.update(detectorOutput);
+        } else {
+            tracker.predict();
+            if (tracker.getMinConfidence() < MIN_TRACK_CONFIDENCE)
+                detectionRequested = true;
         }
-        //Attesa della terminazione di tutti i threads
-        executor.shutdown();
+        tracker.getTracks(frame.detections);
+    }
+
+    /**
+     * Writes a fixture to the app's external files, from where it can be pulled with
+     * {@code adb pull /sdcard/Android/data/com.example.envirospeak/files/fixtures}.
+     *
+     * @return true once written or failed, so it is only attempted once
+     */
+    private boolean recordFixture(String name, FloatBuffer values) {
+        File file = new File(getExternalFilesDir("fixtures"), name);
         try {
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            FixtureFile.write(file, values);
+            Log.i("Fixtures", "recorded " + file);
+        } catch (IOException e) {
+            Log.e("Fixtures", "could not record " + file, e);
         }
+        return true;
+    }
 
-        return resizedDepthMap;
+    private void fuseDepth(AnalysisFrame frame) {
+        // Depth is read straight from the MiDaS output, the preview-sized map is never built here
+        depthAggregator.setDepthMap(frame.depthMap, MiDaSDepthEstimator.INPUT_WIDTH, MiDaSDepthEstimator.INPUT_HEIGHT,
+                frame.viewWidth, frame.viewHeight);
+        // Every track started from a detection above HIGH_SCORE_THRESHOLD, so no score filter here
+        DetectionBatch detections = frame.detections;
+        for (int i = 0; i < detections.getCount(); i++) {
+            detections.setDepth(i, depthAggregator.aggregate(detections.getLeft()[i], detections.getTop()[i],
+                    detections.getRight()[i], detections.getBottom()[i]));
+        }
+        distanceEstimator.estimate(detections, frame.focalLength, frame.viewHeight);
+        //ordina gli elementi dal più vicino al più lontano dalla fotocamera
+        int count = depthOrder.sort(detections.getDepths(), detections.getCount(), frame.depthOrder);
+        // Only what reaches the overlay and speech becomes a Recognition
+        ArrayList<Recognition> ordered = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            int i = frame.depthOrder[k];
+            ordered.add(detections.toRecognition(i, yolov5Detector.getLabel(detections.getClassIds()[i])));
+        }
+        frame.recognitionsInOrder = ordered;
     }
 
-    private void resizeDepthMapSection(float[][] depthMap, float[][] resizedDepthMap, float x_ratio, float y_ratio, int startRow, int endRow, int targetWidth) {
-        for (int y = startRow; y < endRow; y++) {
-            for (int x = 0; x < targetWidth; x++) {
-                // Estrazione delle coordinate dei quattro punti
-                int x_l = (int) Math.floor(x_ratio * x);
-                int x_h = (int) Math.ceil(x_ratio * x);
-                int y_l = (int) Math.floor(y_ratio * y);
-                int y_h = (int) Math.ceil(y_ratio * y);
-                // Estrazione dei valori
-                float A = depthMap[y_l][x_l];
-                float B = depthMap[y_l][x_h];
-                float C = depthMap[y_h][x_l];
-                float D = depthMap[y_h][x_h];
-                // Calcolo dei pesi
-                float xWeight = (x_ratio * x) - x_l;
-                float yWeight = (y_ratio * y) - y_l;
-                // Interpolazione bilineare
-                resizedDepthMap[y][x] = bilinearInterpolation(xWeight, yWeight, A, B, C, D);
-            }
+    private void drawRecognitions(AnalysisFrame frame) {
+        if (frame.overlay == null || frame.overlay.getWidth() != frame.viewWidth || frame.overlay.getHeight() != frame.viewHeight)
+            frame.overlay = Bitmap.createBitmap(frame.viewWidth, frame.viewHeight, Bitmap.Config.ARGB_8888);
+        frame.overlay.eraseColor(Color.TRANSPARENT);
+        Canvas canvas = new Canvas(frame.overlay);
+        if (SHOW_DEPTH_OVERLAY)
+            drawDepthOverlay(canvas, frame);
+        for(int i = 0; i < frame.recognitionsInOrder.size(); i++){
+            Recognition recognition = frame.recognitionsInOrder.get(i);
+            canvas.drawRect(recognition.getLeft(), recognition.getTop(), recognition.getRight(), recognition.getBottom(), boxPaint);
+            canvas.drawText(recognition.getLabelName() + ":" + i, recognition.getLeft(), recognition.getTop(), textPain);
         }
     }
-//    private float[][] resizeDepthMap(float[][] depthMap, int targetHeight, int targetWidth) {
-//        int depthMapHeight = depthMap.length;
-//        int depthMapWidth = depthMap[0].length;
-//
-//        float[][] resizedDepthMap = new float[targetHeight][targetWidth];
-//
-//        float x_ratio = (float) (depthMapWidth - 1) / (targetWidth - 1);
-//        float y_ratio = (float) (depthMapHeight - 1) / (targetHeight - 1);
-//
-//        for (int y = 0; y < targetHeight - 1; y++) {
-//            for (int x = 0; x < targetWidth - 1; x++) {
-//                //estrazione coordinate dei quattro punti
-//                int x_l = (int) Math.floor(x_ratio * x);
-//                int x_h = (int) Math.ceil(x_ratio * x);
-//                int y_l = (int) Math.floor(y_ratio * y);
-//                int y_h = (int) Math.ceil(y_ratio * y);
-//                //estrazione dei valori
-//                float A = depthMap[y_l][x_l];
-//                float B = depthMap[y_l][x_h];
-//                float C = depthMap[y_h][x_l];
-//                float D = depthMap[y_h][x_h];
-//                //calcolo dei pesi
-//                float xWeight = (x_ratio * x) - x_l;
-//                float yWeight = (y_ratio * y) - y_l;
-//                //interpolazione bilineare
-//                resizedDepthMap[y][x] = bilinearInterpolation(xWeight, yWeight, A, B, C, D);
-//            }
-//        }
-//        return resizedDepthMap;
-//    }
-    private float bilinearInterpolation(float xWeight, float yWeight, float A, float B, float C, float D) {
-        float topInterpolation = (1 - xWeight) * A + xWeight * B;
-        float bottomInterpolation = (1 - xWeight) * C + xWeight * D;
-        return (1 - yWeight) * topInterpolation + yWeight * bottomInterpolation;
+
+    private void drawDepthOverlay(Canvas canvas, AnalysisFrame frame) {
+        int width = frame.viewWidth;
+        int height = frame.viewHeight;
+        if (depthResampler == null)
+            depthResampler = new DepthResampler(4, 1);
+        float[] resized = depthResampler.resample(frame.depthMap,
+                MiDaSDepthEstimator.INPUT_WIDTH, MiDaSDepthEstimator.INPUT_HEIGHT, width, height);
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (float depth : frame.depthMap) {
+            min = Math.min(min, depth);
+            max = Math.max(max, depth);
+        }
+        float scale = max > min ? 255f / (max - min) : 0f;
+        if (depthOverlayPixels == null || depthOverlayPixels.length != resized.length)
+            depthOverlayPixels = new int[resized.length];
+        for (int i = 0; i < resized.length; i++) {
+            int gray = (int) ((resized[i] - min) * scale);
+            depthOverlayPixels[i] = Color.argb(255, gray, gray, gray);
+        }
+        Bitmap overlay = Bitmap.createBitmap(depthOverlayPixels, width, height, Bitmap.Config.ARGB_8888);
+        canvas.drawBitmap(overlay, 0, 0, depthOverlayPaint);
+        overlay.recycle();
     }
+
     @Override
     public void analyze(@NonNull ImageProxy image) {
-        Bitmap conv = pview.getBitmap();
-        if(this.analysis_on)
-        {
-            float[][] depthMap = depthEstimator.estimateDepth(conv);
-            assert conv != null;
-            long startTime = System.currentTimeMillis();
-            float[][] resizedDepthMap = resizeDepthMap(depthMap, Objects.requireNonNull(conv).getHeight(), conv.getWidth());
-            long endTime = System.currentTimeMillis();
-            System.out.println("Ridimensionamento eseguito in " + (endTime - startTime) + " millisecondi");
-            startTime = System.currentTimeMillis();
-            ArrayList<Recognition> recognitions =  yolov5Detector.detect(conv);
-            endTime = System.currentTimeMillis();
-            System.out.println("Rilevamento eseguito in " + (endTime - startTime) + " millisecondi");
-
-            Canvas canvas = new Canvas(conv);
-
-            recognitionsInOrder = new ArrayList<>();
-
-            for(Recognition recognition: recognitions){
-                if(recognition.getConfidence() > 0.5){
-                    RectF location = recognition.getLocation();
-                    float centerX = location.centerX();
-                    float centerY = location.centerY();
-                    float depth = resizedDepthMap[(int) centerY][(int) centerX];
-                    recognition.setDepth(depth);
-                    recognitionsInOrder.add(recognition);
-                }
-            }
-            //ordina gli elementi dal più vicino al più lontano dalla fotocamera
-            Comparator<Recognition> comparator = Comparator.comparing(Recognition::getDepth).reversed();
-            Collections.sort(recognitionsInOrder, comparator);
-
-            for(int i = 0; i < recognitionsInOrder.size(); i++){
-                Recognition recognition = recognitionsInOrder.get(i);
-                RectF location = recognition.getLocation();
-                canvas.drawRect(location, boxPaint);
-                canvas.drawText(recognition.getLabelName() + ":" + i, location.left, location.top, textPain);
-            }
-
-            Drawable drawable = new BitmapDrawable(getResources(), conv);
-            this.pview.setForeground(drawable);
-        }else {
-            // Se analysis_on è false, visualizza solo l'immagine senza rilevamenti
-            Drawable drawable = new BitmapDrawable(getResources(), conv);
-            pview.setForeground(drawable);
+        int viewWidth = pview.getWidth();
+        int viewHeight = pview.getHeight();
+        AnalysisFrame frame = this.analysis_on && modelsReady && viewWidth > 0 && viewHeight > 0 ? framePool.poll() : null;
+        if (frame == null) {
+            image.close();
+            return;
         }
-        image.close();
+        // Il frame viene solo accodato: conversione, inferenza e disegno avvengono nella pipeline.
+        // The image stays open until the preprocess stage has converted it.
+        frame.image = image;
+        frame.capturedAtNanos = System.nanoTime();
+        frame.viewWidth = viewWidth;
+        frame.viewHeight = viewHeight;
+        // A refused frame comes back through onFrameDropped
+        framePipeline.submit(frame);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // No more frames are submitted; those in flight finish before the models are closed
+        analysisExecutor.shutdown();
+        announcer.shutdown();
+        speechEngine.shutdown();
+        closeModels();
+    }
+
+    /**
+     * Closes each model on the stage thread that runs it, once no frame needs it anymore, also
+     * when it is still loading; only then do the stage threads and the registry go away.
+     */
+    private void closeModels() {
+        CompletableFuture<Void> drained = framePipeline.drain();
+        CompletableFuture<Void> detectorClosed = detectorReady
+                .thenCombine(drained, (detector, ignored) -> detector)
+                .thenAcceptAsync(Yolov5Detector::close, framePipeline.getStageExecutor(FramePipeline.StageId.DETECT));
+        CompletableFuture<Void> depthEstimatorClosed = depthEstimatorReady
+                .thenCombine(drained, (estimator, ignored) -> estimator)
+                .thenAcceptAsync(MiDaSDepthEstimator::close, framePipeline.getStageExecutor(FramePipeline.StageId.DEPTH));
+        // A model that failed to load has nothing to close
+        CompletableFuture.allOf(detectorClosed, depthEstimatorClosed).whenComplete((ignored, error) -> {
+            // No frame is rendered anymore
+            if (depthResampler != null)
+                depthResampler.shutdown();
+            framePipeline.shutdown();
+            modelRegistry.shutdown();
+        });
     }
 
     @Override
@@ -1,63 +1,62 @@
 package com.example.envirospeak;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.os.SystemClock;
-import android.util.Size;
 
-import org.tensorflow.lite.DataType;
-import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.common.ops.NormalizeOp;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.image.ops.ResizeOp;
-import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 
 public class MiDaSDepthEstimator {
     // Costanti per le dimensioni dell'immagine di input del modello MiDaS
-    private final Size INPNUT_SIZE = new Size(256, 256);
-    private final int[] OUTPUT_SIZE = new int[]{1, 256, 256, 1};
-    private static final int INPUT_WIDTH = 256;
-    private static final int INPUT_HEIGHT = 256;
-    private final Interpreter tflite;
-    Interpreter.Options options = new Interpreter.Options();
-    private final float[][] outputArray;
+    static final int INPUT_WIDTH = 256;
+    static final int INPUT_HEIGHT = 256;
+    private final BackendInterpreter tflite;
+    private final ModelBuffers buffers = new ModelBuffers(INPUT_WIDTH * INPUT_HEIGHT * 3, INPUT_WIDTH * INPUT_HEIGHT);
+    private final ModelBuffers.Runner runner;
 
     public MiDaSDepthEstimator(Context context, String modelPath) throws IOException {
-        ByteBuffer modelBuffer = FileUtil.loadMappedFile(context, modelPath);
-        tflite = new Interpreter(modelBuffer, options);
-        outputArray = new float[INPUT_HEIGHT][INPUT_WIDTH];
+        this(context, modelPath, new InferenceBackendConfig());
     }
 
-    public float[][] estimateDepth(Bitmap bitmap) {
-        TensorImage midasInput;
-        ImageProcessor imageProcessor;
-        imageProcessor =
-                new ImageProcessor.Builder()
-                        .add(new ResizeOp(INPNUT_SIZE.getHeight(), INPNUT_SIZE.getWidth(), ResizeOp.ResizeMethod.BILINEAR))
-                        .add(new NormalizeOp(0, 255))
-                        .build();
-        midasInput = new TensorImage(DataType.FLOAT32);
+    public MiDaSDepthEstimator(Context context, String modelPath, InferenceBackendConfig backendConfig) throws IOException {
+        this(modelPath, FileUtil.loadMappedFile(context, modelPath), backendConfig);
+    }
 
-        midasInput.load(bitmap);
-        midasInput = imageProcessor.process(midasInput);
+    /** Builds the interpreter from an already loaded model, e.g. one shared through {@link ModelRegistry}. */
+    public MiDaSDepthEstimator(String modelName, ByteBuffer modelBuffer, InferenceBackendConfig backendConfig) throws IOException {
+        tflite = BackendInterpreter.create(modelName, modelBuffer, backendConfig, buffers);
+        runner = tflite::run;
+    }
 
-        ByteBuffer outputBuffer = TensorBuffer.createFixedSize(OUTPUT_SIZE, DataType.FLOAT32).getBuffer();
+    public InferenceBackendConfig.Backend getBackend() {
+        return tflite.getBackend();
+    }
 
-        if (null != tflite)
-            tflite.run(midasInput.getBuffer(), outputBuffer);
+    public void close() {
+        tflite.close();
+    }
 
-        outputBuffer.rewind();
-        for (int i = 0; i < INPUT_HEIGHT; i++) {
-            for (int j = 0; j < INPUT_WIDTH; j++) {
-                outputArray[i][j] = outputBuffer.getFloat();
-            }
-        }
+    /**
+     * Runs the model once on a blank input so the first real frame does not pay for
+     * interpreter and delegate setup. Call from a background thread.
+     */
+    public void warmUp() {
+        buffers.warmUp(runner);
+    }
+
+    /**
+     * Runs the model on an already normalized float32 RGB input of INPUT_WIDTH x INPUT_HEIGHT,
+     * e.g. the output of {@link YuvTensorConverter}, and writes the depth map row-major into
+     * {@code depthMap}, which must hold INPUT_WIDTH * INPUT_HEIGHT floats and belongs to the
+     * caller.
+     */
+    public void estimateDepth(ByteBuffer midasInput, float[] depthMap) {
+        runModel(midasInput).get(depthMap, 0, INPUT_WIDTH * INPUT_HEIGHT);
+    }
 
-        return outputArray;
+    private FloatBuffer runModel(ByteBuffer midasInput) {
+        return buffers.run(runner, midasInput);
     }
 }
\ No newline at end of file
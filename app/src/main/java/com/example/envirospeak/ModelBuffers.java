@@ -0,0 +1,76 @@
+package com.example.envirospeak;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Preallocated float32 input and output tensors of one model, so that running it on every
+ * frame does not allocate. Buffers are direct and in native order, as the interpreter wants
+ * them. The output is overwritten by the next run; not thread-safe.
+ */
+public class ModelBuffers {
+
+    /** Runs the model, e.g. {@code Interpreter.run}. Both buffers are rewound. */
+    public interface Runner {
+        void run(ByteBuffer input, ByteBuffer output);
+    }
+
+    private final int inputElements;
+    private final int outputElements;
+    private final ByteBuffer input;
+    private final ByteBuffer output;
+    private final FloatBuffer outputFloats;
+
+    public ModelBuffers(int inputElements, int outputElements) {
+        this.inputElements = inputElements;
+        this.outputElements = outputElements;
+        input = ByteBuffer.allocateDirect(inputElements * 4).order(ByteOrder.nativeOrder());
+        output = ByteBuffer.allocateDirect(outputElements * 4).order(ByteOrder.nativeOrder());
+        // A view created once; asFloatBuffer() would allocate one per call
+        outputFloats = output.asFloatBuffer();
+    }
+
+    public int getInputElements() {
+        return inputElements;
+    }
+
+    public int getOutputElements() {
+        return outputElements;
+    }
+
+    /** The model's own input buffer, used by {@link #warmUp} and by callers without one. */
+    public ByteBuffer getInput() {
+        input.rewind();
+        return input;
+    }
+
+    public ByteBuffer getOutput() {
+        output.rewind();
+        return output;
+    }
+
+    /** Float view of the output of the last run, rewound. */
+    public FloatBuffer getOutputFloats() {
+        outputFloats.rewind();
+        return outputFloats;
+    }
+
+    /** Runs the model on {@code input} and returns the float view of the output. */
+    public FloatBuffer run(Runner runner, ByteBuffer input) {
+        input.rewind();
+        output.rewind();
+        runner.run(input, output);
+        return getOutputFloats();
+    }
+
+    /**
+     * Runs the model once on a zeroed input, so that tensor allocation, delegate preparation
+     * and the first-run kernel setup happen before the first real frame.
+     */
+    public void warmUp(Runner runner) {
+        for (int i = 0; i < inputElements * 4; i++)
+            input.put(i, (byte) 0);
+        run(runner, input);
+    }
+}
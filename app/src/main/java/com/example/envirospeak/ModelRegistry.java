@@ -0,0 +1,77 @@
+package com.example.envirospeak;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads model files and label files on a background thread, once each. Every caller asking for
+ * the same file gets the same future, so a model is mapped once and its buffer shared, and
+ * labels are read once and handed out as an unmodifiable list over a cached array.
+ *
+ * Futures are the readiness signal: the camera can start right away and frames are only
+ * analyzed once the models they need have completed.
+ */
+public class ModelRegistry {
+
+    /** Reads files, e.g. from the APK assets. */
+    public interface Loader {
+        /** A read-only, typically memory-mapped, buffer with the model file. */
+        ByteBuffer loadModel(String file) throws IOException;
+
+        String[] loadLabels(String file) throws IOException;
+    }
+
+    private final Loader loader;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, CompletableFuture<ByteBuffer>> models = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<List<String>>> labels = new ConcurrentHashMap<>();
+
+    public ModelRegistry(Loader loader) {
+        this.loader = loader;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** The model file, loaded on first request. */
+    public CompletableFuture<ByteBuffer> model(String file) {
+        return models.computeIfAbsent(file, key -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return loader.loadModel(key);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor));
+    }
+
+    /** The label file, one label per entry, loaded on first request. */
+    public CompletableFuture<List<String>> labels(String file) {
+        return labels.computeIfAbsent(file, key -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return Collections.unmodifiableList(Arrays.asList(loader.loadLabels(key).clone()));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor));
+    }
+
+    /** The loading thread, for follow-up work such as building interpreters off the UI thread. */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /** Lets queued loads finish, then stops the loading thread. */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.envirospeak;
+
+import java.util.Arrays;
+
+/**
+ * Non-maximum suppression over parallel primitive arrays, replacing the Rect2d / Mat round
+ * trip through {@code Dnn.NMSBoxes}. Boxes are {@code left, top, right, bottom}.
+ * <ul>
+ * <li>GREEDY: same result as {@code Dnn.NMSBoxes(boxes, scores, scoreThreshold, iouThreshold,
+ * indices, 1f, topK)}: candidates with a score above the threshold are stably sorted by score,
+ * cut to top-K, and a box is kept when its IoU with every kept box is at most the threshold.</li>
+ * <li>CLASS_AWARE: like GREEDY, but a box is only compared with kept boxes of its own class,
+ * using that class's IoU threshold. Kept boxes are chained per class, so this is a single
+ * pass over the candidates instead of one suppression run per class.</li>
+ * <li>SOFT: Gaussian Soft-NMS; overlapping boxes have their score decayed by
+ * {@code exp(-iou^2 / sigma)} instead of being removed, and are dropped once the decayed score
+ * is no longer above the score threshold.</li>
+ * </ul>
+ * Every mode stops once {@code maxDetections} boxes are kept, if set.
+ * All scratch space is allocated up front for {@code capacity} boxes. Results are valid until
+ * the next {@link #run}; not thread-safe.
+ */
+public class NmsEngine {
+
+    public enum Mode { GREEDY, CLASS_AWARE, SOFT }
+
+    private final int capacity;
+    private final int classes;
+    private final long[] keys;
+    private final int[] order;
+    private final int[] kept;
+    private final float[] keptScores;
+    private final float[] softScores;
+    // Per class, the most recently kept box; keptNext chains the earlier ones
+    private final int[] classHead;
+    private final int[] keptNext;
+    private final float[] classIouThresholds;
+    private int keptCount;
+
+    private Mode mode = Mode.GREEDY;
+    private float scoreThreshold = 0f;
+    private float iouThreshold = 0.45f;
+    private int topK = 0;
+    private int maxDetections = 0;
+    private float sigma = 0.5f;
+
+    /** An engine without class information; CLASS_AWARE needs {@link #NmsEngine(int, int)}. */
+    public NmsEngine(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param capacity largest number of boxes passed to {@link #run}
+     * @param classes number of class ids, which must lie in {@code [0, classes)}
+     */
+    public NmsEngine(int capacity, int classes) {
+        this.capacity = capacity;
+        this.classes = classes;
+        keys = new long[capacity];
+        order = new int[capacity];
+        kept = new int[capacity];
+        keptScores = new float[capacity];
+        softScores = new float[capacity];
+        classHead = new int[classes];
+        keptNext = new int[capacity];
+        classIouThresholds = new float[classes];
+        Arrays.fill(classIouThresholds, Float.NaN);
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /** Boxes are only considered when their score is strictly above this value. */
+    public void setScoreThreshold(float scoreThreshold) {
+        this.scoreThreshold = scoreThreshold;
+    }
+
+    /** A box survives when its IoU with every kept box is at most this value. */
+    public void setIouThreshold(float iouThreshold) {
+        this.iouThreshold = iouThreshold;
+    }
+
+    /**
+     * IoU threshold of one class in CLASS_AWARE mode, e.g. looser for classes that often
+     * stand close together. NaN falls back to {@link #setIouThreshold}.
+     */
+    public void setClassIouThreshold(int classId, float iouThreshold) {
+        classIouThresholds[classId] = iouThreshold;
+    }
+
+    /** Stops after this many kept boxes; 0 keeps all of them. */
+    public void setMaxDetections(int maxDetections) {
+        this.maxDetections = maxDetections;
+    }
+
+    /** Only the {@code topK} best candidates go into suppression; 0 keeps all of them. */
+    public void setTopK(int topK) {
+        this.topK = topK;
+    }
+
+    /** Gaussian width used by SOFT. */
+    public void setSigma(float sigma) {
+        if (sigma <= 0f)
+            throw new IllegalArgumentException("sigma must be > 0");
+        this.sigma = sigma;
+    }
+
+    /**
+     * Runs on a batch of candidates and writes the kept boxes to {@code kept}, best first,
+     * with their kept scores (decayed ones in SOFT mode).
+     *
+     * @return number of kept boxes
+     */
+    public int run(DetectionBatch candidates, DetectionBatch kept) {
+        int n = run(candidates.getLeft(), candidates.getTop(), candidates.getRight(), candidates.getBottom(),
+                candidates.getScores(), candidates.getClassIds(), candidates.getCount());
+        kept.clear();
+        for (int k = 0; k < n; k++) {
+            int i = this.kept[k];
+            kept.add(candidates.getLeft()[i], candidates.getTop()[i], candidates.getRight()[i], candidates.getBottom()[i],
+                    keptScores[k], candidates.getClassIds()[i]);
+        }
+        return n;
+    }
+
+    /**
+     * @param classIds only read in CLASS_AWARE mode, may be null otherwise
+     * @return number of kept boxes
+     */
+    public int run(float[] left, float[] top, float[] right, float[] bottom, float[] scores, int[] classIds, int count) {
+        if (count > capacity)
+            throw new IllegalArgumentException("count " + count + " exceeds capacity " + capacity);
+        int candidates = selectCandidates(scores, count);
+        int limit = maxDetections > 0 ? maxDetections : Integer.MAX_VALUE;
+        if (mode == Mode.SOFT)
+            keptCount = soft(left, top, right, bottom, scores, candidates, limit);
+        else if (mode == Mode.CLASS_AWARE)
+            keptCount = classAware(left, top, right, bottom, scores, classIds, candidates, limit);
+        else
+            keptCount = greedy(left, top, right, bottom, scores, candidates, limit);
+        return keptCount;
+    }
+
+    public int getKeptCount() {
+        return keptCount;
+    }
+
+    /** Indices into the input arrays of the kept boxes, best first. */
+    public int[] getKept() {
+        return kept;
+    }
+
+    /** Scores of the kept boxes, parallel to {@link #getKept()}; decayed in SOFT mode. */
+    public float[] getKeptScores() {
+        return keptScores;
+    }
+
+    /** Fills {@code order} with the indices above the score threshold, stably sorted by score. */
+    private int selectCandidates(float[] scores, int count) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            float score = scores[i];
+            if (score > scoreThreshold) {
+                // Descending score in the high half, ascending index in the low half
+                keys[n++] = ((long) ~sortableBits(score) << 32) | i;
+            }
+        }
+        Arrays.sort(keys, 0, n);
+        if (topK > 0 && topK < n)
+            n = topK;
+        for (int i = 0; i < n; i++)
+            order[i] = (int) keys[i];
+        return n;
+    }
+
+    /** Float bits mapped so that signed int order matches float order. */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    private int greedy(float[] left, float[] top, float[] right, float[] bottom, float[] scores,
+                       int candidates, int limit) {
+        int n = 0;
+        for (int i = 0; i < candidates && n < limit; i++) {
+            int idx = order[i];
+            boolean keep = true;
+            for (int k = 0; k < n && keep; k++)
+                keep = overlap(left, top, right, bottom, idx, kept[k]) <= iouThreshold;
+            if (keep) {
+                kept[n] = idx;
+                keptScores[n] = scores[idx];
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private int classAware(float[] left, float[] top, float[] right, float[] bottom, float[] scores,
+                           int[] classIds, int candidates, int limit) {
+        Arrays.fill(classHead, -1);
+        int n = 0;
+        for (int i = 0; i < candidates && n < limit; i++) {
+            int idx = order[i];
+            int classId = classIds[idx];
+            if (classId < 0 || classId >= classes)
+                throw new IllegalArgumentException("class id " + classId + " outside [0, " + classes + ")");
+            float threshold = classIouThresholds[classId];
+            if (threshold != threshold)
+                threshold = iouThreshold;
+            boolean keep = true;
+            for (int k = classHead[classId]; k >= 0 && keep; k = keptNext[k])
+                keep = overlap(left, top, right, bottom, idx, kept[k]) <= threshold;
+            if (keep) {
+                kept[n] = idx;
+                keptScores[n] = scores[idx];
+                keptNext[n] = classHead[classId];
+                classHead[classId] = n;
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private int soft(float[] left, float[] top, float[] right, float[] bottom, float[] scores,
+                     int candidates, int limit) {
+        for (int i = 0; i < candidates; i++)
+            softScores[i] = scores[order[i]];
+        int remaining = candidates;
+        int n = 0;
+        while (remaining > 0 && n < limit) {
+            // Move the best remaining box to the front of the unprocessed range
+            int best = n;
+            for (int i = n + 1; i < n + remaining; i++) {
+                if (softScores[i] > softScores[best])
+                    best = i;
+            }
+            swap(n, best);
+            int idx = order[n];
+            kept[n] = idx;
+            keptScores[n] = softScores[n];
+            n++;
+            remaining--;
+
+            int end = n + remaining;
+            for (int i = n; i < end; ) {
+                float iou = overlap(left, top, right, bottom, idx, order[i]);
+                softScores[i] *= (float) Math.exp(-(iou * iou) / sigma);
+                if (softScores[i] > scoreThreshold) {
+                    i++;
+                } else {
+                    swap(i, --end);
+                    remaining--;
+                }
+            }
+        }
+        return n;
+    }
+
+    private void swap(int a, int b) {
+        int index = order[a];
+        order[a] = order[b];
+        order[b] = index;
+        float score = softScores[a];
+        softScores[a] = softScores[b];
+        softScores[b] = score;
+    }
+
+    /**
+     * IoU computed the way OpenCV's rectOverlap() does for Rect2d, so ties at the threshold
+     * resolve the same way.
+     */
+    static float overlap(float[] left, float[] top, float[] right, float[] bottom, int a, int b) {
+        double aw = right[a] - left[a];
+        double ah = bottom[a] - top[a];
+        double bw = right[b] - left[b];
+        double bh = bottom[b] - top[b];
+        double areaA = aw * ah;
+        double areaB = bw * bh;
+        if (areaA + areaB <= Math.ulp(1.0))
+            return 1f;
+        double intersection = 0;
+        if (aw > 0 && ah > 0 && bw > 0 && bh > 0) {
+            double x1 = Math.max(left[a], left[b]);
+            double y1 = Math.max(top[a], top[b]);
+            double w = Math.min(left[a] + aw, left[b] + bw) - x1;
+            double h = Math.min(top[a] + ah, top[b] + bh) - y1;
+            if (w > 0 && h > 0)
+                intersection = w * h;
+        }
+        return 1f - (float) (1.0 - intersection / (areaA + areaB - intersection));
+    }
+}
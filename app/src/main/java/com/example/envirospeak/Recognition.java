@@ -2,23 +2,44 @@ package com.example.envirospeak;
 
 import android.graphics.RectF;
 
+/**
+ * One detection as handed to the UI and speech. Values are primitive; depth and distance are
+ * NaN until fused. Per-frame processing works on {@link DetectionBatch} and only the final results are
+ * turned into Recognitions.
+ */
 public class Recognition {
-    private Integer labelId;
+    private final int labelId;
     private String labelName;
-    private Float confidence;
-    private Float depth;
-
-    private RectF location;
+    private final float confidence;
+    private float depth = Float.NaN;
+    private float distance = Float.NaN;
+    // Tracker state; -1 when the recognition does not come from a track
+    private int trackId = -1;
+    private int age;
+    private int hits;
+
+    private final float left;
+    private final float top;
+    private final float right;
+    private final float bottom;
 
     public Recognition(
-            final int labelId, final String labelName, final Float confidence, final RectF location) {
+            final int labelId, final String labelName, final float confidence, final RectF location) {
+        this(labelId, labelName, confidence, location.left, location.top, location.right, location.bottom);
+    }
+
+    public Recognition(final int labelId, final String labelName, final float confidence,
+                       final float left, final float top, final float right, final float bottom) {
         this.labelId = labelId;
         this.labelName = labelName;
         this.confidence = confidence;
-        this.location = location;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
     }
 
-    public Integer getLabelId() {
+    public int getLabelId() {
         return labelId;
     }
 
@@ -26,25 +47,72 @@ public class Recognition {
         return labelName;
     }
 
-    public Float getConfidence() {
+    public float getConfidence() {
         return confidence;
     }
 
+    /** A new RectF on every call; prefer the primitive getters in loops. */
     public RectF getLocation() {
-        return new RectF(location);
+        return new RectF(left, top, right, bottom);
+    }
+
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
     }
 
     public void setLabelName(String labelName) {
         this.labelName = labelName;
     }
 
-    public Float getDepth() {
+    /** MiDaS relative inverse depth, larger is closer; NaN when not fused. */
+    public float getDepth() {
         return depth;
     }
-    public void setDepth(Float depth) {
+    public void setDepth(float depth) {
         this.depth = depth;
     }
 
+    /** Estimated distance in meters; NaN when unknown. */
+    public float getDistance() {
+        return distance;
+    }
+
+    public void setDistance(float distance) {
+        this.distance = distance;
+    }
+
+    public int getTrackId() {
+        return trackId;
+    }
+
+    /** Frames since the object was first seen. */
+    public int getAge() {
+        return age;
+    }
+
+    /** Detector keyframes the object was found on. */
+    public int getHits() {
+        return hits;
+    }
+
+    public void setTrack(int trackId, int age, int hits) {
+        this.trackId = trackId;
+        this.age = age;
+        this.hits = hits;
+    }
+
     @Override
     public String toString() {
         String resultString = "";
@@ -55,13 +123,9 @@ public class Recognition {
             resultString += labelName + " ";
         }
 
-        if (confidence != null) {
-            resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-        }
+        resultString += String.format("(%.1f%%) ", confidence * 100.0f);
 
-        if (location != null) {
-            resultString += location + " ";
-        }
+        resultString += "[" + left + ", " + top + ", " + right + ", " + bottom + "] ";
 
         return resultString.trim();
     }
@@ -0,0 +1,24 @@
+package com.example.envirospeak;
+
+/** Text to speech as {@link AnnouncementScheduler} needs it; fakes replace it in tests. */
+public interface SpeechEngine {
+
+    /** Progress of the utterances passed to {@link #speak}, from any thread. */
+    interface Listener {
+        void onStart(String utteranceId);
+
+        /** Called once the utterance finished, failed or was stopped. */
+        void onDone(String utteranceId);
+    }
+
+    void setListener(Listener listener);
+
+    /**
+     * Starts speaking {@code text}, replacing anything still queued.
+     *
+     * @return false when the engine could not take the request
+     */
+    boolean speak(String text, String utteranceId);
+
+    void stop();
+}
@@ -0,0 +1,62 @@
+package com.example.envirospeak;
+
+import android.content.Context;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+
+import java.util.Locale;
+
+/** {@link SpeechEngine} over the platform TextToSpeech, in English. */
+final class TextToSpeechEngine implements SpeechEngine {
+
+    private final TextToSpeech textToSpeech;
+    private volatile boolean ready;
+
+    TextToSpeechEngine(Context context) {
+        textToSpeech = new TextToSpeech(context.getApplicationContext(), status -> {
+            if (status != TextToSpeech.ERROR) {
+                textToSpeech.setLanguage(Locale.ENGLISH);
+                ready = true;
+            }
+        });
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        textToSpeech.setOnUtteranceProgressListener(new UtteranceProgressListener() {
+            @Override
+            public void onStart(String utteranceId) {
+                listener.onStart(utteranceId);
+            }
+
+            @Override
+            public void onDone(String utteranceId) {
+                listener.onDone(utteranceId);
+            }
+
+            @Override
+            public void onError(String utteranceId) {
+                listener.onDone(utteranceId);
+            }
+
+            @Override
+            public void onStop(String utteranceId, boolean interrupted) {
+                listener.onDone(utteranceId);
+            }
+        });
+    }
+
+    @Override
+    public boolean speak(String text, String utteranceId) {
+        return ready && textToSpeech.speak(text, TextToSpeech.QUEUE_FLUSH, null, utteranceId) == TextToSpeech.SUCCESS;
+    }
+
+    @Override
+    public void stop() {
+        textToSpeech.stop();
+    }
+
+    void shutdown() {
+        textToSpeech.shutdown();
+    }
+}
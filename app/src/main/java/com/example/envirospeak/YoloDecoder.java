@@ -0,0 +1,108 @@
+package com.example.envirospeak;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Decodes the raw YOLOv5 output ({@code anchors x (5 + classes)} floats: cx, cy, w, h,
+ * objectness, class scores) in place. Anchors whose objectness is not above the score
+ * threshold are rejected before their class scores are read, and the class argmax is taken
+ * straight from the buffer, so a frame costs no allocation and mostly touches one float per
+ * anchor.
+ *
+ * Candidates are kept in a {@link DetectionBatch} sized for the worst case, valid until the
+ * next {@link #decode}. Box coordinates are truncated like Yolov5Detector always did.
+ */
+public class YoloDecoder {
+
+    private final int anchors;
+    private final int classes;
+    private final int stride;
+    private float scoreThreshold = 0.5f;
+
+    private final DetectionBatch candidates;
+
+    public YoloDecoder(int anchors, int classes) {
+        this.anchors = anchors;
+        this.classes = classes;
+        this.stride = 5 + classes;
+        candidates = new DetectionBatch(anchors);
+    }
+
+    /** Anchors are kept when their objectness is strictly above this value. */
+    public void setScoreThreshold(float scoreThreshold) {
+        this.scoreThreshold = scoreThreshold;
+    }
+
+    public float getScoreThreshold() {
+        return scoreThreshold;
+    }
+
+    /**
+     * @param output raw model output, read with absolute gets from index 0
+     * @param imageWidth width the normalized boxes are scaled to
+     * @param imageHeight height the normalized boxes are scaled to
+     * @return number of candidates
+     */
+    public int decode(FloatBuffer output, int imageWidth, int imageHeight) {
+        final float threshold = scoreThreshold;
+        final DetectionBatch candidates = this.candidates;
+        candidates.clear();
+        for (int i = 0, base = 0; i < anchors; i++, base += stride) {
+            float confidence = output.get(base + 4);
+            if (!(confidence > threshold))
+                continue;
+
+            int labelId = 0;
+            float maxLabelScore = 0.f;
+            for (int j = 0, c = base + 5; j < classes; j++, c++) {
+                float score = output.get(c);
+                if (score > maxLabelScore) {
+                    maxLabelScore = score;
+                    labelId = j;
+                }
+            }
+
+            float x = output.get(base) * imageWidth;
+            float y = output.get(base + 1) * imageHeight;
+            float w = output.get(base + 2) * imageWidth;
+            float h = output.get(base + 3) * imageHeight;
+            candidates.add((int) Math.max(0, x - w / 2.), (int) Math.max(0, y - h / 2.),
+                    (int) Math.min(imageWidth, x + w / 2.), (int) Math.min(imageHeight, y + h / 2.),
+                    confidence, labelId);
+        }
+        return candidates.getCount();
+    }
+
+    /** Candidates of the last {@link #decode}. */
+    public DetectionBatch getCandidates() {
+        return candidates;
+    }
+
+    public int getCount() {
+        return candidates.getCount();
+    }
+
+    public float[] getLeft() {
+        return candidates.getLeft();
+    }
+
+    public float[] getTop() {
+        return candidates.getTop();
+    }
+
+    public float[] getRight() {
+        return candidates.getRight();
+    }
+
+    public float[] getBottom() {
+        return candidates.getBottom();
+    }
+
+    public float[] getScores() {
+        return candidates.getScores();
+    }
+
+    public int[] getClassIds() {
+        return candidates.getClassIds();
+    }
+}
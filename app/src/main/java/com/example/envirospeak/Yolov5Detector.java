@@ -2,56 +2,75 @@ package com.example.envirospeak;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.RectF;
 import android.util.Log;
 import android.util.Size;
 import android.widget.Toast;
 
 
-import org.opencv.core.MatOfFloat;
-import org.opencv.core.MatOfInt;
-import org.opencv.core.MatOfRect2d;
-import org.opencv.core.Rect2d;
 import org.tensorflow.lite.DataType;
-import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.support.common.FileUtil;
 import org.tensorflow.lite.support.common.ops.NormalizeOp;
 import org.tensorflow.lite.support.image.ImageProcessor;
 import org.tensorflow.lite.support.image.TensorImage;
 import org.tensorflow.lite.support.image.ops.ResizeOp;
-import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import org.opencv.dnn.Dnn;
 
 
 public class Yolov5Detector {
 
     private final Size INPNUT_SIZE = new Size(320, 320);
     private final int[] OUTPUT_SIZE = new int[]{1, 6300, 85};
+    static final int INPUT_WIDTH = 320;
+    static final int INPUT_HEIGHT = 320;
 
     private String MODEL_FILE;
 
-    private Interpreter tflite;
+    private BackendInterpreter tflite;
     private List<String> associatedAxisLabels;
-    Interpreter.Options options = new Interpreter.Options();
+    private InferenceBackendConfig backendConfig = new InferenceBackendConfig();
+
+    // Built once and reused by every frame
+    private final ImageProcessor imageProcessor =
+            new ImageProcessor.Builder()
+                    .add(new ResizeOp(INPNUT_SIZE.getHeight(), INPNUT_SIZE.getWidth(), ResizeOp.ResizeMethod.BILINEAR))
+                    .add(new NormalizeOp(0, 255))
+                    .build();
+    private final TensorImage yolov5sTfliteInput = new TensorImage(DataType.FLOAT32);
+    private final ModelBuffers buffers = new ModelBuffers(INPUT_WIDTH * INPUT_HEIGHT * 3, OUTPUT_SIZE[1] * OUTPUT_SIZE[2]);
+    private final YoloDecoder decoder = new YoloDecoder(OUTPUT_SIZE[1], OUTPUT_SIZE[2] - 5);
+    private final NmsEngine nmsEngine = new NmsEngine(OUTPUT_SIZE[1], OUTPUT_SIZE[2] - 5);
+    // Kept boxes of the Recognition-returning detect() calls
+    private final DetectionBatch recognitionBatch = new DetectionBatch(OUTPUT_SIZE[1]);
+    {
+        // Per class, so a person on a bicycle does not suppress the bicycle
+        nmsEngine.setMode(NmsEngine.Mode.CLASS_AWARE);
+        nmsEngine.setMaxDetections(100);
+    }
+    private final ModelBuffers.Runner runner = (input, output) -> {
+        if (null != tflite)
+            tflite.run(input, output);
+    };
 
 
     public void setModelFile(String modelFile) {
         MODEL_FILE = modelFile;
     }
 
+    /** Threads, XNNPACK and delegates used by initialModel(). */
+    public void setBackendConfig(InferenceBackendConfig backendConfig) {
+        this.backendConfig = backendConfig;
+    }
+
     public void initialModel(Context activity) {
         try {
             ByteBuffer tfliteModel = FileUtil.loadMappedFile(activity, MODEL_FILE);
-            tflite = new Interpreter(tfliteModel, options);
-
             String LABEL_FILE = "coco_label.txt";
-            associatedAxisLabels = FileUtil.loadLabels(activity, LABEL_FILE);
+            initialModel(tfliteModel, FileUtil.loadLabels(activity, LABEL_FILE));
 
         } catch (IOException e) {
             Log.e("tfliteSupport", "Error reading model or label: ", e);
@@ -59,83 +78,104 @@ public class Yolov5Detector {
         }
     }
 
+    /**
+     * Builds the interpreter from an already loaded model, e.g. a buffer shared through
+     * {@link ModelRegistry}. Safe to call off the UI thread.
+     */
+    public void initialModel(ByteBuffer tfliteModel, List<String> labels) throws IOException {
+        tflite = BackendInterpreter.create(MODEL_FILE, tfliteModel, backendConfig, buffers);
+        associatedAxisLabels = labels;
+    }
+
+    public InferenceBackendConfig.Backend getBackend() {
+        return tflite != null ? tflite.getBackend() : null;
+    }
+
+    public void close() {
+        if (tflite != null) {
+            tflite.close();
+            tflite = null;
+        }
+    }
+
+    /** Anchors with an objectness not above this are dropped before NMS. Defaults to 0.5. */
+    public void setScoreThreshold(float scoreThreshold) {
+        decoder.setScoreThreshold(scoreThreshold);
+    }
+
+    /** CLASS_AWARE by default; GREEDY suppresses across classes like Dnn.NMSBoxes did. */
+    public void setNmsMode(NmsEngine.Mode mode) {
+        nmsEngine.setMode(mode);
+    }
+
+    /** Default IoU threshold of NMS, 0.45. */
+    public void setIouThreshold(float iouThreshold) {
+        nmsEngine.setIouThreshold(iouThreshold);
+    }
+
+    /** IoU threshold of one COCO class in CLASS_AWARE mode; NaN restores the default. */
+    public void setClassIouThreshold(int labelId, float iouThreshold) {
+        nmsEngine.setClassIouThreshold(labelId, iouThreshold);
+    }
+
+    /** Most Recognitions returned per frame, best first; 0 means no limit. Defaults to 100. */
+    public void setMaxDetections(int maxDetections) {
+        nmsEngine.setMaxDetections(maxDetections);
+    }
+
+    public String getLabel(int labelId) {
+        return associatedAxisLabels.get(labelId);
+    }
+
     public ArrayList<Recognition> detect(Bitmap bitmap) {
+        return detect(preprocess(bitmap), bitmap.getWidth(), bitmap.getHeight());
+    }
 
-        int BITMAP_HEIGHT = bitmap.getHeight();
-        int BITMAP_WIDTH = bitmap.getWidth();
-        TensorImage yolov5sTfliteInput;
-        ImageProcessor imageProcessor;
-        imageProcessor =
-                new ImageProcessor.Builder()
-                        .add(new ResizeOp(INPNUT_SIZE.getHeight(), INPNUT_SIZE.getWidth(), ResizeOp.ResizeMethod.BILINEAR))
-                        .add(new NormalizeOp(0, 255))
-                        .build();
-        yolov5sTfliteInput = new TensorImage(DataType.FLOAT32);
+    /**
+     * Runs the model once on a blank input so the first real frame does not pay for
+     * interpreter and delegate setup. Call from a background thread after initialModel().
+     */
+    public void warmUp() {
+        buffers.warmUp(runner);
+    }
 
+    /** The returned image is reused by the next call. */
+    public TensorImage preprocess(Bitmap bitmap) {
         yolov5sTfliteInput.load(bitmap);
-        yolov5sTfliteInput = imageProcessor.process(yolov5sTfliteInput);
+        return imageProcessor.process(yolov5sTfliteInput);
+    }
 
+    public ArrayList<Recognition> detect(TensorImage yolov5sTfliteInput, int BITMAP_WIDTH, int BITMAP_HEIGHT) {
+        return detect(yolov5sTfliteInput.getBuffer(), BITMAP_WIDTH, BITMAP_HEIGHT);
+    }
 
-        TensorBuffer yoloOutput;
-        yoloOutput = TensorBuffer.createFixedSize(OUTPUT_SIZE, DataType.FLOAT32);
+    /**
+     * Runs the model on an already normalized float32 RGB input of INPUT_WIDTH x INPUT_HEIGHT,
+     * e.g. the output of {@link YuvTensorConverter}. Boxes are scaled to BITMAP_WIDTH x BITMAP_HEIGHT.
+     */
+    public ArrayList<Recognition> detect(ByteBuffer input, int BITMAP_WIDTH, int BITMAP_HEIGHT) {
+        int keptCount = detect(input, BITMAP_WIDTH, BITMAP_HEIGHT, recognitionBatch);
+        ArrayList<Recognition> nmsRecognitions = new ArrayList<>(keptCount);
+        for (int i = 0; i < keptCount; i++)
+            nmsRecognitions.add(recognitionBatch.toRecognition(i, getLabel(recognitionBatch.getClassIds()[i])));
+        return nmsRecognitions;
+    }
 
-        if (null != tflite)
-            tflite.run(yolov5sTfliteInput.getBuffer(), yoloOutput.getBuffer());
-        float[] recognitionArray = yoloOutput.getFloatArray();
-        ArrayList<Recognition> allRecognitions = new ArrayList<>();
-        for (int i = 0; i < OUTPUT_SIZE[1]; i++) {
-            int gridStride = i * OUTPUT_SIZE[2];
-            float x = recognitionArray[gridStride] * BITMAP_WIDTH;
-            float y = recognitionArray[1 + gridStride] * BITMAP_HEIGHT;
-            float w = recognitionArray[2 + gridStride] * BITMAP_WIDTH;
-            float h = recognitionArray[3 + gridStride] * BITMAP_HEIGHT;
-            int xmin = (int) Math.max(0, x - w / 2.);
-            int ymin = (int) Math.max(0, y - h / 2.);
-            int xmax = (int) Math.min(BITMAP_WIDTH, x + w / 2.);
-            int ymax = (int) Math.min(BITMAP_HEIGHT, y + h / 2.);
-            float confidence = recognitionArray[4 + gridStride];
-            float[] classScores = Arrays.copyOfRange(recognitionArray, 5 + gridStride, this.OUTPUT_SIZE[2] + gridStride);
-            int labelId = 0;
-            float maxLabelScores = 0.f;
-            for (int j = 0; j < classScores.length; j++) {
-                if (classScores[j] > maxLabelScores) {
-                    maxLabelScores = classScores[j];
-                    labelId = j;
-                }
-            }
-            Recognition r = new Recognition(
-                    labelId,
-                    associatedAxisLabels.get(labelId),
-                    confidence,
-                    new RectF(xmin, ymin, xmax, ymax));
-            allRecognitions.add(
-                    r);
-        }
-        return nms(allRecognitions);
-    }
-
-    protected ArrayList<Recognition> nms(ArrayList<Recognition> allRecognitions) {
-        ArrayList<Recognition> nmsRecognitions = new ArrayList<>();
-        MatOfRect2d boxes = new MatOfRect2d();
-        ArrayList<Rect2d> rectList = new ArrayList<>();
-        MatOfFloat scores = new MatOfFloat();
-        float[] scoresArray = new float[allRecognitions.size()];
-        for (int i = 0; i < allRecognitions.size(); i++) {
-            Recognition recognition = allRecognitions.get(i);
-            RectF location = recognition.getLocation();
-            rectList.add(new Rect2d(location.left, location.top, location.width(), location.height()));
-            scoresArray[i] = recognition.getConfidence();
-        }
-        boxes.fromList(rectList);
-        scores.fromArray(scoresArray);
-        MatOfInt indices = new MatOfInt();
-        Dnn.NMSBoxes(boxes, scores, 0.0f, 0.45f, indices);
-        int[] indicesArray = indices.toArray();
-        for (int index : indicesArray) {
-            nmsRecognitions.add(allRecognitions.get(index));
-        }
+    /**
+     * Same as {@link #detect(ByteBuffer, int, int)}, but writes the boxes that survive NMS to
+     * {@code kept}, best first, without creating Recognitions.
+     *
+     * @param kept receives the detections; must hold at least maxDetections entries
+     * @return number of detections
+     */
+    public int detect(ByteBuffer input, int BITMAP_WIDTH, int BITMAP_HEIGHT, DetectionBatch kept) {
+        decoder.decode(buffers.run(runner, input), BITMAP_WIDTH, BITMAP_HEIGHT);
+        return nmsEngine.run(decoder.getCandidates(), kept);
+    }
 
-        return nmsRecognitions;
+    /** Raw output of the last run, 6300 x 85 floats; overwritten by the next detect(). */
+    public FloatBuffer getRawOutput() {
+        return buffers.getOutputFloats();
     }
 
 }
\ No newline at end of file
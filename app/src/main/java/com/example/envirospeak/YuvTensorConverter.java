@@ -0,0 +1,177 @@
+package com.example.envirospeak;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts a YUV_420_888 camera frame straight into a float32 RGB model input, in one pass:
+ * rotation to upright, crop, bilinear resize (luma; chroma is already half resolution and
+ * is sampled nearest) and normalization to [0, 1]. The output is a reusable direct buffer
+ * in native order, laid out like the TensorImage the support library would have produced.
+ *
+ * Source planes are read with absolute gets, so their positions are left untouched. Index
+ * and weight tables only change when the frame geometry does.
+ */
+public class YuvTensorConverter {
+
+    private final int width;
+    private final int height;
+    private final ByteBuffer output;
+
+    private int srcWidth = -1;
+    private int srcHeight = -1;
+    private int yRowStride = -1;
+    private int uvRowStride = -1;
+    private int uvPixelStride = -1;
+    private int rotation = -1;
+    private float cropLeft = Float.NaN;
+    private float cropTop = Float.NaN;
+    private float cropWidth = Float.NaN;
+    private float cropHeight = Float.NaN;
+
+    // Per output column / row: luma offsets of the two taps, the weight of the second tap
+    // and the chroma offset. Offsets of a column and a row add up to the plane index.
+    private final int[] colLuma0;
+    private final int[] colLuma1;
+    private final float[] colWeight;
+    private final int[] colChroma;
+    private final int[] rowLuma0;
+    private final int[] rowLuma1;
+    private final float[] rowWeight;
+    private final int[] rowChroma;
+
+    public YuvTensorConverter(int width, int height) {
+        this.width = width;
+        this.height = height;
+        output = ByteBuffer.allocateDirect(width * height * 3 * 4).order(ByteOrder.nativeOrder());
+        colLuma0 = new int[width];
+        colLuma1 = new int[width];
+        colWeight = new float[width];
+        colChroma = new int[width];
+        rowLuma0 = new int[height];
+        rowLuma1 = new int[height];
+        rowWeight = new float[height];
+        rowChroma = new int[height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** The model input written by {@link #convert}, rewound. */
+    public ByteBuffer getOutput() {
+        output.rewind();
+        return output;
+    }
+
+    /**
+     * Upright size of a frame, i.e. after applying {@code rotationDegrees}.
+     * Index 0 is the width, index 1 the height.
+     */
+    public static int[] uprightSize(int srcWidth, int srcHeight, int rotationDegrees) {
+        return rotationDegrees % 180 == 0 ? new int[]{srcWidth, srcHeight} : new int[]{srcHeight, srcWidth};
+    }
+
+    /**
+     * Converts a frame. The crop is given in upright coordinates; passing the whole upright
+     * frame converts everything.
+     *
+     * @param rotationDegrees clockwise rotation that makes the frame upright (0, 90, 180, 270)
+     */
+    public ByteBuffer convert(ByteBuffer yPlane, ByteBuffer uPlane, ByteBuffer vPlane,
+                              int srcWidth, int srcHeight, int yRowStride, int uvRowStride, int uvPixelStride,
+                              int rotationDegrees, float cropLeft, float cropTop, float cropWidth, float cropHeight) {
+        if (srcWidth != this.srcWidth || srcHeight != this.srcHeight || yRowStride != this.yRowStride
+                || uvRowStride != this.uvRowStride || uvPixelStride != this.uvPixelStride
+                || rotationDegrees != rotation || cropLeft != this.cropLeft || cropTop != this.cropTop
+                || cropWidth != this.cropWidth || cropHeight != this.cropHeight) {
+            prepare(srcWidth, srcHeight, yRowStride, uvRowStride, uvPixelStride, rotationDegrees,
+                    cropLeft, cropTop, cropWidth, cropHeight);
+        }
+
+        int o = 0;
+        for (int i = 0; i < height; i++) {
+            final int r0 = rowLuma0[i];
+            final int r1 = rowLuma1[i];
+            final float rw = rowWeight[i];
+            final int rc = rowChroma[i];
+            for (int j = 0; j < width; j++) {
+                final int c0 = colLuma0[j];
+                final int c1 = colLuma1[j];
+                final float cw = colWeight[j];
+                float top = (1 - cw) * (yPlane.get(r0 + c0) & 0xFF) + cw * (yPlane.get(r0 + c1) & 0xFF);
+                float bottom = (1 - cw) * (yPlane.get(r1 + c0) & 0xFF) + cw * (yPlane.get(r1 + c1) & 0xFF);
+                float luma = (1 - rw) * top + rw * bottom;
+
+                int chroma = rc + colChroma[j];
+                float u = (uPlane.get(chroma) & 0xFF) - 128f;
+                float v = (vPlane.get(chroma) & 0xFF) - 128f;
+
+                output.putFloat(o, clamp(luma + 1.402f * v));
+                output.putFloat(o + 4, clamp(luma - 0.344136f * u - 0.714136f * v));
+                output.putFloat(o + 8, clamp(luma + 1.772f * u));
+                o += 12;
+            }
+        }
+        return getOutput();
+    }
+
+    private static float clamp(float value) {
+        return value <= 0f ? 0f : (value >= 255f ? 1f : value / 255f);
+    }
+
+    private void prepare(int srcWidth, int srcHeight, int yRowStride, int uvRowStride, int uvPixelStride,
+                         int rotationDegrees, float cropLeft, float cropTop, float cropWidth, float cropHeight) {
+        if (rotationDegrees % 90 != 0)
+            throw new IllegalArgumentException("Unsupported rotation: " + rotationDegrees);
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.rotation = rotationDegrees;
+        this.cropLeft = cropLeft;
+        this.cropTop = cropTop;
+        this.cropWidth = cropWidth;
+        this.cropHeight = cropHeight;
+
+        int r = ((rotationDegrees % 360) + 360) % 360;
+        // Upright x runs along source x for 0/180 and along source y for 90/270
+        boolean swap = r == 90 || r == 270;
+        boolean flipX = r == 90 || r == 180;
+        boolean flipY = r == 180 || r == 270;
+
+        fillAxis(width, cropLeft, cropWidth, swap, flipX, colLuma0, colLuma1, colWeight, colChroma);
+        fillAxis(height, cropTop, cropHeight, !swap, flipY, rowLuma0, rowLuma1, rowWeight, rowChroma);
+    }
+
+    /**
+     * @param alongSourceY whether this upright axis walks along source rows
+     * @param flip whether source positions run backwards along this upright axis
+     */
+    private void fillAxis(int count, float cropStart, float cropSize, boolean alongSourceY, boolean flip,
+                          int[] luma0, int[] luma1, float[] weight, int[] chroma) {
+        int length = alongSourceY ? srcHeight : srcWidth;
+        int lumaStep = alongSourceY ? yRowStride : 1;
+        int chromaStep = alongSourceY ? uvRowStride : uvPixelStride;
+        float scale = cropSize / count;
+        for (int k = 0; k < count; k++) {
+            float upright = cropStart + (k + 0.5f) * scale - 0.5f;
+            float pos = flip ? (length - 1) - upright : upright;
+            if (pos < 0)
+                pos = 0;
+            if (pos > length - 1)
+                pos = length - 1;
+            int p0 = (int) pos;
+            int p1 = Math.min(p0 + 1, length - 1);
+            luma0[k] = p0 * lumaStep;
+            luma1[k] = p1 * lumaStep;
+            weight[k] = pos - p0;
+            chroma[k] = (Math.round(pos) >> 1) * chromaStep;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.envirospeak;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnnouncementSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+
+    /** Records utterances; progress is reported by the test. */
+    private static final class FakeEngine implements SpeechEngine {
+        final List<String> texts = new ArrayList<>();
+        final List<String> ids = new ArrayList<>();
+        Listener listener;
+        boolean ready = true;
+
+        @Override
+        public void setListener(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean speak(String text, String utteranceId) {
+            if (!ready)
+                return false;
+            texts.add(text);
+            ids.add(utteranceId);
+            return true;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        void finishLast() {
+            String id = ids.get(ids.size() - 1);
+            listener.onStart(id);
+            listener.onDone(id);
+        }
+    }
+
+    /** Holds delayed tasks until the test runs them. */
+    private static final class FakeTimer implements AnnouncementScheduler.Timer {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+
+        @Override
+        public void schedule(Runnable task, long delayNanos) {
+            tasks.add(task);
+            delays.add(delayNanos);
+        }
+
+        void fire() {
+            List<Runnable> due = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : due)
+                task.run();
+        }
+    }
+
+    private FakeEngine engine;
+    private FakeTimer timer;
+    private long now;
+    private AnnouncementScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        engine = new FakeEngine();
+        timer = new FakeTimer();
+        now = 10_000 * MS;
+        scheduler = new AnnouncementScheduler(engine, Runnable::run, () -> now, timer)
+                .setMinIntervalMillis(1000)
+                .setRepeatIntervalMillis(10_000)
+                .setMaxStalenessMillis(500);
+    }
+
+    private static Recognition track(int trackId, String label, float depth) {
+        Recognition recognition = new Recognition(0, label, 0.9f, 0, 0, 10, 10);
+        recognition.setTrack(trackId, 1, 1);
+        recognition.setDepth(depth);
+        return recognition;
+    }
+
+    @Test
+    public void coalescesLabelsClosestFirst() {
+        scheduler.submit(Arrays.asList(track(1, "chair", 5f), track(2, "person", 9f),
+                track(3, "chair", 3f), track(4, "chair", 1f)), now);
+        assertEquals(Arrays.asList("person. three chairs"), engine.texts);
+    }
+
+    @Test
+    public void saysDistanceOfClosestPerLabel() {
+        Recognition far = track(1, "chair", 5f);
+        far.setDistance(4.2f);
+        Recognition near = track(2, "chair", 6f);
+        near.setDistance(2.1f);
+        scheduler.submit(Arrays.asList(near, track(3, "dog", 1f), far), now);
+        assertEquals(Arrays.asList("two chairs, about 2 meters. dog"), engine.texts);
+    }
+
+    @Test
+    public void onlyAnnouncesChanges() {
+        scheduler.submit(Arrays.asList(track(1, "chair", 5f), track(2, "person", 9f)), now);
+        engine.finishLast();
+
+        now += 2000 * MS;
+        scheduler.submit(Arrays.asList(track(1, "chair", 5f), track(2, "person", 9f)), now);
+        assertEquals(1, engine.texts.size());
+
+        now += 2000 * MS;
+        scheduler.submit(Arrays.asList(track(1, "chair", 5f), track(2, "person", 9f), track(7, "dog", 2f)), now);
+        assertEquals("dog", engine.texts.get(1));
+        engine.finishLast();
+
+        // Still in view after the repeat interval
+        now += 10_000 * MS;
+        scheduler.submit(Arrays.asList(track(1, "chair", 5f), track(2, "person", 9f), track(7, "dog", 2f)), now);
+        assertEquals("person. chair. dog", engine.texts.get(2));
+    }
+
+    @Test
+    public void trackThatLeftIsAnnouncedAgainUnderNewId() {
+        scheduler.submit(Arrays.asList(track(1, "person", 5f)), now);
+        engine.finishLast();
+        now += 2000 * MS;
+        scheduler.submit(new ArrayList<Recognition>(), now);
+        now += 2000 * MS;
+        scheduler.submit(Arrays.asList(track(9, "person", 5f)), now);
+        assertEquals(Arrays.asList("person", "person"), engine.texts);
+    }
+
+    @Test
+    public void framesWaitWhileSpeakingAndOnlyNewestSurvives() {
+        scheduler.submit(Arrays.asList(track(1, "person", 5f)), now);
+        now += 1500 * MS;
+        scheduler.submit(Arrays.asList(track(1, "person", 5f), track(2, "cup", 1f)), now);
+        scheduler.submit(Arrays.asList(track(1, "person", 5f), track(2, "cup", 1f), track(3, "bottle", 2f)), now);
+        assertEquals(1, engine.texts.size());
+        assertEquals(1, scheduler.getSuperseded());
+
+        engine.finishLast();
+        assertEquals("bottle. cup", engine.texts.get(1));
+    }
+
+    @Test
+    public void rateLimitsAndDropsStaleFrames() {
+        scheduler.submit(Arrays.asList(track(1, "person", 5f)), now);
+        engine.finishLast();
+
+        now += 200 * MS;
+        scheduler.submit(Arrays.asList(track(1, "person", 5f), track(2, "cup", 1f)), now);
+        assertEquals("too soon after the last utterance", 1, engine.texts.size());
+
+        // By the time the interval is over, the waiting frame is too old
+        long captured = now;
+        now += 900 * MS;
+        scheduler.submit(new ArrayList<Recognition>(), captured);
+        assertEquals(1, scheduler.getStale());
+        assertEquals(1, engine.texts.size());
+    }
+
+    @Test
+    public void rateLimitedFrameIsSpokenWhenIntervalEnds() {
+        scheduler.setMaxStalenessMillis(2000);
+        scheduler.submit(Arrays.asList(track(1, "person", 5f)), now);
+        engine.finishLast();
+
+        now += 200 * MS;
+        scheduler.submit(Arrays.asList(track(1, "person", 5f), track(2, "cup", 1f)), now);
+        assertEquals(1, engine.texts.size());
+        assertEquals(Arrays.asList(800 * MS), timer.delays);
+
+        now += 800 * MS;
+        timer.fire();
+        assertEquals(Arrays.asList("person", "cup"), engine.texts);
+    }
+
+    @Test
+    public void refusedUtteranceLeavesTracksUnannounced() {
+        engine.ready = false;
+        scheduler.submit(Arrays.asList(track(1, "person", 5f)), now);
+        assertTrue(engine.texts.isEmpty());
+        assertEquals(0, scheduler.getSpoken());
+
+        engine.ready = true;
+        now += 100 * MS;
+        timer.fire();
+        assertEquals(Arrays.asList("person"), engine.texts);
+    }
+
+    @Test
+    public void engineThatNeverFinishesDoesNotMuteForGood() {
+        scheduler.setSpeechTimeoutMillis(2000, 100);
+        // "person" never gets onStart() or onDone()
+        scheduler.submit(Arrays.asList(track(1, "person", 5f)), now);
+        String first = engine.ids.get(0);
+
+        // Within 2000 + 6 * 100 ms it may still be speaking
+        now += 2500 * MS;
+        scheduler.submit(Arrays.asList(track(1, "person", 5f), track(2, "cup", 1f)), now);
+        assertEquals(1, engine.texts.size());
+        assertEquals(0, scheduler.getTimedOut());
+
+        now += 200 * MS;
+        scheduler.submit(Arrays.asList(track(1, "person", 5f), track(2, "cup", 1f)), now);
+        assertEquals(Arrays.asList("person", "cup"), engine.texts);
+        assertEquals(1, scheduler.getTimedOut());
+
+        // The lost callback showing up late does not end the new utterance
+        engine.listener.onDone(first);
+        now += 1500 * MS;
+        scheduler.submit(Arrays.asList(track(1, "person", 5f), track(2, "cup", 1f), track(3, "dog", 2f)), now);
+        assertEquals(2, engine.texts.size());
+    }
+
+    @Test
+    public void measuresCaptureToFirstWordLatency() {
+        long captured = now;
+        now += 120 * MS;
+        scheduler.submit(Arrays.asList(track(1, "person", 5f)), captured);
+        now += 80 * MS;
+        engine.listener.onStart(engine.ids.get(0));
+        assertEquals(200 * MS, scheduler.getLastLatencyNanos());
+        assertEquals(200 * MS, scheduler.getMeanLatencyNanos());
+        assertEquals(1, scheduler.getSpoken());
+    }
+
+    @Test
+    public void pluralizesCocoLabels() {
+        assertEquals("three chairs", AnnouncementScheduler.phrase("chair", 3));
+        assertEquals("two people", AnnouncementScheduler.phrase("person", 2));
+        assertEquals("four wine glasses", AnnouncementScheduler.phrase("wine glass", 4));
+        assertEquals("two benches", AnnouncementScheduler.phrase("bench", 2));
+        assertEquals("12 cars", AnnouncementScheduler.phrase("car", 12));
+        assertEquals("two knives", AnnouncementScheduler.phrase("knife", 2));
+        assertEquals("bus", AnnouncementScheduler.phrase("bus", 1));
+    }
+
+    @Test
+    public void roundsDistances() {
+        assertEquals("less than a meter", AnnouncementScheduler.distancePhrase(0.5f));
+        assertEquals("about 1 meter", AnnouncementScheduler.distancePhrase(0.9f));
+        assertEquals("about 1.5 meters", AnnouncementScheduler.distancePhrase(1.6f));
+        assertEquals("about 4 meters", AnnouncementScheduler.distancePhrase(3.7f));
+    }
+}
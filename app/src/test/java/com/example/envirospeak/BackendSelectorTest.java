@@ -0,0 +1,144 @@
+package com.example.envirospeak;
+
+import com.example.envirospeak.InferenceBackendConfig.Backend;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BackendSelectorTest {
+
+    /** Fake interpreter that sleeps for its backend's run time. */
+    private static final class FakeModel {
+        final Backend backend;
+        final long runMillis;
+        final boolean failsToRun;
+        boolean closed;
+
+        FakeModel(Backend backend, long runMillis, boolean failsToRun) {
+            this.backend = backend;
+            this.runMillis = runMillis;
+            this.failsToRun = failsToRun;
+        }
+    }
+
+    /** Host without accelerators by default: only CPU can be created. */
+    private static final class FakeDevice {
+        final EnumSet<Backend> available = EnumSet.of(Backend.CPU);
+        final EnumSet<Backend> failingRuns = EnumSet.noneOf(Backend.class);
+        final EnumMap<Backend, Long> runMillis = new EnumMap<>(Backend.class);
+        final List<FakeModel> created = new ArrayList<>();
+
+        BackendSelector<FakeModel> selector() {
+            return new BackendSelector<>(
+                    (backend, config) -> {
+                        if (!available.contains(backend))
+                            throw new UnsupportedOperationException(backend + " not available");
+                        Long millis = runMillis.get(backend);
+                        FakeModel model = new FakeModel(backend, millis != null ? millis : 0, failingRuns.contains(backend));
+                        created.add(model);
+                        return model;
+                    },
+                    model -> {
+                        if (model.closed)
+                            throw new IllegalStateException("run after close");
+                        if (model.failsToRun)
+                            throw new IllegalArgumentException("op not supported by " + model.backend);
+                        Thread.sleep(model.runMillis);
+                    },
+                    model -> model.closed = true);
+        }
+    }
+
+    @Test
+    public void defaultsToCpuWithoutAccelerators() throws Exception {
+        FakeDevice device = new FakeDevice();
+        BackendSelector.Selection<FakeModel> selection = device.selector().select(new InferenceBackendConfig());
+
+        assertEquals(Backend.CPU, selection.getBackend());
+        assertFalse(selection.getModel().closed);
+        assertEquals(EnumSet.of(Backend.GPU, Backend.NNAPI), EnumSet.copyOf(selection.getFailures().keySet()));
+        assertTrue(selection.getProbeNanos().isEmpty());
+    }
+
+    @Test
+    public void probeDegradesToCpuWithoutAccelerators() throws Exception {
+        FakeDevice device = new FakeDevice();
+        BackendSelector.Selection<FakeModel> selection =
+                device.selector().select(new InferenceBackendConfig().setProbe(true));
+
+        assertEquals(Backend.CPU, selection.getBackend());
+        assertEquals(EnumSet.of(Backend.CPU), EnumSet.copyOf(selection.getProbeNanos().keySet()));
+    }
+
+    @Test
+    public void firstWorkingBackendWinsWithoutProbe() throws Exception {
+        FakeDevice device = new FakeDevice();
+        device.available.addAll(Arrays.asList(Backend.GPU, Backend.NNAPI));
+        device.failingRuns.add(Backend.GPU);
+        BackendSelector.Selection<FakeModel> selection = device.selector().select(new InferenceBackendConfig());
+
+        // GPU builds but cannot run the model: closed and skipped
+        assertEquals(Backend.NNAPI, selection.getBackend());
+        assertTrue(device.created.get(0).closed);
+        assertEquals(2, device.created.size());
+        assertTrue(selection.getFailures().get(Backend.GPU) instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void probePicksFastestAndClosesTheRest() throws Exception {
+        FakeDevice device = new FakeDevice();
+        device.available.addAll(Arrays.asList(Backend.GPU, Backend.NNAPI));
+        device.runMillis.put(Backend.GPU, 40L);
+        device.runMillis.put(Backend.NNAPI, 1L);
+        device.runMillis.put(Backend.CPU, 20L);
+        BackendSelector.Selection<FakeModel> selection =
+                device.selector().select(new InferenceBackendConfig().setProbe(true).setProbeRuns(2));
+
+        assertEquals(Backend.NNAPI, selection.getBackend());
+        assertEquals(3, selection.getProbeNanos().size());
+        assertTrue(selection.getProbeNanos().get(Backend.GPU) >= 40_000_000L);
+        for (FakeModel model : device.created)
+            assertEquals(model.backend != Backend.NNAPI, model.closed);
+    }
+
+    @Test
+    public void cpuIsAlwaysTriedLast() throws Exception {
+        InferenceBackendConfig config = new InferenceBackendConfig().setBackends(Backend.NNAPI, Backend.NNAPI);
+        assertEquals(Arrays.asList(Backend.NNAPI, Backend.CPU), config.getBackends());
+
+        FakeDevice device = new FakeDevice();
+        device.available.add(Backend.GPU);
+        // GPU is available but not configured
+        assertEquals(Backend.CPU, device.selector().select(config).getBackend());
+    }
+
+    @Test
+    public void cpuListedFirstStillFallsBackLast() throws Exception {
+        InferenceBackendConfig config = new InferenceBackendConfig().setBackends(Backend.CPU, Backend.GPU);
+        assertEquals(Arrays.asList(Backend.GPU, Backend.CPU), config.getBackends());
+
+        FakeDevice device = new FakeDevice();
+        device.available.add(Backend.GPU);
+        assertEquals(Backend.GPU, device.selector().select(config).getBackend());
+    }
+
+    @Test
+    public void failsWhenNothingCanRun() {
+        FakeDevice device = new FakeDevice();
+        device.failingRuns.add(Backend.CPU);
+        try {
+            device.selector().select(new InferenceBackendConfig().setProbe(true));
+            fail("expected the CPU failure");
+        } catch (Exception e) {
+            assertTrue(e instanceof IllegalArgumentException);
+        }
+        assertTrue(device.created.get(0).closed);
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BoxTrackerTest {
+
+    private static int update(BoxTracker tracker, float[][] boxes, int[] classIds) {
+        float[] scores = new float[boxes.length];
+        Arrays.fill(scores, 0.9f);
+        return update(tracker, boxes, classIds, scores);
+    }
+
+    private static int update(BoxTracker tracker, float[][] boxes, int[] classIds, float[] scores) {
+        int n = boxes.length;
+        float[] left = new float[n], top = new float[n], right = new float[n], bottom = new float[n];
+        for (int i = 0; i < n; i++) {
+            left[i] = boxes[i][0];
+            top[i] = boxes[i][1];
+            right[i] = boxes[i][2];
+            bottom[i] = boxes[i][3];
+        }
+        return tracker.update(left, top, right, bottom, scores, classIds, n);
+    }
+
+    private static float[] box(float cx, float cy, float w, float h) {
+        return new float[]{cx - w / 2, cy - h / 2, cx + w / 2, cy + h / 2};
+    }
+
+    private static int indexOf(BoxTracker tracker, int id) {
+        for (int i = 0; i < tracker.getCount(); i++) {
+            if (tracker.getIds()[i] == id)
+                return i;
+        }
+        return -1;
+    }
+
+    @Test
+    public void keepsIdsWhileObjectsMove() {
+        BoxTracker tracker = new BoxTracker(8, 8);
+        update(tracker, new float[][]{box(100, 100, 50, 100), box(400, 100, 50, 100)}, new int[]{0, 0});
+        int first = tracker.getIds()[0];
+        int second = tracker.getIds()[1];
+        assertNotEquals(first, second);
+
+        for (int frame = 1; frame <= 10; frame++) {
+            // Listed in the other order to make sure matching is by overlap, not position
+            assertEquals(2, update(tracker, new float[][]{box(400 - 4 * frame, 100, 50, 100),
+                    box(100 + 5 * frame, 100, 50, 100)}, new int[]{0, 0}));
+        }
+        int i = indexOf(tracker, first);
+        assertTrue(i >= 0);
+        assertEquals(150, (tracker.getLeft()[i] + tracker.getRight()[i]) / 2, 2f);
+        assertEquals(360, (tracker.getLeft()[indexOf(tracker, second)] + tracker.getRight()[indexOf(tracker, second)]) / 2, 2f);
+    }
+
+    @Test
+    public void predictsConstantVelocityBetweenKeyframes() {
+        BoxTracker tracker = new BoxTracker(4, 4);
+        for (int frame = 0; frame < 20; frame++)
+            update(tracker, new float[][]{box(100 + 10 * frame, 200, 60, 120)}, new int[]{2});
+
+        // Last detection was at x = 290; five frames later the object should be near 340
+        for (int frame = 0; frame < 5; frame++)
+            assertEquals(1, tracker.predict());
+        float cx = (tracker.getLeft()[0] + tracker.getRight()[0]) / 2;
+        assertEquals(340, cx, 5f);
+        assertEquals(200, (tracker.getTop()[0] + tracker.getBottom()[0]) / 2, 1f);
+        assertEquals((float) Math.pow(0.9, 5), tracker.getMinConfidence(), 1e-4f);
+    }
+
+    @Test
+    public void doesNotMatchAcrossClasses() {
+        BoxTracker tracker = new BoxTracker(4, 4);
+        update(tracker, new float[][]{box(100, 100, 50, 100)}, new int[]{0});
+        int person = tracker.getIds()[0];
+
+        update(tracker, new float[][]{box(100, 100, 50, 100)}, new int[]{1});
+        assertEquals(1, tracker.getCount());
+        assertNotEquals(person, tracker.getIds()[0]);
+        assertEquals(1, tracker.getClassIds()[0]);
+        // The person track is kept, unreported, for one missed keyframe
+        assertEquals(2, tracker.getTrackCount());
+    }
+
+    @Test
+    public void dropsTracksAfterMaxMisses() {
+        BoxTracker tracker = new BoxTracker(4, 4).setMaxMisses(1);
+        update(tracker, new float[][]{box(100, 100, 50, 100)}, new int[]{0});
+        int id = tracker.getIds()[0];
+
+        assertEquals(0, update(tracker, new float[0][], new int[0]));
+        assertEquals(1, tracker.getTrackCount());
+        // Reappearing within the allowance continues the same track
+        update(tracker, new float[][]{box(100, 100, 50, 100)}, new int[]{0});
+        assertEquals(id, tracker.getIds()[0]);
+
+        update(tracker, new float[0][], new int[0]);
+        update(tracker, new float[0][], new int[0]);
+        assertEquals(0, tracker.getTrackCount());
+        update(tracker, new float[][]{box(100, 100, 50, 100)}, new int[]{0});
+        assertNotEquals(id, tracker.getIds()[0]);
+    }
+
+    @Test
+    public void stopsAtCapacity() {
+        BoxTracker tracker = new BoxTracker(2, 4);
+        update(tracker, new float[][]{box(100, 100, 20, 20), box(200, 100, 20, 20), box(300, 100, 20, 20)},
+                new int[]{0, 0, 0});
+        assertEquals(2, tracker.getCount());
+        assertEquals(1f, new BoxTracker(2, 2).getMinConfidence(), 0f);
+    }
+
+    @Test
+    public void lowScoreDetectionsContinueButNeverStartTracks() {
+        BoxTracker tracker = new BoxTracker(4, 4).setHighScore(0.5f);
+        update(tracker, new float[][]{box(100, 100, 50, 100)}, new int[]{0}, new float[]{0.8f});
+        int id = tracker.getIds()[0];
+
+        // Occluded: the detector only finds it at 0.3, plus a stray low-score box elsewhere
+        assertEquals(1, update(tracker, new float[][]{box(300, 300, 50, 50), box(102, 100, 50, 100)},
+                new int[]{0, 0}, new float[]{0.3f, 0.3f}));
+        assertEquals(id, tracker.getIds()[0]);
+        assertEquals(0.3f, tracker.getScores()[0], 0f);
+        assertEquals(1, tracker.getTrackCount());
+    }
+
+    @Test
+    public void steadySceneWithModestScoresOnlyDetectsEveryInterval() {
+        // Same schedule as MainActivity: a keyframe every 5 frames, or sooner once a track fades
+        int interval = 5;
+        float minConfidence = 0.4f;
+        BoxTracker tracker = new BoxTracker(4, 4).setHighScore(0.5f);
+        float[][] boxes = {box(100, 200, 60, 120), box(300, 200, 60, 120), box(500, 200, 60, 120)};
+        int[] classIds = {0, 1, 0};
+        float[] scores = new float[3];
+        boolean requested = false;
+        int detections = 0;
+        for (int frame = 0; frame < 60; frame++) {
+            if (frame % interval == 0 || requested) {
+                requested = false;
+                detections++;
+                // Every object starts from a high score, then is detected anywhere from 0.3 to 0.6
+                for (int k = 0; k < 3; k++)
+                    scores[k] = frame == 0 ? 0.6f : 0.3f + ((frame / interval + k) % 4) * 0.1f;
+                assertEquals(3, update(tracker, boxes, classIds, scores));
+            } else {
+                assertEquals(3, tracker.predict());
+                if (tracker.getMinConfidence() < minConfidence)
+                    requested = true;
+            }
+        }
+        assertEquals(60 / interval, detections);
+    }
+
+    @Test
+    public void highScoreDetectionsAreMatchedFirst() {
+        BoxTracker tracker = new BoxTracker(4, 4).setHighScore(0.5f).setMinIou(0.1f);
+        update(tracker, new float[][]{box(100, 100, 100, 100)}, new int[]{0}, new float[]{0.9f});
+        int id = tracker.getIds()[0];
+
+        // The low-score box overlaps more, but the high-score one wins the first stage
+        update(tracker, new float[][]{box(100, 100, 100, 100), box(140, 100, 100, 100)},
+                new int[]{0, 0}, new float[]{0.3f, 0.9f});
+        int i = indexOf(tracker, id);
+        assertEquals(0.9f, tracker.getScores()[i], 0f);
+        assertEquals(1, tracker.getCount());
+    }
+
+    @Test
+    public void countsHitsAndAge() {
+        BoxTracker tracker = new BoxTracker(4, 4);
+        update(tracker, new float[][]{box(100, 100, 50, 100)}, new int[]{0});
+        assertEquals(1, tracker.getHits()[0]);
+        assertEquals(1, tracker.getAges()[0]);
+        tracker.predict();
+        tracker.predict();
+        update(tracker, new float[][]{box(100, 100, 50, 100)}, new int[]{0});
+        assertEquals(2, tracker.getHits()[0]);
+        assertEquals(4, tracker.getAges()[0]);
+    }
+
+    @Test
+    public void dozensOfObjectsKeepIdsWithoutAllocating() {
+        int objects = 40;
+        BoxTracker tracker = new BoxTracker(64, 64);
+        float[] left = new float[objects], top = new float[objects], right = new float[objects], bottom = new float[objects];
+        float[] scores = new float[objects];
+        int[] classIds = new int[objects];
+        int[] firstIds = new int[objects];
+        for (int frame = 0; frame < 200; frame++) {
+            for (int i = 0; i < objects; i++) {
+                // A grid of objects drifting right, listed in a rotating order
+                int k = (i + frame) % objects;
+                float cx = 60 + (k % 8) * 120 + 2 * frame;
+                float cy = 80 + (k / 8) * 200;
+                left[i] = cx - 40;
+                top[i] = cy - 70;
+                right[i] = cx + 40;
+                bottom[i] = cy + 70;
+                scores[i] = 0.6f + (k % 4) * 0.1f;
+                classIds[i] = k % 3;
+            }
+            assertEquals(objects, tracker.update(left, top, right, bottom, scores, classIds, objects));
+            if (frame == 0)
+                System.arraycopy(tracker.getIds(), 0, firstIds, 0, objects);
+        }
+        // Same ids as on the first frame, and no new track was ever started
+        Arrays.sort(firstIds);
+        int[] ids = Arrays.copyOf(tracker.getIds(), objects);
+        Arrays.sort(ids);
+        assertArrayEquals(firstIds, ids);
+        assertEquals(objects, tracker.getTrackCount());
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int frame = 0; frame < 50; frame++) {
+            tracker.update(left, top, right, bottom, scores, classIds, objects);
+            tracker.predict();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+}
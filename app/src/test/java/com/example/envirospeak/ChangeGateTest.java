@@ -0,0 +1,93 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ChangeGateTest {
+
+    private static final int SIZE = 32 * 24;
+
+    private static byte[] flat(int value) {
+        byte[] thumbnail = new byte[SIZE];
+        Arrays.fill(thumbnail, (byte) value);
+        return thumbnail;
+    }
+
+    @Test
+    public void staticSceneSkipsUntilRefresh() {
+        ChangeGate gate = new ChangeGate(SIZE).setThreshold(4f).setRefreshInterval(5);
+        byte[] scene = flat(100);
+
+        assertTrue("first frame always runs", gate.admit(scene));
+        for (int i = 0; i < 4; i++)
+            assertFalse(gate.admit(scene));
+        assertTrue("refresh interval forces a run", gate.admit(scene));
+        assertFalse(gate.admit(scene));
+
+        assertEquals(7, gate.getEvaluated());
+        assertEquals(5, gate.getSkipped());
+        assertEquals(1, gate.getForced());
+        assertEquals(5f / 7, gate.getSkipRate(), 1e-6f);
+    }
+
+    @Test
+    public void changeAboveThresholdRuns() {
+        ChangeGate gate = new ChangeGate(SIZE).setThreshold(4f).setRefreshInterval(100);
+        gate.admit(flat(100));
+
+        assertFalse(gate.admit(flat(103)));
+        assertEquals(3f, gate.getLastDifference(), 1e-6f);
+        assertTrue(gate.admit(flat(110)));
+        assertEquals(10f, gate.getLastDifference(), 1e-6f);
+        // The run made 110 the reference
+        assertFalse(gate.admit(flat(112)));
+        assertEquals(0, gate.getForced());
+    }
+
+    @Test
+    public void slowDriftAccumulatesAgainstReference() {
+        ChangeGate gate = new ChangeGate(SIZE).setThreshold(4f).setRefreshInterval(100);
+        gate.admit(flat(100));
+
+        assertFalse(gate.admit(flat(102)));
+        assertFalse(gate.admit(flat(104)));
+        assertTrue(gate.admit(flat(106)));
+    }
+
+    @Test
+    public void resetForcesNextRun() {
+        ChangeGate gate = new ChangeGate(SIZE);
+        byte[] scene = flat(50);
+        gate.admit(scene);
+        assertFalse(gate.admit(scene));
+
+        gate.reset();
+        assertTrue(gate.admit(scene));
+        assertTrue(Float.isNaN(gate.getLastDifference()));
+    }
+
+    @Test
+    public void thumbnailAveragesCellsAndHonoursRowStride() {
+        int width = 64;
+        int height = 48;
+        int rowStride = 80;
+        ByteBuffer luma = ByteBuffer.allocateDirect(rowStride * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < rowStride; x++)
+                // Left half dark, right half bright, row padding bright enough to show up if read
+                luma.put(y * rowStride + x, (byte) (x >= width ? 255 : x < width / 2 ? 20 : 200));
+        }
+
+        byte[] out = new byte[8 * 6];
+        ChangeGate.thumbnail(luma, width, height, rowStride, out, 8, 6);
+
+        for (int ty = 0; ty < 6; ty++) {
+            for (int tx = 0; tx < 8; tx++)
+                assertEquals(tx < 4 ? 20 : 200, out[ty * 8 + tx] & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DepthAggregatorTest {
+
+    private static final int SIZE = 256;
+
+    private static float[] randomMap(long seed) {
+        Random random = new Random(seed);
+        float[] map = new float[SIZE * SIZE];
+        for (int i = 0; i < map.length; i++)
+            map[i] = 100f + random.nextFloat() * 900f;
+        return map;
+    }
+
+    // One view pixel per map cell keeps the expected ROI easy to compute
+    private static DepthAggregator aggregator(float[] map, DepthAggregator.Strategy strategy) {
+        DepthAggregator aggregator = new DepthAggregator();
+        aggregator.setStrategy(strategy);
+        aggregator.setInnerBoxFraction(1f);
+        aggregator.setDepthMap(map, SIZE, SIZE, SIZE, SIZE);
+        return aggregator;
+    }
+
+    private static float[] roi(float[] map, int x0, int y0, int x1, int y1) {
+        float[] values = new float[(x1 - x0 + 1) * (y1 - y0 + 1)];
+        int i = 0;
+        for (int y = y0; y <= y1; y++)
+            for (int x = x0; x <= x1; x++)
+                values[i++] = map[y * SIZE + x];
+        return values;
+    }
+
+    @Test
+    public void meanMatchesBruteForce() {
+        float[] map = randomMap(1);
+        DepthAggregator aggregator = aggregator(map, DepthAggregator.Strategy.MEAN);
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            int x0 = random.nextInt(SIZE - 1), y0 = random.nextInt(SIZE - 1);
+            int x1 = x0 + random.nextInt(SIZE - x0), y1 = y0 + random.nextInt(SIZE - y0);
+            double sum = 0;
+            for (float value : roi(map, x0, y0, x1, y1))
+                sum += value;
+            float expected = (float) (sum / ((x1 - x0 + 1) * (y1 - y0 + 1)));
+            assertEquals(expected, aggregator.aggregate(x0, y0, x1, y1), 1e-2f);
+        }
+    }
+
+    @Test
+    public void medianWithinOneBinOfExact() {
+        float[] map = randomMap(3);
+        DepthAggregator aggregator = aggregator(map, DepthAggregator.Strategy.MEDIAN);
+        float binWidth = 900f / 256;
+        Random random = new Random(4);
+        for (int i = 0; i < 100; i++) {
+            int x0 = random.nextInt(SIZE - 1), y0 = random.nextInt(SIZE - 1);
+            int x1 = x0 + random.nextInt(SIZE - x0), y1 = y0 + random.nextInt(SIZE - y0);
+            float[] values = roi(map, x0, y0, x1, y1);
+            Arrays.sort(values);
+            float expected = values[(values.length - 1) / 2];
+            assertEquals(expected, aggregator.aggregate(x0, y0, x1, y1), binWidth);
+        }
+    }
+
+    @Test
+    public void roiStrategiesSeeThroughHollowObjects() {
+        // Far background (low inverse depth), near object filling the box but with a hole in the middle
+        float[] map = new float[SIZE * SIZE];
+        Arrays.fill(map, 10f);
+        for (int y = 50; y <= 150; y++)
+            for (int x = 50; x <= 150; x++)
+                map[y * SIZE + x] = (Math.abs(x - 100) < 15 && Math.abs(y - 100) < 15) ? 10f : 200f;
+
+        DepthAggregator aggregator = aggregator(map, DepthAggregator.Strategy.CENTER);
+        assertEquals(10f, aggregator.aggregate(50, 50, 150, 150), 1e-3f);
+
+        aggregator.setStrategy(DepthAggregator.Strategy.MEDIAN);
+        aggregator.setInnerBoxFraction(0.6f);
+        assertEquals(200f, aggregator.aggregate(50, 50, 150, 150), 1f);
+
+        aggregator.setStrategy(DepthAggregator.Strategy.PERCENTILE);
+        aggregator.setPercentile(0.9f);
+        assertEquals(200f, aggregator.aggregate(50, 50, 150, 150), 1f);
+    }
+
+    @Test
+    public void trimmedMeanIgnoresOutliers() {
+        float[] map = new float[SIZE * SIZE];
+        Arrays.fill(map, 50f);
+        map[10] = 0f;
+        // A handful of spikes inside a 10x10 box
+        for (int i = 0; i < 5; i++)
+            map[(20 + i) * SIZE + 20 + i] = 1000f;
+
+        DepthAggregator aggregator = aggregator(map, DepthAggregator.Strategy.TRIMMED_MEAN);
+        aggregator.setTrimFraction(0.1f);
+        assertEquals(50f, aggregator.aggregate(18, 18, 27, 27), 1f);
+
+        aggregator.setStrategy(DepthAggregator.Strategy.MEAN);
+        assertTrue(aggregator.aggregate(18, 18, 27, 27) > 90f);
+    }
+
+    @Test
+    public void flatMapGivesItsDepth() {
+        float[] map = new float[SIZE * SIZE];
+        Arrays.fill(map, 3.25f);
+        DepthAggregator aggregator = aggregator(map, DepthAggregator.Strategy.MEDIAN);
+        assertEquals(3.25f, aggregator.aggregate(10, 10, 40, 40), 0f);
+        aggregator.setStrategy(DepthAggregator.Strategy.PERCENTILE);
+        aggregator.setPercentile(0.9f);
+        assertEquals(3.25f, aggregator.aggregate(10, 10, 40, 40), 0f);
+        aggregator.setStrategy(DepthAggregator.Strategy.TRIMMED_MEAN);
+        assertEquals(3.25f, aggregator.aggregate(10, 10, 40, 40), 0f);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DepthOrderTest {
+
+    /** What the fuse stage did before: boxed depths, stable sort, descending. */
+    private static List<Integer> reference(float[] depths, int count) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            order.add(i);
+        Collections.sort(order, (a, b) -> {
+            float x = depths[a], y = depths[b];
+            if (Float.isNaN(x) || Float.isNaN(y))
+                return Boolean.compare(Float.isNaN(x), Float.isNaN(y));
+            return Float.compare(y, x) == 0 ? 0 : (x > y ? -1 : 1);
+        });
+        return order;
+    }
+
+    private static List<Integer> toList(int[] order, int n) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            list.add(order[i]);
+        return list;
+    }
+
+    private static float[] randomDepths(Random random, int count) {
+        float[] depths = new float[count];
+        for (int i = 0; i < count; i++) {
+            // Quantized, so that ties exercise stability; some negative and some NaN
+            int kind = random.nextInt(20);
+            depths[i] = kind == 0 ? Float.NaN : kind == 1 ? -random.nextInt(50) / 4f : random.nextInt(200) / 4f;
+        }
+        return depths;
+    }
+
+    @Test
+    public void insertionAndRadixMatchStableSort() {
+        Random random = new Random(3);
+        DepthOrder insertion = new DepthOrder(512).setInsertionThreshold(Integer.MAX_VALUE);
+        DepthOrder radix = new DepthOrder(512).setInsertionThreshold(0);
+        int[] order = new int[512];
+        for (int trial = 0; trial < 200; trial++) {
+            int count = random.nextInt(512);
+            float[] depths = randomDepths(random, count);
+            List<Integer> expected = reference(depths, count);
+
+            assertEquals(count, insertion.sort(depths, count, order));
+            assertEquals("insertion, trial " + trial, expected, toList(order, count));
+            assertEquals(count, radix.sort(depths, count, order));
+            assertEquals("radix, trial " + trial, expected, toList(order, count));
+        }
+    }
+
+    @Test
+    public void topKOrdersOnlyTheNearest() {
+        Random random = new Random(4);
+        int[] order = new int[300];
+        for (int k : new int[]{1, 5, 10, 100}) {
+            DepthOrder depthOrder = new DepthOrder(300).setTopK(k);
+            for (int trial = 0; trial < 50; trial++) {
+                int count = random.nextInt(300);
+                float[] depths = randomDepths(random, count);
+                int n = depthOrder.sort(depths, count, order);
+                assertEquals(Math.min(k, count), n);
+                assertEquals("k " + k + ", trial " + trial, reference(depths, count).subList(0, n), toList(order, n));
+            }
+        }
+    }
+
+    @Test
+    public void nanAndSignedZeroOrdering() {
+        float[] depths = {Float.NaN, -0f, 0f, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, -1f};
+        int[] order = new int[6];
+        new DepthOrder(6).sort(depths, 6, order);
+        assertArrayEquals(new int[]{4, 2, 1, 5, 3, 0}, order);
+    }
+
+    @Test
+    public void sortDoesNotAllocate() {
+        Random random = new Random(9);
+        float[] depths = randomDepths(random, 1000);
+        DepthOrder radix = new DepthOrder(1000);
+        DepthOrder topK = new DepthOrder(1000).setTopK(10);
+        int[] order = new int[1000];
+        for (int i = 0; i < 20; i++) {
+            radix.sort(depths, 1000, order);
+            topK.sort(depths, 1000, order);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 50; i++) {
+            radix.sort(depths, 1000, order);
+            topK.sort(depths, 1000, order);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+}
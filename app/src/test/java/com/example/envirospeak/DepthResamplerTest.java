@@ -0,0 +1,145 @@
+package com.example.envirospeak;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DepthResamplerTest {
+
+    private final DepthResampler resampler = new DepthResampler(4, 2);
+
+    @After
+    public void tearDown() {
+        resampler.shutdown();
+    }
+
+    private static float[][] randomMap(int width, int height, long seed) {
+        Random random = new Random(seed);
+        float[][] map = new float[height][width];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                map[y][x] = random.nextFloat() * 1000f;
+        return map;
+    }
+
+    // The original per-pixel MainActivity.resizeDepthMapSection() math, plus the edge clamp
+    private static float[][] reference(float[][] depthMap, int targetHeight, int targetWidth) {
+        float[][] resized = new float[targetHeight][targetWidth];
+        float x_ratio = (float) (depthMap[0].length - 1) / (targetWidth - 1);
+        float y_ratio = (float) (depthMap.length - 1) / (targetHeight - 1);
+        for (int y = 0; y < targetHeight; y++) {
+            for (int x = 0; x < targetWidth; x++) {
+                int x_l = (int) Math.floor(x_ratio * x);
+                int x_h = Math.min((int) Math.ceil(x_ratio * x), depthMap[0].length - 1);
+                int y_l = (int) Math.floor(y_ratio * y);
+                int y_h = Math.min((int) Math.ceil(y_ratio * y), depthMap.length - 1);
+                float A = depthMap[y_l][x_l];
+                float B = depthMap[y_l][x_h];
+                float C = depthMap[y_h][x_l];
+                float D = depthMap[y_h][x_h];
+                float xWeight = (x_ratio * x) - x_l;
+                float yWeight = (y_ratio * y) - y_l;
+                float top = (1 - xWeight) * A + xWeight * B;
+                float bottom = (1 - xWeight) * C + xWeight * D;
+                resized[y][x] = (1 - yWeight) * top + yWeight * bottom;
+            }
+        }
+        return resized;
+    }
+
+    @Test
+    public void matchesOriginalResize() {
+        float[][] map = randomMap(256, 256, 1);
+        int width = 1080, height = 1920;
+        float[] resized = resampler.resample(map, width, height);
+        float[][] expected = reference(map, height, width);
+
+        assertEquals(width * height, resized.length);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                assertEquals(expected[y][x], resized[y * width + x], 0f);
+    }
+
+    @Test
+    public void smallTargetsRunOnCallerThread() {
+        float[][] map = randomMap(16, 16, 2);
+        float[] resized = resampler.resample(map, 40, 30);
+        float[][] expected = reference(map, 30, 40);
+        for (int y = 0; y < 30; y++)
+            for (int x = 0; x < 40; x++)
+                assertEquals(expected[y][x], resized[y * 40 + x], 0f);
+    }
+
+    @Test
+    public void rotatesOutputBuffers() {
+        float[][] map = randomMap(256, 256, 3);
+        float[] first = resampler.resample(map, 640, 480);
+        float[] second = resampler.resample(map, 640, 480);
+        float[] third = resampler.resample(map, 640, 480);
+        assertNotSame(first, second);
+        assertSame(first, third);
+    }
+
+    @Test(timeout = 10000)
+    public void keepsWorkingAfterShutdown() {
+        float[][] map = randomMap(256, 256, 5);
+        resampler.resample(map, 1080, 1920);
+        resampler.shutdown();
+        float[] resized = resampler.resample(map, 1080, 1920);
+        float[][] expected = reference(map, 1920, 1080);
+        for (int y = 0; y < 1920; y += 7)
+            for (int x = 0; x < 1080; x += 7)
+                assertEquals(expected[y][x], resized[y * 1080 + x], 0f);
+    }
+
+    @Test(timeout = 30000)
+    public void shutdownDuringCallDoesNotHang() throws Exception {
+        float[][] map = randomMap(256, 256, 6);
+        for (int i = 0; i < 200; i++) {
+            final DepthResampler racing = new DepthResampler(4, 1);
+            Thread render = new Thread(() -> {
+                for (int k = 0; k < 5; k++)
+                    racing.resample(map, 640, 480);
+            });
+            render.start();
+            racing.shutdown();
+            render.join();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void failedBandIsRethrownAndLaterCallsWork() {
+        // Half the rows the size says, so the bottom bands, run by workers, read past the end
+        float[] truncated = new float[256 * 128];
+        try {
+            resampler.resample(truncated, 256, 256, 1080, 1920);
+            fail("expected the out-of-bounds read to be rethrown");
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+        float[][] map = randomMap(256, 256, 7);
+        float[] resized = resampler.resample(map, 1080, 1920);
+        assertEquals(reference(map, 1920, 1080)[1919][1079], resized[1920 * 1080 - 1], 0f);
+    }
+
+    @Test
+    public void doesNotAllocateAfterWarmUp() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        float[][] map = randomMap(256, 256, 4);
+        for (int i = 0; i < 10; i++)
+            resampler.resample(map, 1080, 1920);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 50; i++)
+            resampler.resample(map, 1080, 1920);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        // A single 1080x1920 output buffer would be over 8 MB
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+}
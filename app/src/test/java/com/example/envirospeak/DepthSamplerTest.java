@@ -0,0 +1,60 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DepthSamplerTest {
+
+    private static float[] randomMap(int width, int height, long seed) {
+        Random random = new Random(seed);
+        float[] map = new float[width * height];
+        for (int i = 0; i < map.length; i++)
+            map[i] = random.nextFloat() * 1000f;
+        return map;
+    }
+
+    @Test
+    public void pointSamplesMatchResizedMap() {
+        float[] map = randomMap(256, 256, 1);
+        int viewWidth = 1080, viewHeight = 1920;
+        DepthResampler resampler = new DepthResampler(1, 1);
+        float[] resized = resampler.resample(map, 256, 256, viewWidth, viewHeight);
+        resampler.shutdown();
+
+        DepthSampler sampler = new DepthSampler();
+        sampler.setDepthMap(map, 256, 256, viewWidth, viewHeight);
+        Random random = new Random(2);
+        for (int i = 0; i < 10000; i++) {
+            int x = random.nextInt(viewWidth);
+            int y = random.nextInt(viewHeight);
+            assertEquals(resized[y * viewWidth + x], sampler.sample(x, y), 1e-2f);
+        }
+    }
+
+    @Test
+    public void boxSampleAveragesCoveredCells() {
+        float[] map = new float[4 * 4];
+        for (int i = 0; i < map.length; i++)
+            map[i] = i;
+        DepthSampler sampler = new DepthSampler();
+        // One view pixel per map cell
+        sampler.setDepthMap(map, 4, 4, 4, 4);
+
+        // Cells (1,1) (2,1) (1,2) (2,2) -> 5, 6, 9, 10
+        assertEquals(7.5f, sampler.sampleBox(1, 1, 2, 2), 1e-6f);
+        assertEquals(map[5], sampler.sampleBox(1, 1, 1, 1), 1e-6f);
+    }
+
+    @Test
+    public void tinyBoxFallsBackToCenterSample() {
+        float[] map = {0, 10, 20, 30};
+        DepthSampler sampler = new DepthSampler();
+        sampler.setDepthMap(map, 2, 2, 100, 100);
+
+        assertEquals(sampler.sample(50, 50), sampler.sampleBox(45, 45, 55, 55), 1e-6f);
+        assertEquals(15f, sampler.sample(49.5f, 49.5f), 1e-4f);
+    }
+}
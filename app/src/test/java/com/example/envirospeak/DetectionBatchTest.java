@@ -0,0 +1,126 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DetectionBatchTest {
+
+    @Test
+    public void addResetsDepthAndTrack() {
+        DetectionBatch batch = new DetectionBatch(2);
+        int i = batch.add(1, 2, 3, 4, 0.7f, 5);
+        batch.setDepth(i, 3f);
+        batch.setTrack(i, 9, 4, 2);
+        batch.clear();
+
+        assertEquals(0, batch.add(10, 20, 30, 40, 0.6f, 1));
+        assertTrue(Float.isNaN(batch.getDepths()[0]));
+        assertEquals(-1, batch.getTrackIds()[0]);
+        assertEquals(1, batch.getCount());
+        batch.add(0, 0, 1, 1, 0.5f, 0);
+        try {
+            batch.add(0, 0, 1, 1, 0.5f, 0);
+            fail("batch is full");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void materializesRecognitions() {
+        DetectionBatch batch = new DetectionBatch(1);
+        batch.add(10, 20, 30, 40, 0.75f, 56);
+        batch.setDepth(0, 1.5f);
+        batch.setTrack(0, 3, 12, 4);
+
+        Recognition recognition = batch.toRecognition(0, "chair");
+        assertEquals(56, recognition.getLabelId());
+        assertEquals("chair", recognition.getLabelName());
+        assertEquals(0.75f, recognition.getConfidence(), 0f);
+        assertEquals(30f, recognition.getRight(), 0f);
+        assertEquals(1.5f, recognition.getDepth(), 0f);
+        assertEquals(3, recognition.getTrackId());
+        assertEquals(12, recognition.getAge());
+        assertEquals(4, recognition.getHits());
+    }
+
+    @Test
+    public void nmsOnBatchMatchesArrays() {
+        Random random = new Random(5);
+        DetectionBatch candidates = new DetectionBatch(300);
+        for (int i = 0; i < 300; i++) {
+            float x = random.nextInt(900);
+            float y = random.nextInt(1700);
+            candidates.add(x, y, x + 50 + random.nextInt(200), y + 50 + random.nextInt(200),
+                    random.nextFloat(), random.nextInt(5));
+        }
+        NmsEngine engine = new NmsEngine(300, 5);
+        engine.setMode(NmsEngine.Mode.CLASS_AWARE);
+        DetectionBatch kept = new DetectionBatch(300);
+        int n = engine.run(candidates, kept);
+
+        int expected = engine.run(candidates.getLeft(), candidates.getTop(), candidates.getRight(),
+                candidates.getBottom(), candidates.getScores(), candidates.getClassIds(), candidates.getCount());
+        assertEquals(expected, n);
+        assertEquals(n, kept.getCount());
+        for (int k = 0; k < n; k++) {
+            int i = engine.getKept()[k];
+            assertEquals(candidates.getLeft()[i], kept.getLeft()[k], 0f);
+            assertEquals(candidates.getBottom()[i], kept.getBottom()[k], 0f);
+            assertEquals(candidates.getClassIds()[i], kept.getClassIds()[k]);
+            assertEquals(engine.getKeptScores()[k], kept.getScores()[k], 0f);
+        }
+    }
+
+    @Test
+    public void decodeNmsTrackAndOrderWithoutAllocating() {
+        int anchors = 6300;
+        int classes = 80;
+        Random random = new Random(2);
+        float[] output = new float[anchors * (5 + classes)];
+        for (int i = 0; i < anchors; i++) {
+            int base = i * (5 + classes);
+            output[base] = random.nextFloat();
+            output[base + 1] = random.nextFloat();
+            output[base + 2] = 0.05f + random.nextFloat() * 0.2f;
+            output[base + 3] = 0.05f + random.nextFloat() * 0.2f;
+            output[base + 4] = random.nextInt(100) == 0 ? 0.5f + random.nextFloat() / 2 : random.nextFloat() * 0.3f;
+            output[base + 5 + random.nextInt(classes)] = 0.9f;
+        }
+        FloatBuffer buffer = FloatBuffer.wrap(output);
+        YoloDecoder decoder = new YoloDecoder(anchors, classes);
+        NmsEngine nms = new NmsEngine(anchors, classes);
+        nms.setMode(NmsEngine.Mode.CLASS_AWARE);
+        nms.setMaxDetections(100);
+        DetectionBatch kept = new DetectionBatch(100);
+        BoxTracker tracker = new BoxTracker(128, 100);
+        DetectionBatch tracks = new DetectionBatch(128);
+        DepthOrder depthOrder = new DepthOrder(128);
+        int[] order = new int[128];
+        Runnable frame = () -> {
+            decoder.decode(buffer, 1080, 1920);
+            nms.run(decoder.getCandidates(), kept);
+            tracker.update(kept);
+            tracker.getTracks(tracks);
+            for (int i = 0; i < tracks.getCount(); i++)
+                tracks.setDepth(i, tracks.getBottom()[i]);
+            depthOrder.sort(tracks.getDepths(), tracks.getCount(), order);
+        };
+        for (int i = 0; i < 20; i++)
+            frame.run();
+        assertTrue(tracks.getCount() > 10);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 20; i++)
+            frame.run();
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+}
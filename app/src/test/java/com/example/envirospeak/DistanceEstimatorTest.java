@@ -0,0 +1,109 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class DistanceEstimatorTest {
+
+    private static final float FOCAL = 1000f;
+    private static final int VIEW_HEIGHT = 2000;
+    private static final int PERSON = 0;
+    private static final int CHAIR = 56;
+    private static final int CUP = 41;
+    private static final int POTTED_PLANT = 58;
+
+    /** A box of the class's prior height seen at {@code meters}, with a matching MiDaS depth. */
+    private static int add(DetectionBatch batch, int trackId, int classId, float meters, float top) {
+        float height = DistanceEstimator.COCO_HEIGHTS[classId] * FOCAL / meters;
+        int i = batch.add(100, top, 200, top + height, 0.9f, classId);
+        batch.setTrack(i, trackId, 1, 1);
+        // MiDaS-like: inverse depth with an unknown scale and shift
+        batch.setDepth(i, (1f / meters - 0.05f) * 40f);
+        return i;
+    }
+
+    @Test
+    public void usesSizePriorForKnownClasses() {
+        DistanceEstimator estimator = new DistanceEstimator(16, 32);
+        DetectionBatch batch = new DetectionBatch(4);
+        add(batch, 1, CHAIR, 2f, 500);
+        estimator.estimate(batch, FOCAL, VIEW_HEIGHT);
+        assertEquals(2f, batch.getDistances()[0], 1e-3f);
+    }
+
+    @Test
+    public void boxCutByTheEdgeHasNoPrior() {
+        DistanceEstimator estimator = new DistanceEstimator(16, 32);
+        DetectionBatch batch = new DetectionBatch(4);
+        add(batch, 1, PERSON, 1f, 10);
+        estimator.estimate(batch, FOCAL, VIEW_HEIGHT);
+        assertTrue(Float.isNaN(batch.getDistances()[0]));
+    }
+
+    @Test
+    public void fitsDepthToMetersAndAppliesItToClassesWithoutPrior() {
+        DistanceEstimator estimator = new DistanceEstimator(16, 32).setRefreshInterval(1);
+        DetectionBatch batch = new DetectionBatch(4);
+        float[] meters = {1f, 1.5f, 2f, 3f, 4f, 6f};
+        for (int frame = 0; frame < 3; frame++) {
+            for (float m : meters) {
+                batch.clear();
+                add(batch, 1, CUP, m, 500);
+                add(batch, 2, CHAIR, m * 1.3f, 300);
+                estimator.estimate(batch, FOCAL, VIEW_HEIGHT);
+            }
+        }
+        assertEquals(1 / 40f, estimator.getScale(), 1e-5f);
+        assertEquals(0.05f, estimator.getShift(), 1e-4f);
+
+        batch.clear();
+        int plant = batch.add(100, 500, 200, 800, 0.9f, POTTED_PLANT);
+        batch.setTrack(plant, 3, 1, 1);
+        batch.setDepth(plant, (1f / 2.5f - 0.05f) * 40f);
+        estimator.estimate(batch, FOCAL, VIEW_HEIGHT);
+        assertEquals(2.5f, batch.getDistances()[plant], 1e-3f);
+    }
+
+    @Test
+    public void cachesDistancePerTrack() {
+        DistanceEstimator estimator = new DistanceEstimator(16, 32).setRefreshInterval(5);
+        DetectionBatch batch = new DetectionBatch(4);
+        add(batch, 7, CHAIR, 2f, 500);
+        estimator.estimate(batch, FOCAL, VIEW_HEIGHT);
+
+        // Slightly taller box: within the height tolerance, so the cached value stays
+        batch.getBottom()[0] += 20;
+        estimator.estimate(batch, FOCAL, VIEW_HEIGHT);
+        assertEquals(2f, batch.getDistances()[0], 1e-3f);
+
+        // Much taller: recomputed at once
+        batch.clear();
+        add(batch, 7, CHAIR, 1f, 500);
+        estimator.estimate(batch, FOCAL, VIEW_HEIGHT);
+        assertEquals(1f, batch.getDistances()[0], 1e-3f);
+    }
+
+    @Test
+    public void estimatesWithoutAllocating() {
+        DistanceEstimator estimator = new DistanceEstimator(128, 64).setRefreshInterval(1);
+        DetectionBatch batch = new DetectionBatch(128);
+        for (int i = 0; i < 100; i++)
+            add(batch, i, i % 2 == 0 ? CHAIR : CUP, 1f + i / 20f, 300);
+        Runnable frame = () -> estimator.estimate(batch, FOCAL, VIEW_HEIGHT);
+        for (int i = 0; i < 10; i++)
+            frame.run();
+        assertFalse(Float.isNaN(batch.getDistances()[1]));
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 20; i++)
+            frame.run();
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+}
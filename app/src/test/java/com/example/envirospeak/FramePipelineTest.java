@@ -0,0 +1,317 @@
+package com.example.envirospeak;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link FramePipeline} with fake stages, to check ordering, backpressure and that
+ * stages of consecutive frames actually overlap.
+ */
+public class FramePipelineTest {
+
+    private static final int STAGE_MILLIS = 4;
+
+    private FramePipeline<int[]> pipeline;
+
+    private static class RecordingSink implements FramePipeline.Sink<int[]> {
+        final List<Integer> ready = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done;
+
+        RecordingSink(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onFrameReady(int[] frame, FramePipeline.Timings timings) {
+            ready.add(frame[0]);
+            done.countDown();
+        }
+
+        @Override
+        public void onFrameDropped(int[] frame) {
+            dropped.add(frame[0]);
+        }
+
+        @Override
+        public void onFrameFailed(int[] frame, Exception e) {
+            failures.add(e);
+            done.countDown();
+        }
+    }
+
+    private static FramePipeline.Builder<int[]> sleepingStages(FramePipeline.Builder<int[]> builder) {
+        for (FramePipeline.StageId id : FramePipeline.StageId.values())
+            builder.setStage(id, frame -> Thread.sleep(STAGE_MILLIS));
+        return builder;
+    }
+
+    @After
+    public void tearDown() {
+        if (pipeline != null)
+            pipeline.shutdown();
+    }
+
+    @Test
+    public void framesCompleteInSubmissionOrder() throws Exception {
+        RecordingSink sink = new RecordingSink(10);
+        pipeline = sleepingStages(new FramePipeline.Builder<int[]>())
+                .setMaxInFlight(10)
+                .setSink(sink, Runnable::run)
+                .build();
+
+        for (int i = 0; i < 10; i++)
+            assertTrue(pipeline.submit(new int[]{i}));
+
+        assertTrue(sink.done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, (int) sink.ready.get(i));
+        assertEquals(10, pipeline.getCompletedFrames());
+    }
+
+    @Test
+    public void stagesOfConsecutiveFramesOverlap() throws Exception {
+        int stageCount = FramePipeline.StageId.values().length;
+        int preprocess = FramePipeline.StageId.PREPROCESS.ordinal();
+        int depth = FramePipeline.StageId.DEPTH.ordinal();
+        long[][] starts = new long[2][stageCount];
+        long[][] ends = new long[2][stageCount];
+        // Each waits for the other to be running, which only a pipeline allows
+        CountDownLatch depthStarted = new CountDownLatch(1);
+        CountDownLatch preprocessStarted = new CountDownLatch(1);
+        FramePipeline.Builder<int[]> builder = new FramePipeline.Builder<>();
+        for (FramePipeline.StageId id : FramePipeline.StageId.values()) {
+            int stage = id.ordinal();
+            builder.setStage(id, frame -> {
+                starts[frame[0]][stage] = System.nanoTime();
+                if (frame[0] == 1 && stage == preprocess) {
+                    preprocessStarted.countDown();
+                    depthStarted.await(5, TimeUnit.SECONDS);
+                }
+                if (frame[0] == 0 && stage == depth) {
+                    depthStarted.countDown();
+                    preprocessStarted.await(5, TimeUnit.SECONDS);
+                }
+                ends[frame[0]][stage] = System.nanoTime();
+            });
+        }
+        RecordingSink sink = new RecordingSink(2);
+        pipeline = builder
+                .setMaxInFlight(stageCount)
+                .setSink(sink, Runnable::run)
+                .build();
+
+        assertTrue(pipeline.submit(new int[]{0}));
+        assertTrue(pipeline.submit(new int[]{1}));
+        assertTrue(sink.done.await(10, TimeUnit.SECONDS));
+
+        assertTrue("frame 1 preprocess did not overlap frame 0 depth",
+                starts[1][preprocess] < ends[0][depth] && starts[0][depth] < ends[1][preprocess]);
+        assertEquals(0, pipeline.getDroppedFrames());
+        assertEquals(2, pipeline.getCompletedFrames());
+    }
+
+    @Test
+    public void dropsFramesWhenSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink(1);
+        pipeline = new FramePipeline.Builder<int[]>()
+                .setMaxInFlight(1)
+                .setStage(FramePipeline.StageId.DEPTH, frame -> release.await())
+                .setSink(sink, Runnable::run)
+                .build();
+
+        assertTrue(pipeline.submit(new int[]{0}));
+        assertFalse(pipeline.submit(new int[]{1}));
+        release.countDown();
+
+        assertTrue(sink.done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(1), sink.dropped);
+        assertEquals(Collections.singletonList(0), sink.ready);
+        assertEquals(1, pipeline.getDroppedFrames());
+    }
+
+    @Test
+    public void stageFailureIsReportedAndFreesSlot() throws Exception {
+        RecordingSink sink = new RecordingSink(2);
+        pipeline = new FramePipeline.Builder<int[]>()
+                .setMaxInFlight(1)
+                .setStage(FramePipeline.StageId.FUSE, frame -> {
+                    if (frame[0] == 0)
+                        throw new IllegalStateException("boom");
+                })
+                .setSink(sink, Runnable::run)
+                .build();
+
+        assertTrue(pipeline.submit(new int[]{0}));
+        while (pipeline.getInFlight() > 0)
+            Thread.sleep(1);
+        assertTrue(pipeline.submit(new int[]{1}));
+
+        assertTrue(sink.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, sink.failures.size());
+        assertEquals(Collections.singletonList(1), sink.ready);
+        assertEquals(1, pipeline.getFailedFrames());
+    }
+
+    /** Runs one frame and returns the start and end of depth, then of detect. */
+    private long[] inferenceSpans(FramePipeline.ExecutionMode mode, FramePipeline.Stage<int[]> depth,
+                                  FramePipeline.Stage<int[]> detect) throws Exception {
+        final long[] spans = new long[4];
+        final long[] inference = new long[1];
+        final CountDownLatch finished = new CountDownLatch(1);
+        pipeline = new FramePipeline.Builder<int[]>()
+                .setExecutionMode(mode)
+                .setStage(FramePipeline.StageId.DEPTH, frame -> {
+                    spans[0] = System.nanoTime();
+                    depth.process(frame);
+                    spans[1] = System.nanoTime();
+                })
+                .setStage(FramePipeline.StageId.DETECT, frame -> {
+                    spans[2] = System.nanoTime();
+                    detect.process(frame);
+                    spans[3] = System.nanoTime();
+                })
+                .setSink(new RecordingSink(1) {
+                    @Override
+                    public void onFrameReady(int[] frame, FramePipeline.Timings timings) {
+                        inference[0] = timings.getInferenceNanos();
+                        finished.countDown();
+                    }
+                }, Runnable::run)
+                .build();
+        assertTrue(pipeline.submit(new int[]{0}));
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        pipeline.shutdown();
+        assertTrue(inference[0] >= Math.max(spans[1], spans[3]) - Math.min(spans[0], spans[2]));
+        return spans;
+    }
+
+    @Test
+    public void sequentialRunsDetectAfterDepth() throws Exception {
+        long[] spans = inferenceSpans(FramePipeline.ExecutionMode.SEQUENTIAL, frame -> { }, frame -> { });
+        assertTrue(spans[2] >= spans[1]);
+    }
+
+    @Test
+    public void forkJoinRunsDepthAndDetectConcurrently() throws Exception {
+        // Each waits for the other to be running, which only fork/join allows
+        CountDownLatch depthStarted = new CountDownLatch(1);
+        CountDownLatch detectStarted = new CountDownLatch(1);
+        boolean[] overlapped = new boolean[2];
+        long[] spans = inferenceSpans(FramePipeline.ExecutionMode.FORK_JOIN,
+                frame -> {
+                    depthStarted.countDown();
+                    overlapped[0] = detectStarted.await(5, TimeUnit.SECONDS);
+                },
+                frame -> {
+                    detectStarted.countDown();
+                    overlapped[1] = depthStarted.await(5, TimeUnit.SECONDS);
+                });
+        assertTrue(overlapped[0] && overlapped[1]);
+        assertTrue(spans[0] < spans[3] && spans[2] < spans[1]);
+    }
+
+    @Test
+    public void forkJoinFailureWaitsForOtherBranch() throws Exception {
+        CountDownLatch releaseDetect = new CountDownLatch(1);
+        CountDownLatch depthFailed = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink(2);
+        pipeline = new FramePipeline.Builder<int[]>()
+                .setExecutionMode(FramePipeline.ExecutionMode.FORK_JOIN)
+                .setMaxInFlight(1)
+                .setStage(FramePipeline.StageId.DEPTH, frame -> {
+                    if (frame[0] == 0) {
+                        depthFailed.countDown();
+                        throw new IllegalStateException("depth");
+                    }
+                })
+                .setStage(FramePipeline.StageId.DETECT, frame -> {
+                    if (frame[0] == 0)
+                        releaseDetect.await();
+                })
+                .setSink(sink, Runnable::run)
+                .build();
+
+        assertTrue(pipeline.submit(new int[]{0}));
+        assertTrue(depthFailed.await(5, TimeUnit.SECONDS));
+        // Detect still has the frame: not reported yet, and its slot is still taken
+        Thread.sleep(20);
+        assertTrue(sink.failures.isEmpty());
+        assertEquals(1, pipeline.getInFlight());
+        assertFalse(pipeline.submit(new int[]{1}));
+
+        releaseDetect.countDown();
+        while (pipeline.getInFlight() > 0)
+            Thread.sleep(1);
+        assertTrue(pipeline.submit(new int[]{2}));
+        assertTrue(sink.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, sink.failures.size());
+        assertEquals(Collections.singletonList(2), sink.ready);
+        assertEquals(1, pipeline.getFailedFrames());
+    }
+
+    @Test
+    public void forkJoinKeepsOrderUnderLoad() throws Exception {
+        RecordingSink sink = new RecordingSink(20);
+        pipeline = sleepingStages(new FramePipeline.Builder<int[]>())
+                .setExecutionMode(FramePipeline.ExecutionMode.FORK_JOIN)
+                .setMaxInFlight(20)
+                .setSink(sink, Runnable::run)
+                .build();
+
+        for (int i = 0; i < 20; i++)
+            assertTrue(pipeline.submit(new int[]{i}));
+
+        assertTrue(sink.done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 20; i++)
+            assertEquals(i, (int) sink.ready.get(i));
+    }
+
+    @Test
+    public void stageExecutorRunsOnStageThread() throws Exception {
+        String[] threads = new String[2];
+        RecordingSink sink = new RecordingSink(1);
+        pipeline = new FramePipeline.Builder<int[]>()
+                .setName("test")
+                .setStage(FramePipeline.StageId.DETECT, frame -> threads[1] = Thread.currentThread().getName())
+                .setSink(sink, Runnable::run)
+                .build();
+        CompletableFuture.runAsync(() -> threads[0] = Thread.currentThread().getName(),
+                pipeline.getStageExecutor(FramePipeline.StageId.DETECT)).get(5, TimeUnit.SECONDS);
+        assertTrue(pipeline.submit(new int[]{0}));
+        assertTrue(sink.done.await(5, TimeUnit.SECONDS));
+        assertEquals("test-detect", threads[0]);
+        assertEquals(threads[0], threads[1]);
+    }
+
+    @Test
+    public void drainWaitsForFramesInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink(1);
+        pipeline = new FramePipeline.Builder<int[]>()
+                .setStage(FramePipeline.StageId.DETECT, frame -> release.await())
+                .setSink(sink, Runnable::run)
+                .build();
+        assertTrue(pipeline.submit(new int[]{0}));
+
+        CompletableFuture<Void> drained = pipeline.drain();
+        assertFalse(pipeline.submit(new int[]{1}));
+        assertFalse(drained.isDone());
+        release.countDown();
+        drained.get(5, TimeUnit.SECONDS);
+        assertTrue(sink.done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(0), sink.ready);
+        assertEquals(Collections.singletonList(1), sink.dropped);
+    }
+}
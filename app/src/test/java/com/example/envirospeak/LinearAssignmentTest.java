@@ -0,0 +1,86 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LinearAssignmentTest {
+
+    /** Tries every injective mapping from the smaller side into the larger one. */
+    private static float bruteForce(float[] cost, int rows, int cols) {
+        return rows <= cols
+                ? best(cost, rows, cols, 0, new boolean[cols], false)
+                : best(cost, cols, rows, 0, new boolean[rows], true);
+    }
+
+    private static float best(float[] cost, int n, int m, int i, boolean[] used, boolean transposed) {
+        if (i == n)
+            return 0f;
+        float best = Float.POSITIVE_INFINITY;
+        for (int j = 0; j < m; j++) {
+            if (used[j])
+                continue;
+            used[j] = true;
+            float c = transposed ? cost[j * n + i] : cost[i * m + j];
+            best = Math.min(best, c + best(cost, n, m, i + 1, used, transposed));
+            used[j] = false;
+        }
+        return best;
+    }
+
+    private static float total(float[] cost, int cols, int[] assignment, int rows) {
+        float sum = 0f;
+        for (int i = 0; i < rows; i++) {
+            if (assignment[i] >= 0)
+                sum += cost[i * cols + assignment[i]];
+        }
+        return sum;
+    }
+
+    @Test
+    public void matchesBruteForceOnRandomMatrices() {
+        Random random = new Random(11);
+        LinearAssignment solver = new LinearAssignment(7);
+        for (int trial = 0; trial < 300; trial++) {
+            int rows = 1 + random.nextInt(7);
+            int cols = 1 + random.nextInt(7);
+            float[] cost = new float[rows * cols];
+            for (int k = 0; k < cost.length; k++)
+                cost[k] = random.nextInt(4) == 0 ? 1f : random.nextFloat();
+
+            int[] assignment = solver.solve(cost, rows, cols);
+
+            int assigned = 0;
+            boolean[] usedCols = new boolean[cols];
+            for (int i = 0; i < rows; i++) {
+                if (assignment[i] < 0)
+                    continue;
+                assertFalse("column assigned twice", usedCols[assignment[i]]);
+                usedCols[assignment[i]] = true;
+                assigned++;
+            }
+            assertEquals(Math.min(rows, cols), assigned);
+            assertEquals("trial " + trial, bruteForce(cost, rows, cols), total(cost, cols, assignment, rows), 1e-4f);
+        }
+    }
+
+    @Test
+    public void prefersGlobalOptimumOverGreedy() {
+        // Greedy would take (0,0) for 0.1 and then be stuck with (1,1) for 1.0
+        float[] cost = {
+                0.1f, 0.2f,
+                0.2f, 1.0f};
+        int[] assignment = new LinearAssignment(2).solve(cost, 2, 2);
+        assertEquals(1, assignment[0]);
+        assertEquals(0, assignment[1]);
+    }
+
+    @Test
+    public void emptyMatrixLeavesRowsUnassigned() {
+        int[] assignment = new LinearAssignment(3).solve(new float[0], 3, 0);
+        assertEquals(-1, assignment[0]);
+        assertEquals(-1, assignment[2]);
+    }
+}
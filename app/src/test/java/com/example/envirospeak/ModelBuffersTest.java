@@ -0,0 +1,85 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class ModelBuffersTest {
+
+    /** Stands in for the interpreter: output[i] = sum of the input pixel's channels. */
+    private static final ModelBuffers.Runner SUM_CHANNELS = (input, output) -> {
+        int pixels = output.capacity() / 4;
+        for (int i = 0; i < pixels; i++) {
+            int base = i * 12;
+            output.putFloat(i * 4, input.getFloat(base) + input.getFloat(base + 4) + input.getFloat(base + 8));
+        }
+    };
+
+    @Test
+    public void warmUpRunsOnBlankInput() {
+        ModelBuffers buffers = new ModelBuffers(4 * 3, 4);
+        buffers.getInput().putFloat(0, 5f);
+        final int[] runs = {0};
+        buffers.warmUp((input, output) -> {
+            runs[0]++;
+            SUM_CHANNELS.run(input, output);
+        });
+
+        assertEquals(1, runs[0]);
+        FloatBuffer out = buffers.getOutputFloats();
+        for (int i = 0; i < 4; i++)
+            assertEquals(0f, out.get(i), 0f);
+    }
+
+    @Test
+    public void runReturnsRewoundOutputView() {
+        ModelBuffers buffers = new ModelBuffers(2 * 3, 2);
+        ByteBuffer input = buffers.getInput();
+        for (int i = 0; i < 6; i++)
+            input.putFloat(i * 4, i);
+        input.position(8);
+
+        FloatBuffer first = buffers.run(SUM_CHANNELS, input);
+        assertEquals(0, first.position());
+        assertEquals(0f + 1f + 2f, first.get(0), 0f);
+        assertEquals(3f + 4f + 5f, first.get(1), 0f);
+        assertSame(first, buffers.run(SUM_CHANNELS, input));
+    }
+
+    @Test
+    public void steadyStateFramesDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // A 640x480 camera frame converted to the MiDaS input, then run through a fake model
+        int width = 640, height = 480;
+        ByteBuffer y = ByteBuffer.allocateDirect(width * height);
+        ByteBuffer u = ByteBuffer.allocateDirect(width * height / 4);
+        ByteBuffer v = ByteBuffer.allocateDirect(width * height / 4);
+        YuvTensorConverter converter = new YuvTensorConverter(256, 256);
+        int pixels = 256 * 256;
+        ModelBuffers buffers = new ModelBuffers(pixels * 3, pixels);
+        float[] depthMap = new float[pixels];
+
+        buffers.warmUp(SUM_CHANNELS);
+        for (int i = 0; i < 5; i++) {
+            ByteBuffer input = converter.convert(y, u, v, width, height, width, width / 2, 1, 90, 0, 0, height, width);
+            buffers.run(SUM_CHANNELS, input).get(depthMap);
+        }
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 20; i++) {
+            ByteBuffer input = converter.convert(y, u, v, width, height, width, width / 2, 1, 90, 0, 0, height, width);
+            buffers.run(SUM_CHANNELS, input).get(depthMap);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        // A single fresh output tensor would be 256 KB
+        assertEquals("allocated " + allocated + " bytes", 0, allocated);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.envirospeak;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ModelRegistryTest {
+
+    private static final class CountingLoader implements ModelRegistry.Loader {
+        final ConcurrentHashMap<String, AtomicInteger> reads = new ConcurrentHashMap<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile Thread loadingThread;
+
+        int reads(String file) {
+            AtomicInteger count = reads.get(file);
+            return count == null ? 0 : count.get();
+        }
+
+        private void read(String file) throws IOException {
+            loadingThread = Thread.currentThread();
+            reads.computeIfAbsent(file, key -> new AtomicInteger()).incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (file.startsWith("missing"))
+                throw new FileNotFoundException(file);
+        }
+
+        @Override
+        public ByteBuffer loadModel(String file) throws IOException {
+            read(file);
+            return ByteBuffer.allocateDirect(16).asReadOnlyBuffer();
+        }
+
+        @Override
+        public String[] loadLabels(String file) throws IOException {
+            read(file);
+            return new String[]{"person", "bicycle", "car"};
+        }
+    }
+
+    private CountingLoader loader;
+    private ModelRegistry registry;
+
+    @Before
+    public void setUp() {
+        loader = new CountingLoader();
+        registry = new ModelRegistry(loader);
+    }
+
+    @After
+    public void tearDown() {
+        loader.release.countDown();
+        registry.shutdown();
+    }
+
+    @Test
+    public void loadsInBackgroundWithoutBlockingCaller() throws Exception {
+        CompletableFuture<ByteBuffer> model = registry.model("yolo.tflite");
+        // The loader is still blocked, yet the caller already has its future
+        assertFalse(model.isDone());
+
+        loader.release.countDown();
+        assertNotNull(model.get(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), loader.loadingThread);
+        assertEquals("model-registry", loader.loadingThread.getName());
+    }
+
+    @Test
+    public void sharesOneBufferPerModelFile() throws Exception {
+        CompletableFuture<ByteBuffer> first = registry.model("yolo.tflite");
+        CompletableFuture<ByteBuffer> second = registry.model("yolo.tflite");
+        CompletableFuture<ByteBuffer> other = registry.model("midas.tflite");
+        loader.release.countDown();
+
+        assertSame(first, second);
+        assertSame(first.get(5, TimeUnit.SECONDS), registry.model("yolo.tflite").get(5, TimeUnit.SECONDS));
+        assertNotSame(first.get(), other.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loader.reads("yolo.tflite"));
+        assertEquals(1, loader.reads("midas.tflite"));
+    }
+
+    @Test
+    public void labelsAreCachedAndUnmodifiable() throws Exception {
+        loader.release.countDown();
+        List<String> labels = registry.labels("coco_label.txt").get(5, TimeUnit.SECONDS);
+        assertSame(labels, registry.labels("coco_label.txt").get(5, TimeUnit.SECONDS));
+        assertEquals(1, loader.reads("coco_label.txt"));
+        assertEquals("bicycle", labels.get(1));
+        try {
+            labels.set(0, "cat");
+            fail("labels must be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void loadErrorsCompleteTheFuture() throws Exception {
+        loader.release.countDown();
+        try {
+            registry.model("missing.tflite").get(5, TimeUnit.SECONDS);
+            fail("expected the load to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FileNotFoundException);
+        }
+    }
+}
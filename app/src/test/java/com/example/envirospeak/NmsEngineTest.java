@@ -0,0 +1,254 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NmsEngineTest {
+
+    /** Decoded candidates: clusters of jittered boxes around a few objects, like a real frame. */
+    private static final class Boxes {
+        final float[] left, top, right, bottom, scores;
+        final int[] classIds;
+        final int count;
+
+        Boxes(int count, long seed) {
+            this.count = count;
+            left = new float[count];
+            top = new float[count];
+            right = new float[count];
+            bottom = new float[count];
+            scores = new float[count];
+            classIds = new int[count];
+            Random random = new Random(seed);
+            int objects = 12;
+            float[][] centers = new float[objects][4];
+            for (float[] center : centers) {
+                center[0] = random.nextInt(1000);
+                center[1] = random.nextInt(1800);
+                center[2] = 40 + random.nextInt(300);
+                center[3] = 40 + random.nextInt(400);
+            }
+            for (int i = 0; i < count; i++) {
+                int object = random.nextInt(objects);
+                float[] c = centers[object];
+                float cx = c[0] + (float) random.nextGaussian() * 15;
+                float cy = c[1] + (float) random.nextGaussian() * 15;
+                float w = c[2] * (0.8f + random.nextFloat() * 0.4f);
+                float h = c[3] * (0.8f + random.nextFloat() * 0.4f);
+                // Integer coordinates, as YoloDecoder produces
+                left[i] = (int) Math.max(0, cx - w / 2);
+                top[i] = (int) Math.max(0, cy - h / 2);
+                right[i] = (int) Math.min(1080, cx + w / 2);
+                bottom[i] = (int) Math.min(1920, cy + h / 2);
+                // Quantized scores so that ties exercise the stable ordering
+                scores[i] = 0.5f + random.nextInt(50) / 100f;
+                classIds[i] = random.nextInt(4) == 0 ? (object + 1) % objects : object;
+            }
+        }
+    }
+
+    /**
+     * Port of OpenCV's NMSFast_ (modules/dnn/src/nms.inl.hpp) with eta = 1 and its
+     * GetMaxScoreIndex, using Rect2d overlap semantics.
+     */
+    private static List<Integer> opencvNms(Boxes b, float scoreThreshold, float nmsThreshold, int topK) {
+        List<float[]> scoreIndex = new ArrayList<>();
+        for (int i = 0; i < b.count; i++) {
+            if (b.scores[i] > scoreThreshold)
+                scoreIndex.add(new float[]{b.scores[i], i});
+        }
+        // std::stable_sort with a strict greater-than comparator
+        Collections.sort(scoreIndex, (x, y) -> Float.compare(y[0], x[0]));
+        if (topK > 0 && topK < scoreIndex.size())
+            scoreIndex = scoreIndex.subList(0, topK);
+        List<Integer> indices = new ArrayList<>();
+        for (float[] pair : scoreIndex) {
+            int idx = (int) pair[1];
+            boolean keep = true;
+            for (int k = 0; k < indices.size() && keep; k++)
+                keep = rectOverlap(b, idx, indices.get(k)) <= nmsThreshold;
+            if (keep)
+                indices.add(idx);
+        }
+        return indices;
+    }
+
+    /** cv::rectOverlap for Rect2d: 1 - jaccardDistance. */
+    private static float rectOverlap(Boxes b, int i, int j) {
+        double ax = b.left[i], ay = b.top[i], aw = b.right[i] - b.left[i], ah = b.bottom[i] - b.top[i];
+        double bx = b.left[j], by = b.top[j], bw = b.right[j] - b.left[j], bh = b.bottom[j] - b.top[j];
+        double aArea = aw * ah, bArea = bw * bh;
+        double distance;
+        if (aArea + bArea <= Math.ulp(1.0)) {
+            distance = 0.0;
+        } else {
+            double iArea = 0;
+            if (aw > 0 && ah > 0 && bw > 0 && bh > 0) {
+                double x1 = Math.max(ax, bx), y1 = Math.max(ay, by);
+                double w = Math.min(ax + aw, bx + bw) - x1, h = Math.min(ay + ah, by + bh) - y1;
+                if (w > 0 && h > 0)
+                    iArea = w * h;
+            }
+            distance = 1.0 - iArea / (aArea + bArea - iArea);
+        }
+        return 1.f - (float) distance;
+    }
+
+    private static List<Integer> kept(NmsEngine engine) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < engine.getKeptCount(); i++)
+            result.add(engine.getKept()[i]);
+        return result;
+    }
+
+    @Test
+    public void greedyMatchesOpenCvNmsBoxes() {
+        for (long seed = 1; seed <= 20; seed++) {
+            Boxes b = new Boxes(400, seed);
+            NmsEngine engine = new NmsEngine(b.count);
+            for (float iou : new float[]{0.3f, 0.45f, 0.6f}) {
+                for (int topK : new int[]{0, 50}) {
+                    for (float scoreThreshold : new float[]{0f, 0.7f}) {
+                        engine.setIouThreshold(iou);
+                        engine.setTopK(topK);
+                        engine.setScoreThreshold(scoreThreshold);
+                        engine.run(b.left, b.top, b.right, b.bottom, b.scores, null, b.count);
+                        assertEquals("seed " + seed + " iou " + iou + " topK " + topK,
+                                opencvNms(b, scoreThreshold, iou, topK), kept(engine));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void classAwareEqualsPerClassGreedy() {
+        Boxes b = new Boxes(400, 7);
+        NmsEngine engine = new NmsEngine(b.count, 12);
+        engine.setMode(NmsEngine.Mode.CLASS_AWARE);
+        engine.run(b.left, b.top, b.right, b.bottom, b.scores, b.classIds, b.count);
+        List<Integer> classAware = kept(engine);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int c = 0; c < 12; c++) {
+            Boxes single = new Boxes(400, 7);
+            for (int i = 0; i < single.count; i++) {
+                if (single.classIds[i] != c)
+                    single.scores[i] = -1f;
+            }
+            expected.addAll(opencvNms(single, 0f, 0.45f, 0));
+        }
+        List<Integer> sortedActual = new ArrayList<>(classAware);
+        Collections.sort(sortedActual);
+        Collections.sort(expected);
+        assertEquals(expected, sortedActual);
+
+        // Still best first
+        for (int i = 1; i < classAware.size(); i++)
+            assertTrue(b.scores[classAware.get(i - 1)] >= b.scores[classAware.get(i)]);
+    }
+
+    @Test
+    public void classAwareKeepsOverlappingDifferentClasses() {
+        // A person on a bicycle: nearly the same box, different classes
+        float[] left = {100, 105};
+        float[] top = {100, 110};
+        float[] right = {300, 300};
+        float[] bottom = {500, 500};
+        float[] scores = {0.9f, 0.8f};
+        int[] classIds = {0, 1};
+        NmsEngine engine = new NmsEngine(2, 2);
+
+        assertEquals(1, engine.run(left, top, right, bottom, scores, classIds, 2));
+        engine.setMode(NmsEngine.Mode.CLASS_AWARE);
+        assertEquals(2, engine.run(left, top, right, bottom, scores, classIds, 2));
+    }
+
+    @Test
+    public void classIouThresholdOverridesDefault() {
+        // Two chairs side by side overlapping with IoU 0.6, and two people doing the same
+        float[] left = {0, 25, 0, 25};
+        float[] top = {0, 0, 200, 200};
+        float[] right = {100, 125, 100, 125};
+        float[] bottom = {100, 100, 300, 300};
+        float[] scores = {0.9f, 0.8f, 0.7f, 0.6f};
+        int[] classIds = {56, 56, 0, 0};
+        NmsEngine engine = new NmsEngine(4, 80);
+        engine.setMode(NmsEngine.Mode.CLASS_AWARE);
+        engine.setIouThreshold(0.45f);
+
+        assertEquals(2, engine.run(left, top, right, bottom, scores, classIds, 4));
+        engine.setClassIouThreshold(56, 0.65f);
+        assertEquals(3, engine.run(left, top, right, bottom, scores, classIds, 4));
+        assertEquals(Arrays.asList(0, 1, 2), kept(engine));
+        engine.setClassIouThreshold(56, Float.NaN);
+        assertEquals(2, engine.run(left, top, right, bottom, scores, classIds, 4));
+    }
+
+    @Test
+    public void maxDetectionsCapsEveryMode() {
+        Boxes b = new Boxes(400, 3);
+        NmsEngine engine = new NmsEngine(b.count, 12);
+        engine.setScoreThreshold(0.01f);
+        for (NmsEngine.Mode mode : NmsEngine.Mode.values()) {
+            engine.setMode(mode);
+            engine.setMaxDetections(0);
+            int all = engine.run(b.left, b.top, b.right, b.bottom, b.scores, b.classIds, b.count);
+            List<Integer> uncapped = kept(engine);
+            assertTrue(mode + " kept " + all, all > 5);
+
+            engine.setMaxDetections(5);
+            assertEquals(5, engine.run(b.left, b.top, b.right, b.bottom, b.scores, b.classIds, b.count));
+            // The cap only cuts the tail, it does not change which boxes come first
+            assertEquals(uncapped.subList(0, 5), kept(engine));
+        }
+    }
+
+    @Test
+    public void rejectsClassIdsOutsideRange() {
+        NmsEngine engine = new NmsEngine(1, 2);
+        engine.setMode(NmsEngine.Mode.CLASS_AWARE);
+        try {
+            engine.run(new float[]{0}, new float[]{0}, new float[]{1}, new float[]{1}, new float[]{1f}, new int[]{2}, 1);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void softNmsDecaysOverlappingScores() {
+        float[] left = {0, 0, 500};
+        float[] top = {0, 50, 500};
+        float[] right = {100, 100, 600};
+        float[] bottom = {100, 150, 600};
+        float[] scores = {0.9f, 0.8f, 0.7f};
+        NmsEngine engine = new NmsEngine(3);
+        engine.setMode(NmsEngine.Mode.SOFT);
+        engine.setSigma(0.5f);
+        engine.setScoreThreshold(0.01f);
+
+        assertEquals(3, engine.run(left, top, right, bottom, scores, null, 3));
+        // IoU of the first two boxes is 50 / 150
+        float iou = 1f / 3f;
+        float decayed = 0.8f * (float) Math.exp(-(iou * iou) / 0.5f);
+        assertEquals(0, engine.getKept()[0]);
+        assertEquals(0.9f, engine.getKeptScores()[0], 0f);
+        // The disjoint box keeps its score and now ranks above the decayed one
+        assertEquals(2, engine.getKept()[1]);
+        assertEquals(0.7f, engine.getKeptScores()[1], 0f);
+        assertEquals(1, engine.getKept()[2]);
+        assertEquals(decayed, engine.getKeptScores()[2], 1e-6f);
+
+        // Decayed below the threshold: dropped
+        engine.setScoreThreshold(0.75f);
+        assertEquals(1, engine.run(left, top, right, bottom, scores, null, 3));
+        assertEquals(0, engine.getKept()[0]);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YoloDecoderTest {
+
+    private static final int ANCHORS = 6300;
+    private static final int CLASSES = 80;
+    private static final int STRIDE = 5 + CLASSES;
+
+    private static float[] randomOutput(long seed) {
+        Random random = new Random(seed);
+        float[] output = new float[ANCHORS * STRIDE];
+        for (int i = 0; i < ANCHORS; i++) {
+            int base = i * STRIDE;
+            output[base] = random.nextFloat();
+            output[base + 1] = random.nextFloat();
+            output[base + 2] = random.nextFloat() * 0.5f;
+            output[base + 3] = random.nextFloat() * 0.5f;
+            // Like the real model: almost every anchor has objectness near zero
+            output[base + 4] = random.nextInt(50) == 0 ? random.nextFloat() : random.nextFloat() * 0.01f;
+            for (int c = 0; c < CLASSES; c++)
+                output[base + 5 + c] = random.nextFloat();
+        }
+        return output;
+    }
+
+    @Test
+    public void matchesFullDecodeFilteredByScore() {
+        float[] output = randomOutput(1);
+        int width = 1080, height = 1920;
+        YoloDecoder decoder = new YoloDecoder(ANCHORS, CLASSES);
+        int count = decoder.decode(FloatBuffer.wrap(output), width, height);
+
+        // The old decode: every anchor, copied class scores, then the 0.5 filter
+        int n = 0;
+        for (int i = 0; i < ANCHORS; i++) {
+            int base = i * STRIDE;
+            float confidence = output[base + 4];
+            if (!(confidence > 0.5f))
+                continue;
+            float[] classScores = Arrays.copyOfRange(output, base + 5, base + STRIDE);
+            int labelId = 0;
+            float max = 0.f;
+            for (int j = 0; j < classScores.length; j++) {
+                if (classScores[j] > max) {
+                    max = classScores[j];
+                    labelId = j;
+                }
+            }
+            float x = output[base] * width;
+            float y = output[base + 1] * height;
+            float w = output[base + 2] * width;
+            float h = output[base + 3] * height;
+            assertEquals(labelId, decoder.getClassIds()[n]);
+            assertEquals(confidence, decoder.getScores()[n], 0f);
+            assertEquals((int) Math.max(0, x - w / 2.), decoder.getLeft()[n], 0f);
+            assertEquals((int) Math.max(0, y - h / 2.), decoder.getTop()[n], 0f);
+            assertEquals((int) Math.min(width, x + w / 2.), decoder.getRight()[n], 0f);
+            assertEquals((int) Math.min(height, y + h / 2.), decoder.getBottom()[n], 0f);
+            n++;
+        }
+        assertEquals(n, count);
+        assertTrue(count > 0 && count < ANCHORS / 10);
+    }
+
+    @Test
+    public void thresholdIsExclusiveAndConfigurable() {
+        float[] output = new float[3 * STRIDE];
+        output[4] = 0.5f;
+        output[STRIDE + 4] = 0.51f;
+        output[2 * STRIDE + 4] = 0.3f;
+        YoloDecoder decoder = new YoloDecoder(3, CLASSES);
+
+        assertEquals(1, decoder.decode(FloatBuffer.wrap(output), 100, 100));
+        assertEquals(0.51f, decoder.getScores()[0], 0f);
+
+        decoder.setScoreThreshold(0.25f);
+        assertEquals(3, decoder.decode(FloatBuffer.wrap(output), 100, 100));
+    }
+
+    @Test
+    public void decodeDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        FloatBuffer output = FloatBuffer.wrap(randomOutput(2));
+        YoloDecoder decoder = new YoloDecoder(ANCHORS, CLASSES);
+        for (int i = 0; i < 10; i++)
+            decoder.decode(output, 1080, 1920);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 50; i++)
+            decoder.decode(output, 1080, 1920);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        // The old decode made ~6300 Recognitions per frame; allow only JIT noise
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.envirospeak;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class YuvTensorConverterTest {
+
+    /** I420 planes: Y with optional row padding, U and V each with pixel stride 1. */
+    private static ByteBuffer[] planarFrame(int width, int height, int yRowStride, int[] luma, int u, int v) {
+        ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * height);
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++)
+                y.put(row * yRowStride + col, (byte) luma[row * width + col]);
+        int chromaSize = (width / 2) * (height / 2);
+        ByteBuffer uPlane = ByteBuffer.allocateDirect(chromaSize);
+        ByteBuffer vPlane = ByteBuffer.allocateDirect(chromaSize);
+        for (int i = 0; i < chromaSize; i++) {
+            uPlane.put(i, (byte) u);
+            vPlane.put(i, (byte) v);
+        }
+        return new ByteBuffer[]{y, uPlane, vPlane};
+    }
+
+    private static float channel(ByteBuffer output, int width, int x, int y, int c) {
+        return output.getFloat(((y * width + x) * 3 + c) * 4);
+    }
+
+    @Test
+    public void convertsColorWithBt601() {
+        int[] luma = new int[4 * 4];
+        Arrays.fill(luma, 100);
+        ByteBuffer[] planes = planarFrame(4, 4, 4, luma, 90, 200);
+        YuvTensorConverter converter = new YuvTensorConverter(4, 4);
+        ByteBuffer out = converter.convert(planes[0], planes[1], planes[2], 4, 4, 4, 2, 1, 0, 0, 0, 4, 4);
+
+        float u = 90 - 128f, v = 200 - 128f;
+        assertEquals(Math.min(255f, 100 + 1.402f * v) / 255f, channel(out, 4, 2, 2, 0), 1e-5f);
+        assertEquals((100 - 0.344136f * u - 0.714136f * v) / 255f, channel(out, 4, 2, 2, 1), 1e-5f);
+        assertEquals((100 + 1.772f * u) / 255f, channel(out, 4, 2, 2, 2), 1e-5f);
+        assertEquals(0, out.position());
+    }
+
+    @Test
+    public void rotatesToUpright() {
+        int width = 4, height = 2;
+        int[] luma = new int[width * height];
+        for (int i = 0; i < luma.length; i++)
+            luma[i] = 10 + i * 20;
+        // Row padding must be skipped
+        ByteBuffer[] planes = planarFrame(width, height, 8, luma, 128, 128);
+
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            int[] upright = YuvTensorConverter.uprightSize(width, height, rotation);
+            YuvTensorConverter converter = new YuvTensorConverter(upright[0], upright[1]);
+            ByteBuffer out = converter.convert(planes[0], planes[1], planes[2], width, height, 8, 2, 1,
+                    rotation, 0, 0, upright[0], upright[1]);
+            for (int uy = 0; uy < upright[1]; uy++) {
+                for (int ux = 0; ux < upright[0]; ux++) {
+                    int sx, sy;
+                    switch (rotation) {
+                        case 90: sx = uy; sy = height - 1 - ux; break;
+                        case 180: sx = width - 1 - ux; sy = height - 1 - uy; break;
+                        case 270: sx = width - 1 - uy; sy = ux; break;
+                        default: sx = ux; sy = uy;
+                    }
+                    assertEquals("rotation " + rotation + " at " + ux + "," + uy,
+                            luma[sy * width + sx] / 255f, channel(out, upright[0], ux, uy, 0), 1e-5f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void readsInterleavedChroma() {
+        // NV21 layout: U and V share one buffer with pixel stride 2, V first
+        int width = 4, height = 4;
+        ByteBuffer y = ByteBuffer.allocateDirect(width * height);
+        for (int i = 0; i < width * height; i++)
+            y.put(i, (byte) 128);
+        ByteBuffer vu = ByteBuffer.allocateDirect(width * height / 2);
+        int[][] blockU = {{60, 100}, {140, 180}};
+        int[][] blockV = {{200, 160}, {90, 50}};
+        for (int by = 0; by < 2; by++) {
+            for (int bx = 0; bx < 2; bx++) {
+                vu.put(by * width + bx * 2, (byte) blockV[by][bx]);
+                vu.put(by * width + bx * 2 + 1, (byte) blockU[by][bx]);
+            }
+        }
+        vu.position(1);
+        ByteBuffer u = vu.slice();
+        vu.position(0);
+
+        YuvTensorConverter converter = new YuvTensorConverter(width, height);
+        ByteBuffer out = converter.convert(y, u, vu, width, height, width, width, 2, 0, 0, 0, width, height);
+        for (int py = 0; py < height; py++) {
+            for (int px = 0; px < width; px++) {
+                float cu = blockU[py / 2][px / 2] - 128f;
+                float cv = blockV[py / 2][px / 2] - 128f;
+                assertEquals(Math.max(0f, Math.min(255f, 128 + 1.772f * cu)) / 255f, channel(out, width, px, py, 2), 1e-5f);
+                assertEquals(Math.max(0f, Math.min(255f, 128 + 1.402f * cv)) / 255f, channel(out, width, px, py, 0), 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void cropsAndDownscales() {
+        int width = 8, height = 8;
+        int[] luma = new int[width * height];
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++)
+                luma[row * width + col] = col * 10 + row;
+        ByteBuffer[] planes = planarFrame(width, height, width, luma, 128, 128);
+
+        YuvTensorConverter converter = new YuvTensorConverter(2, 2);
+        ByteBuffer out = converter.convert(planes[0], planes[1], planes[2], width, height, width, 4, 1,
+                0, 4, 0, 4, 8);
+        // Output pixel centers land on source x 4.5, 6.5 and y 1.5, 5.5
+        assertEquals(46.5f / 255f, channel(out, 2, 0, 0, 1), 1e-5f);
+        assertEquals(66.5f / 255f, channel(out, 2, 1, 0, 1), 1e-5f);
+        assertEquals(50.5f / 255f, channel(out, 2, 0, 1, 1), 1e-5f);
+    }
+
+    @Test
+    public void reusesOutputBuffer() {
+        int[] luma = new int[16];
+        ByteBuffer[] planes = planarFrame(4, 4, 4, luma, 128, 128);
+        YuvTensorConverter converter = new YuvTensorConverter(4, 4);
+        ByteBuffer first = converter.convert(planes[0], planes[1], planes[2], 4, 4, 4, 2, 1, 90, 0, 0, 4, 4);
+        ByteBuffer second = converter.convert(planes[0], planes[1], planes[2], 4, 4, 4, 2, 1, 90, 0, 0, 4, 4);
+        assertSame(first, second);
+        assertTrue(first.isDirect());
+        assertEquals(4 * 4 * 3 * 4, first.capacity());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.envirospeak;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Model outputs the benchmarks run on. Real outputs recorded on a device (see
+ * MainActivity.RECORD_FIXTURES) are read from {@code /fixtures} on the classpath, i.e.
+ * {@code src/jmh/resources/fixtures}. Without them, seeded synthetic outputs of the same shape
+ * are used, so numbers stay comparable from run to run either way.
+ */
+final class BenchmarkFixtures {
+
+    static final int YOLO_ANCHORS = 6300;
+    static final int YOLO_CLASSES = 80;
+    static final int DEPTH_WIDTH = 256;
+    static final int DEPTH_HEIGHT = 256;
+    // A portrait 1080p preview
+    static final int VIEW_WIDTH = 1080;
+    static final int VIEW_HEIGHT = 1920;
+
+    private BenchmarkFixtures() {
+    }
+
+    /** Raw YOLOv5s output: YOLO_ANCHORS x (5 + YOLO_CLASSES). */
+    static float[] yoloOutput() {
+        return load("yolov5s_output.f32", YOLO_ANCHORS * (5 + YOLO_CLASSES), BenchmarkFixtures::syntheticYoloOutput);
+    }
+
+    /** Raw MiDaS output: DEPTH_WIDTH x DEPTH_HEIGHT, row-major. */
+    static float[] depthMap() {
+        return load("midas_depth.f32", DEPTH_WIDTH * DEPTH_HEIGHT, BenchmarkFixtures::syntheticDepthMap);
+    }
+
+    private static float[] load(String name, int count, Supplier<float[]> synthetic) {
+        InputStream in = BenchmarkFixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) {
+            System.err.println("No recorded fixture " + name + ", using synthetic data");
+            return synthetic.get();
+        }
+        try (InputStream stream = in) {
+            return FixtureFile.read(stream, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read fixture " + name, e);
+        }
+    }
+
+    /**
+     * A dozen objects, each found by a cluster of overlapping anchors like the real model does,
+     * over a background of anchors with low objectness.
+     */
+    private static float[] syntheticYoloOutput() {
+        int stride = 5 + YOLO_CLASSES;
+        float[] output = new float[YOLO_ANCHORS * stride];
+        Random random = new Random(42);
+        for (int i = 0; i < YOLO_ANCHORS; i++) {
+            int base = i * stride;
+            output[base] = random.nextFloat();
+            output[base + 1] = random.nextFloat();
+            output[base + 2] = 0.02f + random.nextFloat() * 0.1f;
+            output[base + 3] = 0.02f + random.nextFloat() * 0.1f;
+            output[base + 4] = (float) Math.pow(random.nextFloat(), 4) * 0.2f;
+            for (int c = 0; c < YOLO_CLASSES; c++)
+                output[base + 5 + c] = random.nextFloat() * 0.1f;
+        }
+        for (int object = 0; object < 12; object++) {
+            float cx = 0.1f + random.nextFloat() * 0.8f;
+            float cy = 0.1f + random.nextFloat() * 0.8f;
+            float w = 0.05f + random.nextFloat() * 0.3f;
+            float h = 0.05f + random.nextFloat() * 0.4f;
+            int classId = random.nextInt(YOLO_CLASSES);
+            for (int k = 0; k < 20; k++) {
+                int base = random.nextInt(YOLO_ANCHORS) * stride;
+                output[base] = cx + (random.nextFloat() - 0.5f) * w * 0.2f;
+                output[base + 1] = cy + (random.nextFloat() - 0.5f) * h * 0.2f;
+                output[base + 2] = w * (0.9f + random.nextFloat() * 0.2f);
+                output[base + 3] = h * (0.9f + random.nextFloat() * 0.2f);
+                output[base + 4] = 0.4f + random.nextFloat() * 0.6f;
+                output[base + 5 + classId] = 0.6f + random.nextFloat() * 0.4f;
+            }
+        }
+        return output;
+    }
+
+    /** Inverse depth growing towards the bottom (the floor), with a few nearer blobs. */
+    private static float[] syntheticDepthMap() {
+        float[] depth = new float[DEPTH_WIDTH * DEPTH_HEIGHT];
+        Random random = new Random(7);
+        float[] blobs = new float[8 * 4];
+        for (int b = 0; b < blobs.length; b += 4) {
+            blobs[b] = random.nextFloat() * DEPTH_WIDTH;
+            blobs[b + 1] = random.nextFloat() * DEPTH_HEIGHT;
+            blobs[b + 2] = 10 + random.nextFloat() * 40;
+            blobs[b + 3] = 100 + random.nextFloat() * 600;
+        }
+        for (int y = 0; y < DEPTH_HEIGHT; y++) {
+            for (int x = 0; x < DEPTH_WIDTH; x++) {
+                float value = 50 + 400f * y / DEPTH_HEIGHT;
+                for (int b = 0; b < blobs.length; b += 4) {
+                    float dx = (x - blobs[b]) / blobs[b + 2];
+                    float dy = (y - blobs[b + 1]) / blobs[b + 2];
+                    value += blobs[b + 3] * (float) Math.exp(-(dx * dx + dy * dy));
+                }
+                depth[y * DEPTH_WIDTH + x] = value + random.nextFloat() * 5;
+            }
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.envirospeak;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect2d;
+import org.opencv.utils.Converters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * List-based Converters, fed from primitive arrays the way the old detection path did
+ * (box every value, then convert into a new Mat), against the primitive overloads writing into
+ * a reused Mat.
+ */
+@State(Scope.Benchmark)
+public class ConvertersBenchmark {
+
+    @Param({"100", "1000"})
+    public int count;
+
+    private float[] scores;
+    private float[] left;
+    private float[] top;
+    private float[] right;
+    private float[] bottom;
+    private double[] rectScratch;
+    private Mat scoreMat;
+    private Mat rectMat;
+    private float[] readBack;
+    private final List<Float> readBackList = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        nu.pattern.OpenCV.loadLocally();
+        Random random = new Random(11);
+        scores = new float[count];
+        left = new float[count];
+        top = new float[count];
+        right = new float[count];
+        bottom = new float[count];
+        for (int i = 0; i < count; i++) {
+            scores[i] = random.nextFloat();
+            left[i] = random.nextInt(900);
+            top[i] = random.nextInt(1700);
+            right[i] = left[i] + 20 + random.nextInt(200);
+            bottom[i] = top[i] + 20 + random.nextInt(200);
+        }
+        rectScratch = new double[4 * count];
+        scoreMat = new Mat();
+        rectMat = new Mat();
+        readBack = new float[count];
+        Converters.vector_float_to_Mat(scores, 0, count, scoreMat, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scoreMat.release();
+        rectMat.release();
+    }
+
+    @Benchmark
+    public Mat floatsViaList() {
+        List<Float> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            list.add(scores[i]);
+        Mat m = Converters.vector_float_to_Mat(list);
+        m.release();
+        return m;
+    }
+
+    @Benchmark
+    public Mat floatsFromArray() {
+        return Converters.vector_float_to_Mat(scores, 0, count, scoreMat, null);
+    }
+
+    @Benchmark
+    public Mat rectsViaList() {
+        List<Rect2d> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            list.add(new Rect2d(left[i], top[i], right[i] - left[i], bottom[i] - top[i]));
+        Mat m = Converters.vector_Rect2d_to_Mat(list);
+        m.release();
+        return m;
+    }
+
+    @Benchmark
+    public Mat rectsFromArrays() {
+        return Converters.vector_Rect2d_to_Mat(left, top, right, bottom, count, rectMat, rectScratch);
+    }
+
+    @Benchmark
+    public List<Float> floatsToList() {
+        Converters.Mat_to_vector_float(scoreMat, readBackList);
+        return readBackList;
+    }
+
+    @Benchmark
+    public float[] floatsToArray() {
+        Converters.Mat_to_vector_float(scoreMat, readBack, 0, null);
+        return readBack;
+    }
+}
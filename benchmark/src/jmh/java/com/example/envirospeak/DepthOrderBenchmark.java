@@ -0,0 +1,41 @@
+package com.example.envirospeak;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/** Nearest-first ordering of tracks by depths sampled from the depth map. */
+@State(Scope.Benchmark)
+public class DepthOrderBenchmark {
+
+    @Param({"10", "128"})
+    public int count;
+
+    // 0 orders all of them; the app orders the nearest 10
+    @Param({"0", "10"})
+    public int topK;
+
+    private float[] depths;
+    private int[] order;
+    private DepthOrder depthOrder;
+
+    @Setup
+    public void setUp() {
+        float[] depthMap = BenchmarkFixtures.depthMap();
+        Random random = new Random(3);
+        depths = new float[count];
+        for (int i = 0; i < count; i++)
+            depths[i] = depthMap[random.nextInt(depthMap.length)];
+        order = new int[count];
+        depthOrder = new DepthOrder(count).setTopK(topK);
+    }
+
+    @Benchmark
+    public int sort() {
+        return depthOrder.sort(depths, count, order);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.envirospeak;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Bilinear resize of the MiDaS map to the preview, on one thread and split in bands. */
+@State(Scope.Benchmark)
+public class DepthResampleBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private float[] depthMap;
+    private DepthResampler resampler;
+
+    @Setup
+    public void setUp() {
+        depthMap = BenchmarkFixtures.depthMap();
+        resampler = new DepthResampler(threads, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        resampler.shutdown();
+    }
+
+    @Benchmark
+    public float[] resample() {
+        return resampler.resample(depthMap, BenchmarkFixtures.DEPTH_WIDTH, BenchmarkFixtures.DEPTH_HEIGHT,
+                BenchmarkFixtures.VIEW_WIDTH, BenchmarkFixtures.VIEW_HEIGHT);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.envirospeak;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.FloatBuffer;
+
+/** Suppression of the decoded candidates of one frame, in every mode. */
+@State(Scope.Benchmark)
+public class NmsBenchmark {
+
+    @Param({"GREEDY", "CLASS_AWARE", "SOFT"})
+    public NmsEngine.Mode mode;
+
+    private DetectionBatch candidates;
+    private DetectionBatch kept;
+    private NmsEngine engine;
+
+    @Setup
+    public void setUp() {
+        YoloDecoder decoder = new YoloDecoder(BenchmarkFixtures.YOLO_ANCHORS, BenchmarkFixtures.YOLO_CLASSES);
+        decoder.setScoreThreshold(0.2f);
+        decoder.decode(FloatBuffer.wrap(BenchmarkFixtures.yoloOutput()), BenchmarkFixtures.VIEW_WIDTH, BenchmarkFixtures.VIEW_HEIGHT);
+        candidates = decoder.getCandidates();
+        kept = new DetectionBatch(100);
+        engine = new NmsEngine(BenchmarkFixtures.YOLO_ANCHORS, BenchmarkFixtures.YOLO_CLASSES);
+        engine.setMode(mode);
+        engine.setMaxDetections(100);
+    }
+
+    @Benchmark
+    public int run() {
+        return engine.run(candidates, kept);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.envirospeak;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/** Decoding of the raw YOLOv5s output, read from a direct buffer like the interpreter's. */
+@State(Scope.Benchmark)
+public class YoloDecodeBenchmark {
+
+    // The app's low score threshold, and the decoder's default
+    @Param({"0.2", "0.5"})
+    public float scoreThreshold;
+
+    private FloatBuffer output;
+    private YoloDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        float[] values = BenchmarkFixtures.yoloOutput();
+        output = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        output.put(values);
+        decoder = new YoloDecoder(BenchmarkFixtures.YOLO_ANCHORS, BenchmarkFixtures.YOLO_CLASSES);
+        decoder.setScoreThreshold(scoreThreshold);
+    }
+
+    @Benchmark
+    public int decode() {
+        return decoder.decode(output, BenchmarkFixtures.VIEW_WIDTH, BenchmarkFixtures.VIEW_HEIGHT);
+    }
+}
@@ -1,6 +1,10 @@
 package org.opencv.android;
 
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import org.opencv.BuildConfig;
 import org.opencv.R;
@@ -51,6 +55,23 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected boolean mCameraPermissionGranted = false;
     protected FpsMeter mFpsMeter = null;
 
+    // Asynchronous delivery: the camera thread leaves frames in a latest-only mailbox and the
+    // delivery thread runs the listener and draws
+    private boolean mAsyncDelivery;
+    /** Fewest pooled frames asynchronous delivery can keep the latest frame moving with. */
+    public static final int ASYNC_MIN_POOLED_FRAMES = 3;
+    private final AtomicReference<PooledFrame> mPendingFrame = new AtomicReference<PooledFrame>();
+    private volatile Thread mDeliveryThread;
+    private volatile boolean mStopDelivery;
+
+    // Delivery statistics, each written by a single thread at a time
+    private volatile long mDeliveredFrames;
+    private volatile long mDroppedFrames;
+    private volatile long mQueueLatencyNanos;
+    private volatile long mProcessLatencyNanos;
+    private volatile long mRenderLatencyNanos;
+    private volatile long mFrameLatencyNanos;
+
     public static final int CAMERA_ID_ANY   = -1;
     public static final int CAMERA_ID_BACK  = 99;
     public static final int CAMERA_ID_FRONT = 98;
@@ -176,7 +197,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     /**
      * This class interface is abstract representation of single frame from camera for onCameraFrame callback
-     * Attention: Do not use objects, that represents this interface out of onCameraFrame callback!
+     * Attention: Do not use objects, that represents this interface out of onCameraFrame callback,
+     * unless the frame is a {@link PooledFrame} that has been retained!
      */
     public interface CvCameraViewFrame {
 
@@ -191,6 +213,148 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         public Mat gray();
     };
 
+    /**
+     * A frame handed out by a {@link FramePool}, reference counted. The view holds one reference
+     * while it delivers and draws the frame. A listener that keeps using the frame after
+     * onCameraFrame() returns, e.g. on a worker thread, calls {@link #retain()} inside
+     * onCameraFrame() and {@link #release()} when done, from any thread; the Mats it got from
+     * the frame stay valid until then and need not be copied, even if the camera is disconnected
+     * in the meantime. When the last reference is released the frame goes back to its pool, and
+     * its Mats are reused for a later frame.
+     */
+    public static abstract class PooledFrame implements CvCameraViewFrame {
+        private final AtomicInteger mReferences = new AtomicInteger();
+        private FramePool<?> mPool;
+        // When the camera handed the frame to deliverAndDrawFrame()
+        private long mDeliveredAtNanos;
+
+        /** Takes one more reference; only valid while the caller already holds one. */
+        public void retain() {
+            if (mReferences.getAndIncrement() <= 0) {
+                mReferences.getAndDecrement();
+                throw new IllegalStateException("Frame has already been released");
+            }
+        }
+
+        /** Gives one reference back; the last one returns the frame to its pool. */
+        public void release() {
+            int references = mReferences.decrementAndGet();
+            if (references == 0) {
+                onRecycle();
+                mPool.recycle(this);
+            } else if (references < 0) {
+                mReferences.getAndIncrement();
+                throw new IllegalStateException("Frame has already been released");
+            }
+        }
+
+        /** Lets go of the data of the current camera image; the frame's own Mats are kept. */
+        protected abstract void onRecycle();
+
+        /** Frees the frame's own Mats, once its pool is closed. */
+        protected abstract void free();
+    }
+
+    /**
+     * A ring of at most {@code capacity} reusable frames. Frames are created on demand up to the
+     * capacity and recycled when their last reference is released, so in the steady state no
+     * frame and no Mat is allocated per camera image. {@link #acquire()} must always be called
+     * from the same thread (the camera thread); frames may be released from any thread.
+     */
+    public static class FramePool<F extends PooledFrame> {
+
+        public interface Factory<F> {
+            F create();
+        }
+
+        private final int mCapacity;
+        private final Factory<F> mFactory;
+        private final ArrayBlockingQueue<F> mFree;
+        private int mCreated;
+        private final AtomicInteger mFreed = new AtomicInteger();
+        private volatile boolean mClosed;
+        private volatile Runnable mOnDrained;
+        private volatile long mExhausted;
+
+        public FramePool(int capacity, Factory<F> factory) {
+            if (capacity < 1)
+                throw new IllegalArgumentException("capacity must be >= 1");
+            mCapacity = capacity;
+            mFactory = factory;
+            mFree = new ArrayBlockingQueue<F>(capacity);
+        }
+
+        /**
+         * Returns a free frame holding one reference for the caller, or null when all frames are
+         * still held, in which case the camera image should be dropped.
+         */
+        public F acquire() {
+            if (mClosed)
+                throw new IllegalStateException("FramePool is closed");
+            F frame = mFree.poll();
+            if (frame == null) {
+                if (mCreated == mCapacity) {
+                    mExhausted++;
+                    return null;
+                }
+                frame = mFactory.create();
+                ((PooledFrame) frame).mPool = this;
+                mCreated++;
+            }
+            ((PooledFrame) frame).mReferences.set(1);
+            return frame;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void recycle(PooledFrame frame) {
+            mFree.offer((F) frame);
+            // A frame released while or after the pool is closed is freed here
+            if (mClosed)
+                freeAll();
+        }
+
+        /** Frees the free frames now, and the frames still held once they are released. */
+        public void close() {
+            close(null);
+        }
+
+        /**
+         * Like {@link #close()}, and runs {@code onDrained} once the last frame is freed, on the
+         * thread that released it; e.g. to close the source of the frames' data only when no
+         * frame needs it anymore.
+         */
+        public void close(Runnable onDrained) {
+            mOnDrained = onDrained;
+            mClosed = true;
+            if (mCreated == 0 && onDrained != null)
+                onDrained.run();
+            freeAll();
+        }
+
+        public boolean isClosed() {
+            return mClosed;
+        }
+
+        private void freeAll() {
+            F frame;
+            while ((frame = mFree.poll()) != null) {
+                frame.free();
+                Runnable onDrained = mOnDrained;
+                if (mFreed.incrementAndGet() == mCreated && onDrained != null)
+                    onDrained.run();
+            }
+        }
+
+        public int getCapacity() {
+            return mCapacity;
+        }
+
+        /** Number of camera images that found every frame still held. */
+        public long getExhaustedCount() {
+            return mExhausted;
+        }
+    }
+
     public void surfaceChanged(SurfaceHolder arg0, int arg1, int arg2, int arg3) {
         Log.d(TAG, "call surfaceChanged event");
         synchronized(mSyncObject) {
@@ -300,6 +464,64 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         mMaxHeight = maxHeight;
     }
 
+    /**
+     * Runs the listener and draws on a thread of its own ("OpenCVCameraDelivery") instead of the
+     * camera thread, so that a slow listener does not hold up capture. Only the latest frame
+     * waits for the listener: a frame that arrives while an older one is still waiting replaces
+     * it, and the older one is dropped. The drawn image is always the latest processed result.
+     * Needs a camera view that hands out {@link PooledFrame}s, such as JavaCamera2View; others
+     * keep delivering on the camera thread. Such a view needs at least
+     * {@link #ASYNC_MIN_POOLED_FRAMES} frames: one with the listener, one in the mailbox and
+     * one for the camera to fill. Takes effect the next time the camera is started.
+     */
+    public void setAsyncDelivery(boolean asyncDelivery) {
+        synchronized(mSyncObject) {
+            mAsyncDelivery = asyncDelivery;
+        }
+    }
+
+    public boolean isAsyncDelivery() {
+        return mAsyncDelivery;
+    }
+
+    /** Frames the listener was called with. */
+    public long getDeliveredFrameCount() {
+        return mDeliveredFrames;
+    }
+
+    /**
+     * Frames the listener never got: replaced in the mailbox before it got to them, or dropped
+     * by the camera view because every pooled frame was in use.
+     */
+    public long getDroppedFrameCount() {
+        return mDroppedFrames;
+    }
+
+    /** For camera views to count a camera image they had to drop, on the camera thread. */
+    protected void countDroppedFrame() {
+        mDroppedFrames++;
+    }
+
+    /** Time the latest delivered frame waited in the mailbox; 0 when delivering synchronously. */
+    public long getQueueLatencyNanos() {
+        return mQueueLatencyNanos;
+    }
+
+    /** Time the listener took on the latest delivered frame. */
+    public long getProcessLatencyNanos() {
+        return mProcessLatencyNanos;
+    }
+
+    /** Time the bitmap conversion and drawing took for the latest delivered frame. */
+    public long getRenderLatencyNanos() {
+        return mRenderLatencyNanos;
+    }
+
+    /** Time from the camera handing over the latest delivered frame to it being drawn. */
+    public long getFrameLatencyNanos() {
+        return mFrameLatencyNanos;
+    }
+
     public void SetCaptureFormat(int format)
     {
         mPreviewFormat = format;
@@ -372,6 +594,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // Bitmap must be constructed before surface
     private void onEnterStartedState() {
         Log.d(TAG, "call onEnterStartedState");
+        if (mAsyncDelivery)
+            startDeliveryThread();
         /* Connect camera */
         if (!connectCamera(getWidth(), getHeight())) {
             AlertDialog ad = new AlertDialog.Builder(getContext()).create();
@@ -389,7 +613,13 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     }
 
     private void onExitStartedState() {
+        // The delivery thread may be reading a frame's camera image, which disconnectCamera()
+        // can close, and it draws with the bitmap and surface; it must be done first
+        stopDeliveryThread();
         disconnectCamera();
+        // Left in the mailbox by the camera while the delivery thread was stopping
+        releasePendingFrame();
+        mDeliveryThread = null;
         if (mCacheBitmap != null) {
             mCacheBitmap.recycle();
         }
@@ -399,9 +629,77 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      * This method shall be called by the subclasses when they have valid
      * object and want it to be delivered to external client (via callback) and
      * then displayed on the screen.
+     * With asynchronous delivery a {@link PooledFrame} is only left in the mailbox, and the
+     * listener gets it later on the delivery thread.
      * @param frame - the current frame to be delivered
      */
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
+        long deliveredAt = System.nanoTime();
+        Thread deliveryThread = mDeliveryThread;
+        if (deliveryThread != null && frame instanceof PooledFrame) {
+            // Stopping: the camera is about to be disconnected
+            if (mStopDelivery)
+                return;
+            PooledFrame pooled = (PooledFrame) frame;
+            // The mailbox keeps the frame past this call
+            pooled.retain();
+            pooled.mDeliveredAtNanos = deliveredAt;
+            PooledFrame superseded = mPendingFrame.getAndSet(pooled);
+            if (superseded != null) {
+                superseded.release();
+                mDroppedFrames++;
+            }
+            LockSupport.unpark(deliveryThread);
+            return;
+        }
+        processAndDrawFrame(frame, deliveredAt);
+    }
+
+    private void startDeliveryThread() {
+        mStopDelivery = false;
+        mDeliveryThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mStopDelivery) {
+                    PooledFrame frame = mPendingFrame.getAndSet(null);
+                    if (frame == null) {
+                        LockSupport.park(this);
+                        continue;
+                    }
+                    try {
+                        processAndDrawFrame(frame, frame.mDeliveredAtNanos);
+                    } finally {
+                        frame.release();
+                    }
+                }
+            }
+        }, "OpenCVCameraDelivery");
+        mDeliveryThread.start();
+    }
+
+    private void stopDeliveryThread() {
+        Thread thread = mDeliveryThread;
+        if (thread == null)
+            return;
+        mStopDelivery = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "stopDeliveryThread", e);
+            Thread.currentThread().interrupt();
+        }
+        releasePendingFrame();
+    }
+
+    private void releasePendingFrame() {
+        PooledFrame frame = mPendingFrame.getAndSet(null);
+        if (frame != null)
+            frame.release();
+    }
+
+    private void processAndDrawFrame(CvCameraViewFrame frame, long deliveredAt) {
+        long started = System.nanoTime();
         Mat modified;
 
         if (mListener != null) {
@@ -409,6 +707,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         } else {
             modified = frame.rgba();
         }
+        long processed = System.nanoTime();
 
         boolean bmpValid = true;
         if (modified != null) {
@@ -450,6 +749,13 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 getHolder().unlockCanvasAndPost(canvas);
             }
         }
+
+        long drawn = System.nanoTime();
+        mQueueLatencyNanos = started - deliveredAt;
+        mProcessLatencyNanos = processed - started;
+        mRenderLatencyNanos = drawn - processed;
+        mFrameLatencyNanos = drawn - deliveredAt;
+        mDeliveredFrames++;
     }
 
     /**
@@ -52,6 +52,9 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     protected CaptureRequest.Builder mPreviewRequestBuilder;
     protected String mCameraID;
     protected android.util.Size mPreviewSize = new android.util.Size(-1, -1);
+    // Frames and their Mats are recycled instead of allocated per image
+    protected int mFramePoolSize = 2;
+    protected FramePool<JavaCamera2Frame> mFramePool;
 
     private HandlerThread mBackgroundThread;
     protected Handler mBackgroundHandler;
@@ -64,6 +67,22 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         super(context, attrs);
     }
 
+    /**
+     * Number of frames in the pool, i.e. how many frames can be in use at the same time, counting
+     * the one being delivered and the ones retained by the listener; with asynchronous delivery
+     * at least {@link #ASYNC_MIN_POOLED_FRAMES}. Takes effect the next time the preview session
+     * is created.
+     */
+    public void setFramePoolSize(int framePoolSize) {
+        if (framePoolSize < 1)
+            throw new IllegalArgumentException("framePoolSize must be >= 1");
+        mFramePoolSize = framePoolSize;
+    }
+
+    public FramePool<JavaCamera2Frame> getFramePool() {
+        return mFramePool;
+    }
+
     private void startBackgroundThread() {
         Log.i(LOGTAG, "startBackgroundThread");
         stopBackgroundThread();
@@ -200,10 +219,26 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 return;
             }
 
-            mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, 2);
+            closeFramePool();
+            final int framePoolSize = isAsyncDelivery()
+                    ? Math.max(mFramePoolSize, ASYNC_MIN_POOLED_FRAMES) : mFramePoolSize;
+            final FramePool<JavaCamera2Frame> framePool = new FramePool<JavaCamera2Frame>(framePoolSize,
+                    new FramePool.Factory<JavaCamera2Frame>() {
+                        @Override
+                        public JavaCamera2Frame create() {
+                            return new JavaCamera2Frame();
+                        }
+                    });
+            mFramePool = framePool;
+            // Every pooled frame can hold an image, plus the one being acquired and the spare
+            // acquireLatestImage() needs
+            mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, framePoolSize + 2);
             mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
                 @Override
                 public void onImageAvailable(ImageReader reader) {
+                    // A callback posted before the reader was replaced or disconnected
+                    if (framePool.isClosed())
+                        return;
                     Image image = reader.acquireLatestImage();
                     if (image == null)
                         return;
@@ -213,10 +248,16 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes.length == 3);
                     assert (image.getFormat() == mPreviewFormat);
 
-                    JavaCamera2Frame tempFrame = new JavaCamera2Frame(image);
-                    deliverAndDrawFrame(tempFrame);
-                    tempFrame.release();
-                    image.close();
+                    JavaCamera2Frame frame = framePool.acquire();
+                    if (frame == null) {
+                        // The listener still holds every frame
+                        image.close();
+                        countDroppedFrame();
+                        return;
+                    }
+                    frame.setImage(image);
+                    deliverAndDrawFrame(frame);
+                    frame.release();
                 }
             }, mBackgroundHandler);
             Surface surface = mImageReader.getSurface();
@@ -246,14 +287,34 @@ public class JavaCamera2View extends CameraBridgeViewBase {
             }
         } finally {
             stopBackgroundThread();
-            if (null != mImageReader) {
-                mImageReader.close();
-                mImageReader = null;
-            }
+            closeFramePool();
         }
         Log.i(LOGTAG, "camera closed!");
     }
 
+    /**
+     * Detaches the image reader and closes the frame pool. Frames still retained by the listener
+     * are freed when it releases them, and the reader, whose images they hold, is only closed
+     * after the last one.
+     */
+    private void closeFramePool() {
+        final ImageReader reader = mImageReader;
+        mImageReader = null;
+        if (null != reader)
+            reader.setOnImageAvailableListener(null, null);
+        if (null != mFramePool) {
+            mFramePool.close(reader == null ? null : new Runnable() {
+                @Override
+                public void run() {
+                    reader.close();
+                }
+            });
+            mFramePool = null;
+        } else if (null != reader) {
+            reader.close();
+        }
+    }
+
     public static class JavaCameraSizeAccessor implements ListItemAccessor {
         @Override
         public int getWidth(Object obj) {
@@ -334,21 +395,34 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         return true;
     }
 
-    private class JavaCamera2Frame implements CvCameraViewFrame {
+    /**
+     * A pooled frame wrapping one camera image. The gray and RGBA Mats and the I420 conversion
+     * buffers belong to the frame and are reused image after image; gray() copies and rgba()
+     * converts once per image. The image is closed when the frame is recycled.
+     */
+    protected class JavaCamera2Frame extends PooledFrame {
         @Override
         public Mat gray() {
+            if (mGrayValid)
+                return mGray;
             Image.Plane[] planes = mImage.getPlanes();
             int w = mImage.getWidth();
             int h = mImage.getHeight();
             assert(planes[0].getPixelStride() == 1);
             ByteBuffer y_plane = planes[0].getBuffer();
             int y_plane_step = planes[0].getRowStride();
-            mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+            // Copied, so that the Mat handed out does not point into the image
+            Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+            y_mat.copyTo(mGray);
+            y_mat.close();
+            mGrayValid = true;
             return mGray;
         }
 
         @Override
         public Mat rgba() {
+            if (mRgbaValid)
+                return mRgba;
             Image.Plane[] planes = mImage.getPlanes();
             int w = mImage.getWidth();
             int h = mImage.getHeight();
@@ -364,6 +438,7 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 int uv_plane1_step = planes[1].getRowStride();
                 ByteBuffer uv_plane2 = planes[2].getBuffer();
                 int uv_plane2_step = planes[2].getRowStride();
+                // Headers over the image's planes, no pixels are copied
                 Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
                 Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
                 Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step);
@@ -375,9 +450,15 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert(addr_diff == -1);
                     Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
                 }
+                y_mat.close();
+                uv_mat1.close();
+                uv_mat2.close();
+                mRgbaValid = true;
                 return mRgba;
             } else { // Chroma channels are not interleaved
-                byte[] yuv_bytes = new byte[w*(h+h/2)];
+                if (mYuvBytes == null || mYuvBytes.length != w*(h+h/2))
+                    mYuvBytes = new byte[w*(h+h/2)];
+                byte[] yuv_bytes = mYuvBytes;
                 ByteBuffer y_plane = planes[0].getBuffer();
                 ByteBuffer u_plane = planes[1].getBuffer();
                 ByteBuffer v_plane = planes[2].getBuffer();
@@ -427,28 +508,42 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     }
                 }
 
-                Mat yuv_mat = new Mat(h+h/2, w, CvType.CV_8UC1);
-                yuv_mat.put(0, 0, yuv_bytes);
-                Imgproc.cvtColor(yuv_mat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+                mYuv.create(h+h/2, w, CvType.CV_8UC1);
+                mYuv.put(0, 0, yuv_bytes);
+                Imgproc.cvtColor(mYuv, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+                mRgbaValid = true;
                 return mRgba;
             }
         }
 
-
-        public JavaCamera2Frame(Image image) {
-            super();
+        void setImage(Image image) {
             mImage = image;
-            mRgba = new Mat();
-            mGray = new Mat();
+            mRgbaValid = false;
         }
 
-        public void release() {
-            mRgba.release();
+        @Override
+        protected void onRecycle() {
+            mGrayValid = false;
+            mRgbaValid = false;
+            mImage.close();
+            mImage = null;
+        }
+
+        @Override
+        protected void free() {
             mGray.release();
+            mRgba.release();
+            mYuv.release();
+            mYuvBytes = null;
         }
 
         private Image mImage;
-        private Mat mRgba;
-        private Mat mGray;
+        private final Mat mRgba = new Mat();
+        private boolean mRgbaValid;
+        private final Mat mGray = new Mat();
+        private boolean mGrayValid;
+        // Only used for images whose chroma planes are not interleaved
+        private byte[] mYuvBytes;
+        private final Mat mYuv = new Mat();
     };
 }
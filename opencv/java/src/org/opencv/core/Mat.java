@@ -1,17 +1,33 @@
 package org.opencv.core;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // C++: class Mat
 //javadoc: Mat
-public class Mat {
+public class Mat implements AutoCloseable {
 
     public final long nativeObj;
 
+    // Set by close(); the native object is gone and finalize() must not delete it again
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // Caller that created the Mat, while MatLeakTracker is enabled
+    String allocationSite;
+
+    // Java buffer the data lives in, kept reachable for as long as the Mat, and the data
+    // address it had; a reallocation (e.g. create() with another size) moves the data out
+    private ByteBuffer dataBuffer;
+    private long dataBufferAddr;
+
     public Mat(long addr) {
         if (addr == 0)
             throw new UnsupportedOperationException("Native object address is NULL");
         nativeObj = addr;
+        created();
     }
 
     //
@@ -21,6 +37,7 @@ public class Mat {
     // javadoc: Mat::Mat()
     public Mat() {
         nativeObj = n_Mat();
+        created();
     }
 
     //
@@ -30,6 +47,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type)
     public Mat(int rows, int cols, int type) {
         nativeObj = n_Mat(rows, cols, type);
+        created();
     }
 
     //
@@ -39,6 +57,9 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, data)
     public Mat(int rows, int cols, int type, ByteBuffer data) {
         nativeObj = n_Mat(rows, cols, type, data);
+        dataBuffer = data;
+        dataBufferAddr = n_dataAddr(nativeObj);
+        created();
     }
 
     //
@@ -48,6 +69,9 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, data, step)
     public Mat(int rows, int cols, int type, ByteBuffer data, long step) {
         nativeObj = n_Mat(rows, cols, type, data, step);
+        dataBuffer = data;
+        dataBufferAddr = n_dataAddr(nativeObj);
+        created();
     }
 
     //
@@ -57,6 +81,7 @@ public class Mat {
     // javadoc: Mat::Mat(size, type)
     public Mat(Size size, int type) {
         nativeObj = n_Mat(size.width, size.height, type);
+        created();
     }
 
     //
@@ -66,6 +91,7 @@ public class Mat {
     // javadoc: Mat::Mat(sizes, type)
     public Mat(int[] sizes, int type) {
         nativeObj = n_Mat(sizes.length, sizes, type);
+        created();
     }
 
     //
@@ -75,6 +101,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, s)
     public Mat(int rows, int cols, int type, Scalar s) {
         nativeObj = n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        created();
     }
 
     //
@@ -84,6 +111,7 @@ public class Mat {
     // javadoc: Mat::Mat(size, type, s)
     public Mat(Size size, int type, Scalar s) {
         nativeObj = n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        created();
     }
 
     //
@@ -93,6 +121,7 @@ public class Mat {
     // javadoc: Mat::Mat(sizes, type, s)
     public Mat(int[] sizes, int type, Scalar s) {
         nativeObj = n_Mat(sizes.length, sizes, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        created();
     }
 
     //
@@ -102,11 +131,13 @@ public class Mat {
     // javadoc: Mat::Mat(m, rowRange, colRange)
     public Mat(Mat m, Range rowRange, Range colRange) {
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end);
+        created();
     }
 
     // javadoc: Mat::Mat(m, rowRange)
     public Mat(Mat m, Range rowRange) {
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end);
+        created();
     }
 
     //
@@ -116,6 +147,7 @@ public class Mat {
     // javadoc: Mat::Mat(m, ranges)
     public Mat(Mat m, Range[] ranges) {
         nativeObj = n_Mat(m.nativeObj, ranges);
+        created();
     }
 
     //
@@ -125,6 +157,7 @@ public class Mat {
     // javadoc: Mat::Mat(m, roi)
     public Mat(Mat m, Rect roi) {
         nativeObj = n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width);
+        created();
     }
 
     //
@@ -754,9 +787,37 @@ public class Mat {
         return new Mat(n_zeros(sizes.length, sizes, type));
     }
 
+    /**
+     * Deletes the native object now, instead of whenever the Mat is finalized, so per-frame
+     * temporaries don't pile up in native memory until the next GC. The Mat must not be used
+     * afterwards; closing it again, also from another thread, does nothing. See also
+     * {@link MatScope}.
+     */
     @Override
-    protected void finalize() throws Throwable {
+    public void close() {
+        if (!closed.compareAndSet(false, true))
+            return;
         n_delete(nativeObj);
+        MatLeakTracker.onClose(this);
+    }
+
+    // Called last by every constructor, so a Mat whose construction failed is neither put in
+    // the open MatScope nor counted as live
+    private void created() {
+        MatScope.register(this);
+        MatLeakTracker.onAllocate(this);
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        if (closed.compareAndSet(false, true)) {
+            n_delete(nativeObj);
+            MatLeakTracker.onFinalize(this);
+        }
         super.finalize();
     }
 
@@ -1125,6 +1186,202 @@ public class Mat {
         throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
     }
 
+    /**
+     * Wraps a direct buffer as a Mat header without copying, from the buffer's position on.
+     * Writes through the Mat land in the buffer and the other way round, for as long as the
+     * Mat is not reallocated. The buffer is kept reachable by the Mat.
+     * @param step bytes from one row to the next, at least cols * elemSize
+     */
+    public static Mat wrap(ByteBuffer data, int rows, int cols, int type, long step) {
+        long rowBytes = (long) cols * CvType.ELEM_SIZE(type);
+        if (data == null || !data.isDirect())
+            throw new IllegalArgumentException("A direct ByteBuffer is required");
+        if (step < rowBytes)
+            throw new IllegalArgumentException("Step " + step + " is less than the row size " + rowBytes);
+        if (bulkSize(rows, rowBytes, step) > data.remaining())
+            throw new BufferUnderflowException();
+        // The native side ignores the position, a slice starts there
+        return new Mat(rows, cols, type, data.slice(), step);
+    }
+
+    /** Wraps a direct buffer holding continuous rows; see {@link #wrap(ByteBuffer, int, int, int, long)}. */
+    public static Mat wrap(ByteBuffer data, int rows, int cols, int type) {
+        return wrap(data, rows, cols, type, (long) cols * CvType.ELEM_SIZE(type));
+    }
+
+    /**
+     * Creates a continuous Mat whose data lives in a direct buffer in native byte order, so that
+     * {@link #buffer()} can hand it to e.g. a TensorFlow Lite Interpreter without copying.
+     * Functions that write into it keep using that buffer as long as they need the same size
+     * and type.
+     */
+    public static Mat allocateDirect(int rows, int cols, int type) {
+        ByteBuffer data = ByteBuffer.allocateDirect(rows * cols * CvType.ELEM_SIZE(type))
+                .order(ByteOrder.nativeOrder());
+        return new Mat(rows, cols, type, data);
+    }
+
+    /**
+     * The Mat's data as a direct buffer in native byte order, without copying: position 0 is
+     * the first element and rows are step1(0) * elemSize1() bytes apart. Only Mats whose data
+     * is a Java buffer have one: those made by {@link #wrap}, {@link #allocateDirect} or the
+     * ByteBuffer constructors, and not reallocated since. Other Mats are copied with
+     * {@link #get(ByteBuffer)}.
+     * @throws UnsupportedOperationException when the data is not in a Java buffer
+     */
+    public ByteBuffer buffer() {
+        if (dataBuffer == null || n_dataAddr(nativeObj) != dataBufferAddr)
+            throw new UnsupportedOperationException("Mat data is not in a Java buffer: " + this);
+        ByteBuffer view = dataBuffer.duplicate().order(ByteOrder.nativeOrder());
+        view.clear();
+        view.limit((int) bulkSize(rows(), cols() * elemSize(), step1(0) * elemSize1()));
+        return view;
+    }
+
+    /**
+     * Copies the Mat into a direct buffer from its position on, rows {@code dstStep} bytes apart,
+     * and advances the position past the last row. One native copy, whatever the strides.
+     * @throws BufferOverflowException when the buffer has too little room
+     */
+    public void get(ByteBuffer dst, long dstStep) {
+        Mat header = bulkHeader(dst, dstStep, false);
+        if (header == null)
+            return;
+        try {
+            n_copyTo(nativeObj, header.nativeObj);
+        } finally {
+            header.close();
+        }
+        dst.position(dst.position() + (int) bulkSize(rows(), cols() * elemSize(), dstStep));
+    }
+
+    /** Copies the Mat into a direct buffer as continuous rows; see {@link #get(ByteBuffer, long)}. */
+    public void get(ByteBuffer dst) {
+        get(dst, cols() * elemSize());
+    }
+
+    /**
+     * Copies rows {@code srcStep} bytes apart, from a direct buffer's position on, into this Mat
+     * (or the region of its parent, for a submatrix), and advances the position past the last
+     * row. The Mat keeps its size and type.
+     * @throws BufferUnderflowException when the buffer holds too little
+     */
+    public void put(ByteBuffer src, long srcStep) {
+        Mat header = bulkHeader(src, srcStep, true);
+        if (header == null)
+            return;
+        try {
+            n_copyTo(header.nativeObj, nativeObj);
+        } finally {
+            header.close();
+        }
+        src.position(src.position() + (int) bulkSize(rows(), cols() * elemSize(), srcStep));
+    }
+
+    /** Copies continuous rows from a direct buffer; see {@link #put(ByteBuffer, long)}. */
+    public void put(ByteBuffer src) {
+        put(src, cols() * elemSize());
+    }
+
+    /**
+     * Copies a CV_32F Mat into a float buffer from its position on, rows {@code dstStride}
+     * floats apart, and advances the position past the last row. Heap buffers are filled
+     * through their array; a direct FloatBuffer goes through a row-sized array, so use the
+     * ByteBuffer it views, with {@link #get(ByteBuffer, long)}, to avoid that copy.
+     */
+    public void get(FloatBuffer dst, int dstStride) {
+        int rowLength = checkFloatBulk(dst, dstStride);
+        int rows = rows();
+        if (rowLength == 0 || rows == 0)
+            return;
+        int start = dst.position();
+        if (bulkSize(rows, rowLength, dstStride) > dst.remaining())
+            throw new BufferOverflowException();
+        if (dst.hasArray() && dstStride == rowLength && dst.arrayOffset() + start == 0) {
+            nGetF(nativeObj, 0, 0, rows * rowLength, dst.array());
+        } else {
+            float[] row = new float[rowLength];
+            for (int r = 0; r < rows; r++) {
+                nGetF(nativeObj, r, 0, rowLength, row);
+                dst.position(start + r * dstStride);
+                dst.put(row);
+            }
+        }
+        dst.position(start + (int) bulkSize(rows, rowLength, dstStride));
+    }
+
+    /** Copies a CV_32F Mat into a float buffer as continuous rows. */
+    public void get(FloatBuffer dst) {
+        get(dst, cols() * channels());
+    }
+
+    /**
+     * Copies rows {@code srcStride} floats apart, from a float buffer's position on, into a
+     * CV_32F Mat, and advances the position past the last row. Same paths as
+     * {@link #get(FloatBuffer, int)}.
+     */
+    public void put(FloatBuffer src, int srcStride) {
+        int rowLength = checkFloatBulk(src, srcStride);
+        int rows = rows();
+        if (rowLength == 0 || rows == 0)
+            return;
+        int start = src.position();
+        if (bulkSize(rows, rowLength, srcStride) > src.remaining())
+            throw new BufferUnderflowException();
+        if (src.hasArray() && srcStride == rowLength && src.arrayOffset() + start == 0) {
+            nPutF(nativeObj, 0, 0, rows * rowLength, src.array());
+        } else {
+            float[] row = new float[rowLength];
+            for (int r = 0; r < rows; r++) {
+                src.position(start + r * srcStride);
+                src.get(row);
+                nPutF(nativeObj, r, 0, rowLength, row);
+            }
+        }
+        src.position(start + (int) bulkSize(rows, rowLength, srcStride));
+    }
+
+    /** Copies continuous rows from a float buffer into a CV_32F Mat. */
+    public void put(FloatBuffer src) {
+        put(src, cols() * channels());
+    }
+
+    // Extent of rows rowSize apart step by step: the last row needs no padding after it
+    private static long bulkSize(int rows, long rowSize, long step) {
+        return rows == 0 ? 0 : (rows - 1) * step + rowSize;
+    }
+
+    // Header over the buffer matching this Mat's size and type, or null when there is nothing to copy
+    private Mat bulkHeader(ByteBuffer buffer, long step, boolean source) {
+        if (buffer == null || !buffer.isDirect())
+            throw new IllegalArgumentException("A direct ByteBuffer is required");
+        if (dims() > 2)
+            throw new UnsupportedOperationException("Only 2D Mats are supported: " + this);
+        int rows = rows();
+        int cols = cols();
+        long rowBytes = cols * elemSize();
+        if (step < rowBytes)
+            throw new IllegalArgumentException("Step " + step + " is less than the row size " + rowBytes);
+        if (rows == 0 || cols == 0)
+            return null;
+        if (bulkSize(rows, rowBytes, step) > buffer.remaining())
+            throw source ? new BufferUnderflowException() : new BufferOverflowException();
+        return new Mat(rows, cols, type(), buffer.slice(), step);
+    }
+
+    // Floats per row, after checking the Mat and the buffer
+    private int checkFloatBulk(FloatBuffer buffer, int stride) {
+        int t = type();
+        if (CvType.depth(t) != CvType.CV_32F)
+            throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+        if (dims() > 2)
+            throw new UnsupportedOperationException("Only 2D Mats are supported: " + this);
+        int rowLength = cols() * channels();
+        if (stride < rowLength)
+            throw new IllegalArgumentException("Stride " + stride + " is less than the row length " + rowLength);
+        return rowLength;
+    }
+
     // javadoc:Mat::get(row,col)
     public double[] get(int row, int col) {
         return nGet(nativeObj, row, col);
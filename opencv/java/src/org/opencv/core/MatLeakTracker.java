@@ -0,0 +1,138 @@
+package org.opencv.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Debug aid counting native Mats by allocation site, the first caller outside OpenCV, so a
+ * Mat created inside e.g. Imgproc or Dnn is counted where the app called into OpenCV. A Mat
+ * counts as live from its creation until it is closed or finalized; Mats that were finalized,
+ * rather than closed, are counted separately, as those held native memory until a GC. Only Mats created while tracking is enabled are counted.
+ * Finding the site walks the stack, so keep it off in release builds.
+ */
+public final class MatLeakTracker {
+
+    private static volatile boolean enabled;
+    private static final ConcurrentHashMap<String, AtomicInteger> live = new ConcurrentHashMap<String, AtomicInteger>();
+    private static final ConcurrentHashMap<String, AtomicInteger> finalized = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private MatLeakTracker() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        MatLeakTracker.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Forgets the counts; Mats created before keep being counted when closed or finalized. */
+    public static void reset() {
+        live.clear();
+        finalized.clear();
+    }
+
+    static void onAllocate(Mat mat) {
+        if (!enabled)
+            return;
+        String site = site();
+        mat.allocationSite = site;
+        counter(live, site).incrementAndGet();
+    }
+
+    static void onClose(Mat mat) {
+        String site = mat.allocationSite;
+        if (site != null)
+            counter(live, site).decrementAndGet();
+    }
+
+    static void onFinalize(Mat mat) {
+        String site = mat.allocationSite;
+        if (site == null)
+            return;
+        counter(live, site).decrementAndGet();
+        counter(finalized, site).incrementAndGet();
+    }
+
+    private static AtomicInteger counter(ConcurrentHashMap<String, AtomicInteger> counts, String site) {
+        AtomicInteger counter = counts.get(site);
+        if (counter == null) {
+            AtomicInteger created = new AtomicInteger();
+            counter = counts.putIfAbsent(site, created);
+            if (counter == null)
+                counter = created;
+        }
+        return counter;
+    }
+
+    private static String site() {
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            String className = element.getClassName();
+            if (!className.startsWith("org.opencv."))
+                return element.toString();
+        }
+        return "unknown";
+    }
+
+    /** Live Mats per allocation site, sites without any left out. */
+    public static Map<String, Integer> getLiveCounts() {
+        return snapshot(live);
+    }
+
+    /** Mats per allocation site that were released by the finalizer instead of being closed. */
+    public static Map<String, Integer> getFinalizedCounts() {
+        return snapshot(finalized);
+    }
+
+    public static int getLiveCount() {
+        int total = 0;
+        for (AtomicInteger counter : live.values())
+            total += counter.get();
+        return total;
+    }
+
+    private static Map<String, Integer> snapshot(ConcurrentHashMap<String, AtomicInteger> counts) {
+        HashMap<String, Integer> snapshot = new HashMap<String, Integer>();
+        for (Map.Entry<String, AtomicInteger> entry : counts.entrySet()) {
+            int count = entry.getValue().get();
+            if (count != 0)
+                snapshot.put(entry.getKey(), count);
+        }
+        return snapshot;
+    }
+
+    /** One line per site with live or finalized Mats, most live first, then by site. */
+    public static String report() {
+        final Map<String, Integer> liveCounts = getLiveCounts();
+        Map<String, Integer> finalizedCounts = getFinalizedCounts();
+        List<String> sites = new ArrayList<String>(liveCounts.keySet());
+        for (String site : finalizedCounts.keySet())
+            if (!liveCounts.containsKey(site))
+                sites.add(site);
+        Collections.sort(sites, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int byLive = count(liveCounts, b) - count(liveCounts, a);
+                return byLive != 0 ? byLive : a.compareTo(b);
+            }
+        });
+        StringBuilder report = new StringBuilder();
+        for (String site : sites) {
+            report.append(site).append(": live ").append(count(liveCounts, site))
+                    .append(", finalized ").append(count(finalizedCounts, site)).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static int count(Map<String, Integer> counts, String site) {
+        Integer count = counts.get(site);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,99 @@
+package org.opencv.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closes every Mat created on this thread while the scope is open, in one go, e.g. all the
+ * temporaries of a frame:
+ * <pre>
+ * try (MatScope scope = MatScope.open()) {
+ *     MatOfFloat scores = new MatOfFloat(...);
+ *     ...
+ *     result = scope.detach(output); // outlives the scope
+ * }
+ * </pre>
+ * That includes Mats created inside OpenCV functions called from the scope. Scopes nest; a Mat
+ * belongs to the innermost one and scopes must be closed innermost first, on the thread that
+ * opened them. Mats closed earlier are skipped.
+ */
+public final class MatScope implements AutoCloseable {
+
+    private static final ThreadLocal<MatScope> current = new ThreadLocal<MatScope>();
+    // Lets Mats skip the thread local lookup while no scope is open anywhere
+    private static final AtomicInteger openScopes = new AtomicInteger();
+
+    private final MatScope parent;
+    private final Thread thread;
+    private Mat[] mats = new Mat[16];
+    private int count;
+    private boolean closed;
+
+    private MatScope(MatScope parent) {
+        this.parent = parent;
+        thread = Thread.currentThread();
+    }
+
+    /** Opens a scope on this thread, inside the current one if any. */
+    public static MatScope open() {
+        MatScope scope = new MatScope(current.get());
+        current.set(scope);
+        openScopes.incrementAndGet();
+        return scope;
+    }
+
+    static void register(Mat mat) {
+        if (openScopes.get() == 0)
+            return;
+        MatScope scope = current.get();
+        if (scope != null)
+            scope.add(mat);
+    }
+
+    private void add(Mat mat) {
+        if (count == mats.length) {
+            Mat[] grown = new Mat[count * 2];
+            System.arraycopy(mats, 0, grown, 0, count);
+            mats = grown;
+        }
+        mats[count++] = mat;
+    }
+
+    /** Takes the Mat out of the scope, so that it outlives it; returns it. */
+    public <T extends Mat> T detach(T mat) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (mats[i] == mat) {
+                System.arraycopy(mats, i + 1, mats, i, count - i - 1);
+                mats[--count] = null;
+                break;
+            }
+        }
+        return mat;
+    }
+
+    /** Number of Mats the scope will close. */
+    public int size() {
+        return count;
+    }
+
+    /** Closes the scope's Mats, newest first. */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        if (Thread.currentThread() != thread)
+            throw new IllegalStateException("MatScope closed on another thread than it was opened on");
+        if (current.get() != this)
+            throw new IllegalStateException("Nested MatScope must be closed first");
+        closed = true;
+        if (parent != null)
+            current.set(parent);
+        else
+            current.remove();
+        openScopes.decrementAndGet();
+        for (int i = count - 1; i >= 0; i--) {
+            mats[i].close();
+            mats[i] = null;
+        }
+        count = 0;
+    }
+}
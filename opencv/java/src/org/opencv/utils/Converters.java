@@ -803,4 +803,242 @@ public class Converters {
             rs.add(new RotatedRect(new Point(buff[5 * i], buff[5 * i + 1]), new Size(buff[5 * i + 2], buff[5 * i + 3]), buff[5 * i + 4]));
         }
     }
+
+    // Primitive and flat-array counterparts of the List converters above. Values are copied
+    // straight from and to the caller's arrays, so nothing is boxed. Mat.put and Mat.get never
+    // copy more values than the Mat holds, so the arrays may be longer than the range. The Mat
+    // is reused: Mat.create does nothing when rows and type already match, so converting the
+    // same amount of data frame after frame allocates nothing. The caller-supplied scratch
+    // array is only used, and may only be null otherwise, when the range does not start at
+    // index 0 or, for rects, when the array length is not a multiple of 4.
+
+    /** Writes {@code fs[offset, offset + length)} to {@code m} as a CV_32FC1 column; returns m. */
+    public static Mat vector_float_to_Mat(float[] fs, int offset, int length, Mat m, float[] scratch) {
+        checkRange(fs == null ? -1 : fs.length, offset, length);
+        if (!prepare(m, length, CvType.CV_32FC1))
+            return m;
+        float[] buff = fs;
+        if (offset != 0) {
+            checkScratch(scratch == null ? -1 : scratch.length, length);
+            System.arraycopy(fs, offset, scratch, 0, length);
+            buff = scratch;
+        }
+        m.put(0, 0, buff);
+        return m;
+    }
+
+    /** Reads a CV_32FC1 column into {@code fs} from {@code offset}; returns the number of values. */
+    public static int Mat_to_vector_float(Mat m, float[] fs, int offset, float[] scratch) {
+        int count = checkColumn(m, CvType.CV_32FC1);
+        checkRange(fs == null ? -1 : fs.length, offset, count);
+        if (count == 0)
+            return 0;
+        if (offset == 0) {
+            m.get(0, 0, fs);
+        } else {
+            checkScratch(scratch == null ? -1 : scratch.length, count);
+            m.get(0, 0, scratch);
+            System.arraycopy(scratch, 0, fs, offset, count);
+        }
+        return count;
+    }
+
+    /** Writes {@code is[offset, offset + length)} to {@code m} as a CV_32SC1 column; returns m. */
+    public static Mat vector_int_to_Mat(int[] is, int offset, int length, Mat m, int[] scratch) {
+        checkRange(is == null ? -1 : is.length, offset, length);
+        if (!prepare(m, length, CvType.CV_32SC1))
+            return m;
+        int[] buff = is;
+        if (offset != 0) {
+            checkScratch(scratch == null ? -1 : scratch.length, length);
+            System.arraycopy(is, offset, scratch, 0, length);
+            buff = scratch;
+        }
+        m.put(0, 0, buff);
+        return m;
+    }
+
+    /** Reads a CV_32SC1 column into {@code is} from {@code offset}; returns the number of values. */
+    public static int Mat_to_vector_int(Mat m, int[] is, int offset, int[] scratch) {
+        int count = checkColumn(m, CvType.CV_32SC1);
+        checkRange(is == null ? -1 : is.length, offset, count);
+        if (count == 0)
+            return 0;
+        if (offset == 0) {
+            m.get(0, 0, is);
+        } else {
+            checkScratch(scratch == null ? -1 : scratch.length, count);
+            m.get(0, 0, scratch);
+            System.arraycopy(scratch, 0, is, offset, count);
+        }
+        return count;
+    }
+
+    /** Writes {@code ds[offset, offset + length)} to {@code m} as a CV_64FC1 column; returns m. */
+    public static Mat vector_double_to_Mat(double[] ds, int offset, int length, Mat m, double[] scratch) {
+        checkRange(ds == null ? -1 : ds.length, offset, length);
+        if (!prepare(m, length, CvType.CV_64FC1))
+            return m;
+        double[] buff = ds;
+        if (offset != 0) {
+            checkScratch(scratch == null ? -1 : scratch.length, length);
+            System.arraycopy(ds, offset, scratch, 0, length);
+            buff = scratch;
+        }
+        m.put(0, 0, buff);
+        return m;
+    }
+
+    /** Reads a CV_64FC1 column into {@code ds} from {@code offset}; returns the number of values. */
+    public static int Mat_to_vector_double(Mat m, double[] ds, int offset, double[] scratch) {
+        int count = checkColumn(m, CvType.CV_64FC1);
+        checkRange(ds == null ? -1 : ds.length, offset, count);
+        if (count == 0)
+            return 0;
+        if (offset == 0) {
+            m.get(0, 0, ds);
+        } else {
+            checkScratch(scratch == null ? -1 : scratch.length, count);
+            m.get(0, 0, scratch);
+            System.arraycopy(scratch, 0, ds, offset, count);
+        }
+        return count;
+    }
+
+    /**
+     * Writes {@code count} rects, stored as {@code x, y, width, height} from {@code offset}, to
+     * {@code m} as a CV_32SC4 column; returns m.
+     */
+    public static Mat vector_Rect_to_Mat(int[] xywh, int offset, int count, Mat m, int[] scratch) {
+        checkRange(xywh == null ? -1 : xywh.length, offset, 4 * count);
+        if (!prepare(m, count, CvType.CV_32SC4))
+            return m;
+        int[] buff = xywh;
+        if (offset != 0 || xywh.length % 4 != 0) {
+            checkRectScratch(scratch == null ? -1 : scratch.length, count);
+            System.arraycopy(xywh, offset, scratch, 0, 4 * count);
+            buff = scratch;
+        }
+        m.put(0, 0, buff);
+        return m;
+    }
+
+    /** Reads a CV_32SC4 column into {@code xywh} from {@code offset}; returns the number of rects. */
+    public static int Mat_to_vector_Rect(Mat m, int[] xywh, int offset, int[] scratch) {
+        int count = checkColumn(m, CvType.CV_32SC4);
+        checkRange(xywh == null ? -1 : xywh.length, offset, 4 * count);
+        if (count == 0)
+            return 0;
+        if (offset == 0 && xywh.length % 4 == 0) {
+            m.get(0, 0, xywh);
+        } else {
+            checkRectScratch(scratch == null ? -1 : scratch.length, count);
+            m.get(0, 0, scratch);
+            System.arraycopy(scratch, 0, xywh, offset, 4 * count);
+        }
+        return count;
+    }
+
+    /**
+     * Writes {@code count} rects, stored as {@code x, y, width, height} from {@code offset}, to
+     * {@code m} as a CV_64FC4 column; returns m.
+     */
+    public static Mat vector_Rect2d_to_Mat(double[] xywh, int offset, int count, Mat m, double[] scratch) {
+        checkRange(xywh == null ? -1 : xywh.length, offset, 4 * count);
+        if (!prepare(m, count, CvType.CV_64FC4))
+            return m;
+        double[] buff = xywh;
+        if (offset != 0 || xywh.length % 4 != 0) {
+            checkRectScratch(scratch == null ? -1 : scratch.length, count);
+            System.arraycopy(xywh, offset, scratch, 0, 4 * count);
+            buff = scratch;
+        }
+        m.put(0, 0, buff);
+        return m;
+    }
+
+    /**
+     * Writes the first {@code count} boxes given as parallel {@code left, top, right, bottom}
+     * arrays to {@code m} as a CV_64FC4 column of Rect2d; returns m.
+     *
+     * @param scratch receives the interleaved rects; always used, must hold 4 * count values
+     *                and have a length that is a multiple of 4
+     */
+    public static Mat vector_Rect2d_to_Mat(float[] left, float[] top, float[] right, float[] bottom, int count,
+                                           Mat m, double[] scratch) {
+        if (left == null || top == null || right == null || bottom == null)
+            throw new IllegalArgumentException("box arrays can't be null");
+        checkRange(Math.min(Math.min(left.length, top.length), Math.min(right.length, bottom.length)), 0, count);
+        checkRectScratch(scratch == null ? -1 : scratch.length, count);
+        if (!prepare(m, count, CvType.CV_64FC4))
+            return m;
+        for (int i = 0; i < count; i++) {
+            scratch[4 * i] = left[i];
+            scratch[4 * i + 1] = top[i];
+            scratch[4 * i + 2] = right[i] - left[i];
+            scratch[4 * i + 3] = bottom[i] - top[i];
+        }
+        m.put(0, 0, scratch);
+        return m;
+    }
+
+    /** Reads a CV_64FC4 column into {@code xywh} from {@code offset}; returns the number of rects. */
+    public static int Mat_to_vector_Rect2d(Mat m, double[] xywh, int offset, double[] scratch) {
+        int count = checkColumn(m, CvType.CV_64FC4);
+        checkRange(xywh == null ? -1 : xywh.length, offset, 4 * count);
+        if (count == 0)
+            return 0;
+        if (offset == 0 && xywh.length % 4 == 0) {
+            m.get(0, 0, xywh);
+        } else {
+            checkRectScratch(scratch == null ? -1 : scratch.length, count);
+            m.get(0, 0, scratch);
+            System.arraycopy(scratch, 0, xywh, offset, 4 * count);
+        }
+        return count;
+    }
+
+    /** @param arrayLength -1 for a null array */
+    private static void checkRange(int arrayLength, int offset, int length) {
+        if (arrayLength < 0)
+            throw new IllegalArgumentException("array == null");
+        if (offset < 0 || length < 0 || offset > arrayLength - length)
+            throw new IllegalArgumentException(
+                    "[" + offset + ", " + (offset + length) + ") is outside an array of " + arrayLength);
+    }
+
+    private static void checkScratch(int scratchLength, int length) {
+        if (scratchLength < length)
+            throw new IllegalArgumentException("scratch must hold " + length + " values");
+    }
+
+    private static void checkRectScratch(int scratchLength, int count) {
+        if (scratchLength < 4 * count || scratchLength % 4 != 0)
+            throw new IllegalArgumentException(
+                    "scratch must hold " + 4 * count + " values and its length be a multiple of 4");
+    }
+
+    /** Sizes {@code m} to {@code count} rows of {@code type}; false when there is nothing to copy. */
+    private static boolean prepare(Mat m, int count, int type) {
+        if (m == null)
+            throw new IllegalArgumentException("m == null");
+        if (count == 0) {
+            m.release();
+            return false;
+        }
+        m.create(count, 1, type);
+        return true;
+    }
+
+    /** Number of rows of a single-column {@code m} of {@code type}; 0 when {@code m} is empty. */
+    private static int checkColumn(Mat m, int type) {
+        if (m == null)
+            throw new IllegalArgumentException("m == null");
+        if (m.empty())
+            return 0;
+        if (type != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    CvType.typeToString(type) + " != m.type() ||  m.cols()!=1\n" + m);
+        return m.rows();
+    }
 }